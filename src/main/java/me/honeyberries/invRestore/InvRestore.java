@@ -5,7 +5,16 @@ import me.honeyberries.invRestore.command.InventoryViewCommand;
 import me.honeyberries.invRestore.command.RestoreCommand;
 import me.honeyberries.invRestore.listener.DeathListener;
 import me.honeyberries.invRestore.listener.GUIListener;
+import me.honeyberries.invRestore.listener.JoinListener;
+import me.honeyberries.invRestore.listener.SnapshotTriggerListener;
+import me.honeyberries.invRestore.storage.AutoSnapshotScheduler;
+import me.honeyberries.invRestore.storage.DeathDebouncer;
+import me.honeyberries.invRestore.storage.IntegrityScanner;
+import me.honeyberries.invRestore.storage.ItemIndex;
 import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.PlayerNameIndex;
+import me.honeyberries.invRestore.storage.ShutdownFlush;
+import me.honeyberries.invRestore.storage.SnapshotPruner;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.util.Objects;
@@ -17,11 +26,20 @@ import java.util.Objects;
  */
 public final class InvRestore extends JavaPlugin {
 
-    /**
-     * Metadata key used to track when a player has a restore inventory GUI open.
-     * This prevents conflicts with other inventory interactions.
-     */
-    public static final String RESTORE_INVENTORY_METADATA = "restoreInventoryOpen";
+    /** The enabled plugin instance. */
+    private static InvRestore instance;
+
+    /** Background job enforcing the snapshot retention policy. */
+    private SnapshotPruner pruner;
+
+    /** Periodic snapshots of online players. */
+    private AutoSnapshotScheduler autoSnapshots;
+
+    /** Integrity checks of the stored snapshots, on demand and in the background. */
+    private IntegrityScanner integrityScanner;
+
+    /** Coalescing of death snapshots taken in quick succession. */
+    private DeathDebouncer deathDebouncer;
 
     /**
      * Called when the plugin is enabled.
@@ -29,15 +47,47 @@ public final class InvRestore extends JavaPlugin {
      */
     @Override
     public void onEnable() {
+        instance = this;
         getLogger().info("InvRestore has been enabled!");
 
+        // Write the default config.yml if it does not exist yet
+        saveDefaultConfig();
+
         // Initialize and load the player data storage system
         PlayerDataStorage.getInstance().init(this);
         PlayerDataStorage.getInstance().loadSync();
 
+        // Share player data with the other servers of a proxy network, if configured
+        PlayerDataStorage.getInstance().startSharedStore(getConfig().getConfigurationSection("storage.shared"));
+
+        // Index the items of every stored snapshot in the background
+        ItemIndex.getInstance().rebuildAsync(this);
+
+        // Index the names of online and stored players for completion and offline lookups
+        PlayerNameIndex.getInstance().rebuildAsync(this);
+
+        // Start pruning old snapshots in the background
+        pruner = new SnapshotPruner(this, getConfig().getConfigurationSection("retention"));
+        pruner.start();
+
+        // Start taking periodic snapshots of online players
+        autoSnapshots = new AutoSnapshotScheduler(this, getConfig().getConfigurationSection("auto-snapshot"));
+        autoSnapshots.start();
+
+        // Start the background integrity scan, if enabled
+        integrityScanner = new IntegrityScanner(this, getConfig().getConfigurationSection("integrity"));
+        integrityScanner.start();
+
+        // Hold back deaths in quick succession so only the latest one is written
+        deathDebouncer = new DeathDebouncer(this, getConfig().getConfigurationSection("death-debounce"));
+        deathDebouncer.start();
+
         // Register event listeners
-        getServer().getPluginManager().registerEvents(new DeathListener(), this);
+        getServer().getPluginManager().registerEvents(new DeathListener(deathDebouncer), this);
         getServer().getPluginManager().registerEvents(new GUIListener(), this);
+        getServer().getPluginManager().registerEvents(new JoinListener(), this);
+        getServer().getPluginManager().registerEvents(PlayerNameIndex.getInstance(), this);
+        getServer().getPluginManager().registerEvents(new SnapshotTriggerListener(getConfig().getConfigurationSection("triggers")), this);
 
         // Register commands with their command executors
         Objects.requireNonNull(getCommand("inventoryrestore")).setExecutor(new RestoreCommand());
@@ -51,19 +101,50 @@ public final class InvRestore extends JavaPlugin {
      */
     @Override
     public void onDisable() {
-        // Save all pending player data to disk
-        PlayerDataStorage.getInstance().save();
+        if (pruner != null) {
+            pruner.stop();
+        }
+        if (autoSnapshots != null) {
+            autoSnapshots.stop();
+        }
+        if (integrityScanner != null) {
+            integrityScanner.stop();
+        }
+        if (deathDebouncer != null) {
+            deathDebouncer.stop();
+        }
+
+        // Save all pending player data to disk, within the configured deadline
+        new ShutdownFlush(this, getConfig().getConfigurationSection("shutdown")).run();
 
         getLogger().info("InvRestore has been disabled!");
     }
 
+    /**
+     * Gets the scanner checking stored snapshots for corruption.
+     *
+     * @return The integrity scanner.
+     */
+    public IntegrityScanner getIntegrityScanner() {
+        return integrityScanner;
+    }
+
+    /**
+     * Gets the debouncer holding back deaths in quick succession.
+     *
+     * @return The death debouncer, or null before the plugin is enabled.
+     */
+    public DeathDebouncer getDeathDebouncer() {
+        return deathDebouncer;
+    }
+
     /**
      * Gets the singleton instance of the InvRestore plugin.
      * Provides static access to the plugin from other classes.
      *
-     * @return The InvRestore plugin instance.
+     * @return The InvRestore plugin instance, or null before the plugin is enabled.
      */
     public static InvRestore getInstance() {
-        return getPlugin(InvRestore.class);
+        return instance;
     }
 }
@@ -0,0 +1,223 @@
+package me.honeyberries.invRestore.command;
+
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.storage.ItemIndex;
+import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.SnapshotArchive;
+import me.honeyberries.invRestore.storage.SnapshotRecord;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Handles /inventoryrestore export and import, which back up every stored snapshot to an archive
+ * in the plugin's "exports" folder and load archives back. See {@link SnapshotArchive} for the format.
+ */
+public class BackupCommand implements TabExecutor {
+
+    // Instance of the main plugin class to access plugin methods and data
+    private final InvRestore plugin = InvRestore.getInstance();
+
+    // Instance of PlayerDataStorage to access inventory data
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    private static final String BACKUP_PERMISSION = "invrestore.backup";
+
+    /** File extension of archives. */
+    private static final String ARCHIVE_EXTENSION = ".irx";
+
+    /** Set while an export or import is running, so two cannot overlap. */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Executes the export or import subcommand.
+     *
+     * @param sender  The command sender (player or console).
+     * @param command The command being executed.
+     * @param label   The command label.
+     * @param args    The arguments, starting with "export" or "import": {@code export} or {@code import <file>}.
+     * @return True, as the command is always handled.
+     */
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+
+        if (!sender.hasPermission(BACKUP_PERMISSION)) {
+            sender.sendMessage(Component.text("You do not have permission to use this command.")
+                    .color(NamedTextColor.RED));
+            return true;
+        }
+
+        boolean export = args.length == 1 && args[0].equalsIgnoreCase("export");
+        boolean restore = args.length == 2 && args[0].equalsIgnoreCase("import");
+        if (!export && !restore) {
+            sendHelpMessage(sender);
+            return true;
+        }
+
+        Path archive;
+        if (export) {
+            archive = getExportFolder().resolve("inventories-"
+                    + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ARCHIVE_EXTENSION);
+        } else {
+            // Only plain file names inside the export folder, never arbitrary paths
+            String name = args[1].endsWith(ARCHIVE_EXTENSION) ? args[1] : args[1] + ARCHIVE_EXTENSION;
+            if (name.contains("/") || name.contains("\\") || name.contains("..")) {
+                sender.sendMessage(Component.text("Give the name of an archive in the exports folder.").color(NamedTextColor.RED));
+                return true;
+            }
+            archive = getExportFolder().resolve(name);
+            if (!Files.isRegularFile(archive)) {
+                sender.sendMessage(Component.text("Archive " + name + " not found.").color(NamedTextColor.RED));
+                return true;
+            }
+        }
+
+        if (!running.compareAndSet(false, true)) {
+            sender.sendMessage(Component.text("An export or import is already running.").color(NamedTextColor.YELLOW));
+            return true;
+        }
+
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            try {
+                if (export) {
+                    exportArchive(sender, senderName, archive);
+                } else {
+                    importArchive(sender, senderName, archive);
+                }
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Writes every stored player to an archive. Runs on the async scheduler.
+     *
+     * @param sender     The command sender.
+     * @param senderName The sender's name, for the log.
+     * @param archive    The archive to write.
+     */
+    private void exportArchive(CommandSender sender, String senderName, Path archive) {
+        sender.sendMessage(Component.text("Exporting snapshots to " + archive.getFileName() + "...").color(NamedTextColor.GOLD));
+        long start = System.nanoTime();
+
+        try {
+            // Each player is copied under the read lock as the archive reaches them, so only the chunks
+            // in flight are held in memory; a player's entry is consistent, the store as a whole is not
+            List<UUID> players = new ArrayList<>(database.getStoredPlayerNames().keySet());
+            Files.createDirectories(archive.getParent());
+            SnapshotArchive.ExportResult result = SnapshotArchive.write(players, database::exportPlayer, archive);
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            String summary = String.format("Exported %d snapshot(s) of %d player(s) in %d chunk(s) to %s (%.1f MB in %.1fs).",
+                    result.records(), result.players(), result.chunks(), archive.getFileName(), result.bytes() / 1_048_576.0, seconds);
+            sender.sendMessage(Component.text(summary).color(NamedTextColor.GREEN));
+            plugin.getLogger().info(senderName + " ran an export. " + summary);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not export snapshots to " + archive, e);
+            sender.sendMessage(Component.text("Export failed: " + e.getMessage()).color(NamedTextColor.RED));
+        }
+    }
+
+    /**
+     * Loads the snapshots, named saves and queued restores of an archive into storage, chunk by chunk.
+     * Runs on the async scheduler. Snapshots, save names and queued restores that already exist are left as they are.
+     *
+     * @param sender     The command sender.
+     * @param senderName The sender's name, for the log.
+     * @param archive    The archive to read.
+     */
+    private void importArchive(CommandSender sender, String senderName, Path archive) {
+        sender.sendMessage(Component.text("Importing snapshots from " + archive.getFileName() + "...").color(NamedTextColor.GOLD));
+        long start = System.nanoTime();
+        AtomicInteger imported = new AtomicInteger();
+
+        int read;
+        try {
+            read = SnapshotArchive.read(archive, entries -> {
+                List<SnapshotRecord> written = database.importPlayers(entries);
+                written.parallelStream().map(SnapshotRecord::info).forEach(ItemIndex.getInstance()::add);
+                imported.addAndGet(written.size());
+            });
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not import snapshots from " + archive, e);
+            sender.sendMessage(Component.text("Import stopped: " + e.getMessage() + ". "
+                    + imported.get() + " snapshot(s) were imported before the error.").color(NamedTextColor.RED));
+            if (imported.get() > 0) database.save();
+            return;
+        }
+
+        if (imported.get() > 0) database.save();
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        String summary = String.format("Imported %d of %d snapshot(s) from %s, %d already present, of unknown type or failing their checksum (%.1fs).",
+                imported.get(), read, archive.getFileName(), read - imported.get(), seconds);
+        sender.sendMessage(Component.text(summary).color(NamedTextColor.GREEN));
+        plugin.getLogger().info(senderName + " ran an import. " + summary);
+    }
+
+    /**
+     * Gets the folder archives are written to and read from.
+     *
+     * @return the exports folder
+     */
+    private Path getExportFolder() {
+        return new File(plugin.getDataFolder(), "exports").toPath();
+    }
+
+    /**
+     * Sends a help message to the sender.
+     *
+     * @param sender The command sender.
+     */
+    private void sendHelpMessage(CommandSender sender) {
+        sender.sendMessage(Component.text("---- Inventory Backup Help ----").color(NamedTextColor.GOLD));
+        sender.sendMessage(Component.text("/inventoryrestore export").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Write every snapshot to an archive in the exports folder.")));
+        sender.sendMessage(Component.text("/inventoryrestore import <file>").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Load the snapshots of an archive, keeping existing ones.")));
+    }
+
+    /**
+     * Handles tab completion for the export and import subcommands, suggesting archives for import.
+     *
+     * @param sender  The command sender.
+     * @param command The command being executed.
+     * @param alias   The alias used for the command.
+     * @param args    The arguments, starting with "export" or "import".
+     * @return A list of possible tab completions.
+     */
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
+        if (args.length != 2 || !args[0].equalsIgnoreCase("import")) {
+            return List.of();
+        }
+
+        String[] files = getExportFolder().toFile().list((dir, name) -> name.endsWith(ARCHIVE_EXTENSION));
+        if (files == null) return List.of();
+
+        return Arrays.stream(files).sorted()
+                .filter(option -> option.toLowerCase().startsWith(args[1].toLowerCase()))
+                .toList();
+    }
+}
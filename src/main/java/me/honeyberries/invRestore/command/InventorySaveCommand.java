@@ -2,6 +2,7 @@ package me.honeyberries.invRestore.command;
 
 import me.honeyberries.invRestore.InvRestore;
 import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.PlayerNameIndex;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
@@ -10,15 +11,22 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
+import org.bukkit.permissions.PermissionAttachmentInfo;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
  * Handles the /invsave command, which allows players to save their inventory
- * into the YAML file for later restoration.
+ * into the YAML file for later restoration, either unnamed or under a name of their choosing.
  */
 public class InventorySaveCommand implements TabExecutor {
 
@@ -30,6 +38,21 @@ public class InventorySaveCommand implements TabExecutor {
 
     private static final String SAVE_PERMISSION = "invrestore.save";
 
+    // Listing another player's saves is for staff, like viewing their inventories
+    private static final String VIEW_PERMISSION = "invrestore.view";
+
+    // Named saves count against the target's limit and replace their saves of that name, so saving them for others is for staff
+    private static final String SAVE_OTHERS_PERMISSION = "invrestore.save.others";
+
+    // Permissions of the form invrestore.save.limit.<n> set how many named saves a player may keep
+    private static final String LIMIT_PERMISSION_PREFIX = "invrestore.save.limit.";
+
+    // Allowed save names, checked after lowercasing
+    private static final Pattern SAVE_NAME = Pattern.compile("[a-z0-9_-]{1,32}");
+
+    // Arguments that are subcommands, never save names
+    private static final List<String> RESERVED_NAMES = List.of("help", "list", "delete");
+
     /**
      * Executes the /invsave command.
      *
@@ -49,11 +72,25 @@ public class InventorySaveCommand implements TabExecutor {
         }
 
         // Show help message if "help" is entered or too many arguments are given
-        if (args.length > 1 || (args.length == 1 && args[0].equalsIgnoreCase("help"))) {
+        if (args.length > 2 || (args.length >= 1 && args[0].equalsIgnoreCase("help"))) {
             sendHelpMessage(sender);
             return true;
         }
 
+        if (args.length >= 1 && args[0].equalsIgnoreCase("list")) {
+            return listSaves(sender, args.length == 2 ? args[1] : null);
+        }
+        if (args.length >= 1 && args[0].equalsIgnoreCase("delete")) {
+            return deleteSave(sender, args.length == 2 ? args[1] : null);
+        }
+
+        // A save name, optionally followed by the player to save. A single argument is a player if the server
+        // knows anyone by that name, online or not, so an offline player is reported rather than saved as a name
+        if (args.length == 2 || (args.length == 1 && sender instanceof Player && Bukkit.getPlayerExact(args[0]) == null
+                && PlayerNameIndex.getInstance().resolve(args[0]) == null)) {
+            return saveNamed(sender, args[0], args.length == 2 ? args[1] : null);
+        }
+
         Player target;
 
         // If no arguments, assume sender wants to save their own inventory
@@ -65,8 +102,8 @@ public class InventorySaveCommand implements TabExecutor {
                 return true;
             }
         } else {
-            // If one argument is provided, attempt to find the specified player
-            target = Bukkit.getPlayer(args[0]);
+            // If one argument is provided, it is the name of a player, who must be online
+            target = Bukkit.getPlayerExact(args[0]);
             if (target == null) {
                 sender.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
                 return true;
@@ -93,6 +130,164 @@ public class InventorySaveCommand implements TabExecutor {
         return true;
     }
 
+    /**
+     * Saves a player's inventory under a name, replacing an earlier save of that name.
+     *
+     * @param sender     The command sender.
+     * @param arg        The name of the save, as typed.
+     * @param targetName The player to save, or null to save the sender.
+     * @return True, as the command was handled.
+     */
+    private boolean saveNamed(CommandSender sender, String arg, @Nullable String targetName) {
+        String saveName = parseSaveName(arg);
+        if (saveName == null || RESERVED_NAMES.contains(saveName)) {
+            sender.sendMessage(Component.text("Save names are 1-32 letters, digits, '_' or '-', and cannot be help, list or delete.")
+                    .color(NamedTextColor.RED));
+            return true;
+        }
+
+        Player target;
+        if (targetName != null) {
+            target = Bukkit.getPlayerExact(targetName);
+            if (target == null) {
+                sender.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
+                return true;
+            }
+            if (target != sender && !sender.hasPermission(SAVE_OTHERS_PERMISSION)) {
+                sender.sendMessage(Component.text("You do not have permission to make named saves for other players.")
+                        .color(NamedTextColor.RED));
+                return true;
+            }
+        } else if (sender instanceof Player player) {
+            target = player;
+        } else {
+            sender.sendMessage(Component.text("Console must specify a player.").color(NamedTextColor.YELLOW));
+            return true;
+        }
+
+        // Replacing an existing save never counts against the limit
+        Map<String, Long> saves = database.getNamedSaves(target.getUniqueId());
+        int limit = getSaveLimit(target);
+        if (!saves.containsKey(saveName) && saves.size() >= limit) {
+            sender.sendMessage(Component.text(target.getName() + " already has " + saves.size() + " of " + limit
+                    + " named saves. Delete one or reuse a name.").color(NamedTextColor.RED));
+            return true;
+        }
+
+        database.saveNamed(target, saveName);
+
+        sender.sendMessage(Component.text("Inventory saved as '" + saveName + "' for " + target.getName())
+                .color(NamedTextColor.GREEN));
+        if (sender != target) {
+            String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+            target.sendMessage(Component.text("Inventory saved as '" + saveName + "' by " + senderName)
+                    .color(NamedTextColor.GREEN));
+        }
+        target.playSound(target.getLocation(), Sound.ENTITY_EXPERIENCE_ORB_PICKUP, 1.0f, 1.0f);
+        return true;
+    }
+
+    /**
+     * Lists a player's named saves, read from the save index without decoding any of them.
+     *
+     * @param sender     The command sender.
+     * @param targetName The player whose saves to list, or null for the sender.
+     * @return True, as the command was handled.
+     */
+    private boolean listSaves(CommandSender sender, @Nullable String targetName) {
+        UUID targetId;
+        String displayName;
+        if (targetName != null && !targetName.equalsIgnoreCase(sender.getName())) {
+            if (!sender.hasPermission(VIEW_PERMISSION)) {
+                sender.sendMessage(Component.text("You do not have permission to list other players' saves.")
+                        .color(NamedTextColor.RED));
+                return true;
+            }
+            targetId = PlayerNameIndex.getInstance().resolve(targetName);
+            displayName = targetName;
+        } else if (sender instanceof Player player) {
+            targetId = player.getUniqueId();
+            displayName = player.getName();
+        } else {
+            sender.sendMessage(Component.text("Console must specify a player.").color(NamedTextColor.YELLOW));
+            return true;
+        }
+        if (targetId == null) {
+            sender.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
+            return true;
+        }
+
+        Map<String, Long> saves = database.getNamedSaves(targetId);
+        if (saves.isEmpty()) {
+            sender.sendMessage(Component.text(displayName + " has no named saves.").color(NamedTextColor.YELLOW));
+            return true;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        sender.sendMessage(Component.text("--- Saves of " + displayName + " ---").color(NamedTextColor.GOLD));
+        saves.forEach((saveName, time) -> sender.sendMessage(Component.text(saveName).color(NamedTextColor.AQUA)
+                .append(Component.text(" - " + format.format(new Date(time))).color(NamedTextColor.GRAY))));
+        return true;
+    }
+
+    /**
+     * Deletes one of the sender's named saves.
+     *
+     * @param sender The command sender.
+     * @param arg    The name of the save, as typed, or null if missing.
+     * @return True, as the command was handled.
+     */
+    private boolean deleteSave(CommandSender sender, @Nullable String arg) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(Component.text("Only players have named saves.").color(NamedTextColor.YELLOW));
+            return true;
+        }
+        String saveName = arg == null ? null : parseSaveName(arg);
+        if (saveName == null) {
+            sendHelpMessage(sender);
+            return true;
+        }
+
+        if (database.deleteNamedSave(player.getUniqueId(), saveName)) {
+            sender.sendMessage(Component.text("Deleted save '" + saveName + "'.").color(NamedTextColor.GREEN));
+        } else {
+            sender.sendMessage(Component.text("No save named '" + saveName + "' found.").color(NamedTextColor.YELLOW));
+        }
+        return true;
+    }
+
+    /**
+     * Gets how many named saves a player may keep: the highest invrestore.save.limit.&lt;n&gt; permission
+     * they have, or the configured default.
+     *
+     * @param player The player.
+     * @return The maximum number of named saves.
+     */
+    private int getSaveLimit(Player player) {
+        int limit = -1;
+        for (PermissionAttachmentInfo info : player.getEffectivePermissions()) {
+            String permission = info.getPermission();
+            if (!info.getValue() || !permission.startsWith(LIMIT_PERMISSION_PREFIX)) continue;
+            try {
+                limit = Math.max(limit, Integer.parseInt(permission.substring(LIMIT_PERMISSION_PREFIX.length())));
+            } catch (NumberFormatException ignored) {
+                // Not a limit permission
+            }
+        }
+        return limit >= 0 ? limit : plugin.getConfig().getInt("named-saves.default-limit", 3);
+    }
+
+    /**
+     * Normalizes a save name as typed.
+     *
+     * @param arg The save name.
+     * @return The lowercased name, or null if it is not a valid save name.
+     */
+    static @Nullable String parseSaveName(String arg) {
+        String saveName = arg.toLowerCase(Locale.ROOT);
+        return SAVE_NAME.matcher(saveName).matches() ? saveName : null;
+    }
+
     /**
      * Provides tab completion for the /invsave command.
      *
@@ -107,13 +302,27 @@ public class InventorySaveCommand implements TabExecutor {
         List<String> suggestions = new ArrayList<>();
 
         if (args.length == 1) {
-            suggestions.add("help");
+            suggestions.addAll(RESERVED_NAMES);
+
+            // Add the online players matching what was typed so far
+            suggestions.addAll(PlayerNameIndex.getInstance().complete(args[0], false));
 
-            // Add all online players' names to the suggestions list
-            List<String> playerList = Bukkit.getOnlinePlayers().stream()
-                    .map(Player::getName)
-                    .toList();
-            suggestions.addAll(playerList);
+            // And the sender's own saves, which can be overwritten by name
+            if (sender instanceof Player player) {
+                suggestions.addAll(database.getNamedSaves(player.getUniqueId()).keySet());
+            }
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("delete") && sender instanceof Player player) {
+            suggestions.addAll(database.getNamedSaves(player.getUniqueId()).keySet());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("list")) {
+            // The player whose saves to list, for staff
+            if (sender.hasPermission(VIEW_PERMISSION)) {
+                suggestions.addAll(PlayerNameIndex.getInstance().complete(args[1], true));
+            }
+        } else if (args.length == 2 && !args[0].equalsIgnoreCase("help")) {
+            // Whom to save under the typed name, for staff
+            if (sender.hasPermission(SAVE_OTHERS_PERMISSION)) {
+                suggestions.addAll(PlayerNameIndex.getInstance().complete(args[1], false));
+            }
         }
 
         // Filter suggestions to match input
@@ -133,6 +342,12 @@ public class InventorySaveCommand implements TabExecutor {
                 .append(Component.text(" - Save your own inventory.")));
         sender.sendMessage(Component.text("/inventorysave <player>").color(NamedTextColor.AQUA)
                 .append(Component.text(" - Save another player's inventory.")));
+        sender.sendMessage(Component.text("/inventorysave <name> [player]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Save an inventory under a name, replacing an earlier save of that name.")));
+        sender.sendMessage(Component.text("/inventorysave list [player]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - List your named saves, or another player's with invrestore.view.")));
+        sender.sendMessage(Component.text("/inventorysave delete <name>").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Delete one of your named saves.")));
         sender.sendMessage(Component.text("/inventorysave help").color(NamedTextColor.AQUA)
                 .append(Component.text(" - Show this help message.")));
     }
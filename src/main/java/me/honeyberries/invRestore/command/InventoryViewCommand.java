@@ -1,7 +1,12 @@
 package me.honeyberries.invRestore.command;
 
 import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.gui.HistoryMenu;
+import me.honeyberries.invRestore.gui.SnapshotViewMenu;
 import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.PlayerNameIndex;
+import me.honeyberries.invRestore.storage.SnapshotInfo;
+import me.honeyberries.invRestore.storage.SnapshotType;
 import me.honeyberries.invRestore.util.PlayerData;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -10,25 +15,31 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.metadata.FixedMetadataValue;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.stream.Stream;
 
 /**
  * Command executor for viewing a player's saved inventory.
+ * Snapshots are read and decoded off the region thread; the view is built and opened on the
+ * viewer's region thread once they are ready.
  */
 public class InventoryViewCommand implements TabExecutor {
 
     private final InvRestore plugin = InvRestore.getInstance();
     private final PlayerDataStorage database = PlayerDataStorage.getInstance();
-    private static final String RESTORE_INVENTORY_METADATA = InvRestore.getInstance().RESTORE_INVENTORY_METADATA;
     private static final String VIEW_PERMISSION = "invrestore.view";
 
+    // Ticks to wait for a snapshot to decode before showing a loading placeholder
+    private static final long LOADING_DELAY_TICKS = 4;
+
     /**
      * Handles the execution of the command.
      *
@@ -61,79 +72,125 @@ public class InventoryViewCommand implements TabExecutor {
         }
 
         final String inventoryType = args[0].toLowerCase();
+        if (inventoryType.equals("history")) {
+            return openHistory(playerSender, args.length == 2 ? args[1] : playerSender.getName());
+        }
+
         final Player target = getTargetPlayer(playerSender, args);
         if (target == null) {
             sender.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
             return true;
         }
 
-        final ItemStack[] savedInventory = getSavedInventory(target, inventoryType);
-
-        if (savedInventory == null) {
-            sender.sendMessage(Component.text("No saved inventory found for " + target.getName() +
-                    " with the specified type.").color(NamedTextColor.YELLOW));
+        if (!inventoryType.equals("death") && !inventoryType.equals("save")) {
+            sendNotFound(playerSender, target.getName());
             return true;
         }
 
-        final Inventory gui = createInventoryGUI(target, savedInventory);
-
-        // Open the inventory GUI for the player and set metadata to prevent item movement
-        playerSender.openInventory(gui);
-        playerSender.setMetadata(RESTORE_INVENTORY_METADATA, new FixedMetadataValue(plugin, true));
-
+        SnapshotType type = inventoryType.equals("death") ? SnapshotType.DEATH : SnapshotType.SAVE;
+        openView(playerSender, target.getUniqueId(), target.getName(), type);
         return true;
     }
 
     /**
-     * Retrieves the target player based on the command arguments.
+     * Decodes a player's latest snapshot of a type on the async scheduler, then opens it for the viewer.
+     * A loading placeholder is opened if decoding takes longer than {@link #LOADING_DELAY_TICKS}, and
+     * filled in when the snapshot is ready.
      *
-     * @param self The player executing the command.
-     * @param args The command arguments.
-     * @return The target player, or the player executing the command if no target is specified.
+     * @param viewer     The player executing the command.
+     * @param targetId   The UUID of the player whose inventory is shown.
+     * @param targetName The name of the player whose inventory is shown.
+     * @param type       The kind of snapshot to show.
      */
-    private Player getTargetPlayer(Player self, String[] args) {
-        return args.length == 2 ? Bukkit.getPlayer(args[1]) : self;
+    private void openView(Player viewer, UUID targetId, String targetName, SnapshotType type) {
+        CompletableFuture<ItemStack[]> contents = new CompletableFuture<>();
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            try {
+                PlayerData playerData = database.getPlayerData(targetId, type);
+                contents.complete(playerData != null ? playerData.getInventoryContents() : null);
+            } catch (RuntimeException e) {
+                contents.completeExceptionally(e);
+            }
+        });
+
+        // Both tasks run on the viewer's region thread, so they never interleave
+        AtomicReference<SnapshotViewMenu> placeholder = new AtomicReference<>();
+        viewer.getScheduler().runDelayed(plugin, task -> {
+            if (!contents.isDone()) {
+                SnapshotViewMenu loading = new SnapshotViewMenu(targetName);
+                placeholder.set(loading);
+                viewer.openInventory(loading.getInventory());
+            }
+        }, null, LOADING_DELAY_TICKS);
+
+        contents.whenComplete((savedInventory, error) -> viewer.getScheduler().run(plugin, task -> {
+            SnapshotViewMenu loading = placeholder.get();
+            boolean showingPlaceholder = loading != null
+                    && viewer.getOpenInventory().getTopInventory().getHolder(false) == loading;
+
+            if (savedInventory == null) {
+                if (error != null) {
+                    plugin.getLogger().log(Level.WARNING, "Could not load the inventory of " + targetName, error);
+                }
+                if (showingPlaceholder) viewer.closeInventory();
+                sendNotFound(viewer, targetName);
+            } else if (showingPlaceholder) {
+                loading.show(savedInventory);
+            } else if (loading == null) {
+                // Open the inventory GUI for the player, its holder marks it as read-only
+                viewer.openInventory(new SnapshotViewMenu(targetName, savedInventory).getInventory());
+            }
+            // Otherwise the viewer closed the placeholder while waiting and has moved on
+        }, null));
     }
 
     /**
-     * Retrieves the saved inventory for the specified player and type.
+     * Tells the viewer there is no snapshot to show.
      *
-     * @param target The target player.
-     * @param type   The type of inventory to retrieve (death or save).
-     * @return The saved inventory, or null if no inventory is found.
+     * @param viewer     The player executing the command.
+     * @param targetName The name of the player whose inventory was requested.
      */
-    private ItemStack[] getSavedInventory(Player target, String type) {
-        boolean isDeathInventory = "death".equals(type);
-        if (isDeathInventory || "save".equals(type)) {
-            PlayerData playerData = database.getPlayerData(target, isDeathInventory);
-            if (playerData != null) {
-                return playerData.getInventoryContents();
-            }
-        }
-        return null;
+    private void sendNotFound(Player viewer, String targetName) {
+        viewer.sendMessage(Component.text("No saved inventory found for " + targetName +
+                " with the specified type.").color(NamedTextColor.YELLOW));
     }
 
     /**
-     * Creates an inventory GUI for the specified player and inventory data.
+     * Opens the history browser for a player, who may be offline.
      *
-     * @param target        The target player.
-     * @param inventoryData The inventory data to display.
-     * @return The created inventory GUI.
+     * @param viewer     The player executing the command.
+     * @param targetName The name of the player whose history is shown.
+     * @return true, as the command was handled.
      */
-    private Inventory createInventoryGUI(Player target, ItemStack[] inventoryData) {
-        final Inventory gui = Bukkit.createInventory(null, 54,
-                Component.text(target.getName()).color(NamedTextColor.DARK_GREEN).append(Component.text("'s Inventory").color(NamedTextColor.GOLD)));
-
-        // Set the inventory items in the GUI
-        for (int i = 0; i < inventoryData.length; i++) {
-            if (inventoryData[i] != null) {
-                gui.setItem(i, inventoryData[i]);
-            }
+    private boolean openHistory(Player viewer, String targetName) {
+        Player onlineTarget = Bukkit.getPlayer(targetName);
+        UUID targetId = onlineTarget != null ? onlineTarget.getUniqueId() : PlayerNameIndex.getInstance().resolve(targetName);
+        if (targetId == null) {
+            viewer.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
+            return true;
         }
 
-        // Note: The armor items are already included in the inventoryData array
-        // No need to set them separately from the current player's inventory
-        return gui;
+        List<SnapshotInfo> snapshots = database.listSnapshots(targetId);
+        if (snapshots.isEmpty()) {
+            viewer.sendMessage(Component.text("No saved inventory found for " + targetName + ".")
+                    .color(NamedTextColor.YELLOW));
+            return true;
+        }
+
+        String name = onlineTarget != null ? onlineTarget.getName() : targetName;
+        new HistoryMenu(viewer, name, snapshots).open();
+        return true;
+    }
+
+    /**
+     * Retrieves the target player based on the command arguments.
+     *
+     * @param self The player executing the command.
+     * @param args The command arguments.
+     * @return The target player, or the player executing the command if no target is specified.
+     */
+    private Player getTargetPlayer(Player self, String[] args) {
+        return args.length == 2 ? Bukkit.getPlayer(args[1]) : self;
     }
 
     /**
@@ -146,6 +203,9 @@ public class InventoryViewCommand implements TabExecutor {
         sender.sendMessage(Component.text("/inventorysaveview <death | save> <player>")
                 .color(NamedTextColor.AQUA)
                 .append(Component.text(" - View a player's last death or saved inventory.")));
+        sender.sendMessage(Component.text("/inventorysaveview history <player>")
+                .color(NamedTextColor.AQUA)
+                .append(Component.text(" - Browse every stored snapshot of a player.")));
         sender.sendMessage(Component.text("/inventorysaveview help")
                 .color(NamedTextColor.AQUA)
                 .append(Component.text(" - Show this help message.")));
@@ -164,14 +224,12 @@ public class InventoryViewCommand implements TabExecutor {
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command,
                                                 @NotNull String alias, @NotNull String[] args) {
         if (args.length == 1) {
-            return Stream.of("death", "save", "help")
+            return Stream.of("death", "save", "history", "help")
                     .filter(option -> option.toLowerCase().startsWith(args[0].toLowerCase()))
                     .toList();
         } else if (args.length == 2) {
-            return Bukkit.getOnlinePlayers().stream()
-                    .map(Player::getName)
-                    .filter(name -> name.toLowerCase().startsWith(args[1].toLowerCase()))
-                    .toList();
+            // Only the history browser works for offline players
+            return PlayerNameIndex.getInstance().complete(args[1], args[0].equalsIgnoreCase("history"));
         }
         return List.of();
     }
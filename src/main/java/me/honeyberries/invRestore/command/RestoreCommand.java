@@ -2,6 +2,8 @@ package me.honeyberries.invRestore.command;
 
 import me.honeyberries.invRestore.InvRestore;
 import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.PlayerNameIndex;
+import me.honeyberries.invRestore.storage.SnapshotType;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
@@ -14,7 +16,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
 
 /**
  * Command executor for the /restore command.
@@ -28,8 +33,29 @@ public class RestoreCommand implements TabExecutor {
     // Instance of PlayerDataStorage to access inventory data
     private final PlayerDataStorage database = PlayerDataStorage.getInstance();
 
+    // Index of player names for completion and offline lookups
+    private final PlayerNameIndex nameIndex = PlayerNameIndex.getInstance();
+
     private static final String RESTORE_PERMISSION = "invrestore.restore";
 
+    // Player inventory slot layout: hotbar 0-8, storage 9-35, armor 36-39, offhand 40
+    private static final int HOTBAR_LAST_SLOT = 8;
+    private static final int ARMOR_FIRST_SLOT = 36;
+    private static final int ARMOR_LAST_SLOT = 39;
+    private static final int OFFHAND_SLOT = 40;
+
+    // Handler for the server-wide rollback subcommand
+    private final RollbackCommand rollbackCommand = new RollbackCommand();
+
+    // Handler for the item search subcommand
+    private final SearchCommand searchCommand = new SearchCommand();
+
+    // Handler for the export and import subcommands
+    private final BackupCommand backupCommand = new BackupCommand();
+
+    // Handler for the integrity scan subcommand
+    private final VerifyCommand verifyCommand = new VerifyCommand();
+
     /**
      * Executes the /restore command.
      *
@@ -42,6 +68,20 @@ public class RestoreCommand implements TabExecutor {
     @Override
     public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String[] args) {
 
+        // Server-wide rollbacks have their own handler and permission
+        if (args.length >= 1 && args[0].equalsIgnoreCase("rollback")) {
+            return rollbackCommand.onCommand(sender, command, label, Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length >= 1 && args[0].equalsIgnoreCase("search")) {
+            return searchCommand.onCommand(sender, command, label, Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length >= 1 && (args[0].equalsIgnoreCase("export") || args[0].equalsIgnoreCase("import"))) {
+            return backupCommand.onCommand(sender, command, label, args);
+        }
+        if (args.length >= 1 && args[0].equalsIgnoreCase("verify")) {
+            return verifyCommand.onCommand(sender, command, label, Arrays.copyOfRange(args, 1, args.length));
+        }
+
         // Check if sender has permission to use the command
         if (!sender.hasPermission(RESTORE_PERMISSION)) {
             sender.sendMessage(Component.text("You do not have permission to use this command.")
@@ -50,7 +90,7 @@ public class RestoreCommand implements TabExecutor {
         }
 
         // Check if command has the correct number of arguments
-        if (args.length < 1 || args.length > 2) {
+        if (args.length < 1 || args.length > 3) {
             sendHelpMessage(sender);
             return true;
         }
@@ -63,6 +103,7 @@ public class RestoreCommand implements TabExecutor {
         }
 
         Player target;
+        boolean isDeathInventory = inventoryType.equals("death");
 
         // Determine the target player based on arguments
         if (args.length == 1) {
@@ -73,20 +114,164 @@ public class RestoreCommand implements TabExecutor {
                         .color(NamedTextColor.RED));
                 return true;
             }
-        } else { // args.length == 2
+        } else { // args.length >= 2
+            if (!isDeathInventory && args.length == 3 && !isSelection(args[2])) {
+                // A named save of the given player
+                return restoreNamed(sender, args[1], args[2]);
+            }
+            if (!isDeathInventory && args.length == 2 && sender instanceof Player player
+                    && Bukkit.getPlayerExact(args[1]) == null) {
+                // One of the sender's own named saves, unless a player by that name is online
+                String saveName = InventorySaveCommand.parseSaveName(args[1]);
+                if (saveName != null && database.getNamedSaveId(player.getUniqueId(), saveName) != null) {
+                    return restoreNamedSave(sender, player, saveName);
+                }
+            }
+
             target = Bukkit.getPlayer(args[1]);
-            if (target == null) {
-                sender.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
+            if (target == null && args.length == 2) {
+                // The player is offline, queue the restore for their next join instead
+                return queueRestore(sender, args[1], isDeathInventory);
+            } else if (target == null) {
+                sender.sendMessage(Component.text("Partial restores require the player to be online.")
+                        .color(NamedTextColor.RED));
                 return true;
             }
         }
 
-        boolean isDeathInventory = inventoryType.equals("death");
+        if (args.length == 3) {
+            String selection = args[2].toLowerCase();
+            if (selection.equals("xp") || selection.equals("enderchest")) {
+                return restoreSection(sender, target, isDeathInventory, selection);
+            }
+
+            int[] slots = parseSlots(args[2]);
+            if (slots == null) {
+                sendHelpMessage(sender);
+                return true;
+            }
+            return restoreSlots(sender, target, isDeathInventory, slots, args[2].toLowerCase());
+        }
 
         // Attempt to retrieve and restore inventory
         return restoreInventory(sender, target, isDeathInventory);
     }
 
+    /**
+     * Checks whether an argument selects part of a snapshot rather than naming a save.
+     *
+     * @param arg The third argument.
+     * @return True for xp, enderchest and slot selections.
+     */
+    private boolean isSelection(@NotNull String arg) {
+        String selection = arg.toLowerCase();
+        return selection.equals("xp") || selection.equals("enderchest") || parseSlots(arg) != null;
+    }
+
+    /**
+     * Parses a slot selection for a partial restore.
+     * Accepts "armor", "hotbar", "offhand", "slot:&lt;n&gt;", "slot:&lt;a&gt;-&lt;b&gt;" and comma separated slot lists.
+     *
+     * @param arg The selection argument.
+     * @return The selected inventory slots, or null if the selection is invalid.
+     */
+    private int[] parseSlots(@NotNull String arg) {
+        String selection = arg.toLowerCase();
+        switch (selection) {
+            case "armor":
+                return IntStream.rangeClosed(ARMOR_FIRST_SLOT, ARMOR_LAST_SLOT).toArray();
+            case "hotbar":
+                return IntStream.rangeClosed(0, HOTBAR_LAST_SLOT).toArray();
+            case "offhand":
+                return new int[]{OFFHAND_SLOT};
+            default:
+                break;
+        }
+
+        if (!selection.startsWith("slot:")) return null;
+
+        try {
+            IntStream.Builder slots = IntStream.builder();
+            for (String part : selection.substring("slot:".length()).split(",")) {
+                int dash = part.indexOf('-');
+                int from = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+                int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1));
+                if (from < 0 || to > OFFHAND_SLOT || from > to) return null;
+                IntStream.rangeClosed(from, to).forEach(slots::add);
+            }
+            return slots.build().distinct().toArray();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Restores only the selected slots of the player's inventory on the player's region thread.
+     *
+     * @param sender           The command sender.
+     * @param target           The player whose inventory is being restored.
+     * @param isDeathInventory True if restoring a death inventory, false for a save inventory.
+     * @param slots            The inventory slots to restore.
+     * @param selection        The selection as typed, for messages.
+     * @return True, as the command was handled.
+     */
+    private boolean restoreSlots(CommandSender sender, Player target, boolean isDeathInventory, int[] slots, String selection) {
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+
+        target.getScheduler().run(plugin, task -> {
+            int restored = database.restorePlayerSlots(target, isDeathInventory, slots);
+            if (restored < 0) {
+                sender.sendMessage(Component.text("No saved inventory found.").color(NamedTextColor.YELLOW));
+                return;
+            }
+
+            target.playSound(target.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 1.0f, 1.0f);
+            sender.sendMessage(Component.text("Restored " + selection + " (" + restored + " slot(s)) for " + target.getName())
+                    .color(NamedTextColor.GREEN));
+            if (sender != target) {
+                target.sendMessage(Component.text("Your " + selection + " has been restored by " + senderName)
+                        .color(NamedTextColor.GREEN));
+            }
+        }, () -> sender.sendMessage(Component.text(target.getName() + " left before the restore could be applied.")
+                .color(NamedTextColor.YELLOW)));
+        return true;
+    }
+
+    /**
+     * Restores only the experience or only the ender chest of a snapshot on the player's region thread.
+     * Only the matching section of the snapshot is decoded.
+     *
+     * @param sender           The command sender.
+     * @param target           The player being restored.
+     * @param isDeathInventory True if restoring from a death snapshot, false for a save snapshot.
+     * @param selection        Either "xp" or "enderchest".
+     * @return True, as the command was handled.
+     */
+    private boolean restoreSection(CommandSender sender, Player target, boolean isDeathInventory, String selection) {
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+        String description = selection.equals("xp") ? "XP" : "ender chest";
+
+        target.getScheduler().run(plugin, task -> {
+            boolean success = selection.equals("xp")
+                    ? database.restorePlayerExperience(target, isDeathInventory)
+                    : database.restorePlayerEnderChest(target, isDeathInventory);
+            if (!success) {
+                sender.sendMessage(Component.text("No saved " + description + " found.").color(NamedTextColor.YELLOW));
+                return;
+            }
+
+            target.playSound(target.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 1.0f, 1.0f);
+            sender.sendMessage(Component.text("Restored " + description + " for " + target.getName())
+                    .color(NamedTextColor.GREEN));
+            if (sender != target) {
+                target.sendMessage(Component.text("Your " + description + " has been restored by " + senderName)
+                        .color(NamedTextColor.GREEN));
+            }
+        }, () -> sender.sendMessage(Component.text(target.getName() + " left before the restore could be applied.")
+                .color(NamedTextColor.YELLOW)));
+        return true;
+    }
+
     /**
      * Retrieves the appropriate inventory type based on the argument.
      *
@@ -134,6 +319,99 @@ public class RestoreCommand implements TabExecutor {
         return true;
     }
 
+    /**
+     * Restores a player's named save, queuing it until they join if they are offline.
+     *
+     * @param sender     The command sender.
+     * @param targetName The name of the player owning the save.
+     * @param arg        The name of the save, as typed.
+     * @return True, as the command was handled.
+     */
+    private boolean restoreNamed(CommandSender sender, String targetName, String arg) {
+        String saveName = InventorySaveCommand.parseSaveName(arg);
+        if (saveName == null) {
+            sendHelpMessage(sender);
+            return true;
+        }
+
+        Player target = Bukkit.getPlayerExact(targetName);
+        if (target != null) {
+            return restoreNamedSave(sender, target, saveName);
+        }
+
+        UUID targetId = nameIndex.resolve(targetName);
+        if (targetId == null) {
+            sender.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
+            return true;
+        }
+
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+        String snapshotId = database.getNamedSaveId(targetId, saveName);
+        if (snapshotId != null && database.queueRestore(targetId, snapshotId, senderName)) {
+            sender.sendMessage(Component.text(targetName + " is offline, their save '" + saveName + "' will be restored when they next join.")
+                    .color(NamedTextColor.GREEN));
+        } else {
+            sender.sendMessage(Component.text("No save named '" + saveName + "' found.").color(NamedTextColor.YELLOW));
+        }
+        return true;
+    }
+
+    /**
+     * Restores a named save to an online player on their region thread.
+     *
+     * @param sender   The command sender.
+     * @param target   The player owning the save.
+     * @param saveName The name of the save.
+     * @return True, as the command was handled.
+     */
+    private boolean restoreNamedSave(CommandSender sender, Player target, String saveName) {
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+
+        target.getScheduler().run(plugin, task -> {
+            if (!database.restoreNamedSave(target, saveName)) {
+                sender.sendMessage(Component.text("No save named '" + saveName + "' found.").color(NamedTextColor.YELLOW));
+                return;
+            }
+
+            target.playSound(target.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 1.0f, 1.0f);
+            sender.sendMessage(Component.text("Restored save '" + saveName + "' for " + target.getName())
+                    .color(NamedTextColor.GREEN));
+            if (sender != target) {
+                target.sendMessage(Component.text("Your save '" + saveName + "' has been restored by " + senderName)
+                        .color(NamedTextColor.GREEN));
+            }
+        }, () -> sender.sendMessage(Component.text(target.getName() + " left before the restore could be applied.")
+                .color(NamedTextColor.YELLOW)));
+        return true;
+    }
+
+    /**
+     * Queues a restore for an offline player, to be applied the next time they join.
+     *
+     * @param sender           The command sender.
+     * @param targetName       The name of the offline player.
+     * @param isDeathInventory True if restoring a death inventory, false for a save inventory.
+     * @return True, as the command was handled.
+     */
+    private boolean queueRestore(CommandSender sender, String targetName, boolean isDeathInventory) {
+        // Only look at players the server has seen before, never a blocking profile lookup
+        UUID targetId = nameIndex.resolve(targetName);
+        if (targetId == null) {
+            sender.sendMessage(Component.text("Player not found.").color(NamedTextColor.RED));
+            return true;
+        }
+
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+        SnapshotType type = isDeathInventory ? SnapshotType.DEATH : SnapshotType.SAVE;
+        if (database.queueRestore(targetId, type, senderName)) {
+            sender.sendMessage(Component.text(targetName + " is offline, their inventory will be restored when they next join.")
+                    .color(NamedTextColor.GREEN));
+        } else {
+            sender.sendMessage(Component.text("No saved inventory found.").color(NamedTextColor.YELLOW));
+        }
+        return true;
+    }
+
     /**
      * Sends a help message to the sender.
      *
@@ -145,8 +423,26 @@ public class RestoreCommand implements TabExecutor {
                 .append(Component.text(" - Restore your last inventory before death.")));
         sender.sendMessage(Component.text("/inventoryrestore save").color(NamedTextColor.AQUA)
                 .append(Component.text(" - Restore your last manually saved inventory.")));
+        sender.sendMessage(Component.text("/inventoryrestore save <name>").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Restore one of your named saves.")));
+        sender.sendMessage(Component.text("/inventoryrestore save <player> <name>").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Restore a player's named save, queued until they join if offline.")));
         sender.sendMessage(Component.text("/inventoryrestore <death|save> <player>").color(NamedTextColor.AQUA)
-                .append(Component.text(" - Restore a player's inventory.")));
+                .append(Component.text(" - Restore a player's inventory, queued until they join if offline.")));
+        sender.sendMessage(Component.text("/inventoryrestore <death|save> <player> <armor|hotbar|offhand|slot:<n>[-<m>]>").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Restore only some slots, merged into the current inventory.")));
+        sender.sendMessage(Component.text("/inventoryrestore <death|save> <player> <xp|enderchest>").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Restore only the XP or the ender chest.")));
+        sender.sendMessage(Component.text("/inventoryrestore rollback <duration> [type|any] [confirm]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Roll back every player to before that long ago.")));
+        sender.sendMessage(Component.text("/inventoryrestore search <material|model|name> <value> [page]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Find every snapshot containing an item.")));
+        sender.sendMessage(Component.text("/inventoryrestore <export|import <file>>").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Back up every snapshot to an archive, or load one back.")));
+        sender.sendMessage(Component.text("/inventoryrestore verify").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Check every snapshot and quarantine the corrupt ones.")));
+        sender.sendMessage(Component.text("/inventoryrestore verify codecs [record]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Check the snapshot codecs against the golden corpus.")));
     }
 
     /**
@@ -161,14 +457,55 @@ public class RestoreCommand implements TabExecutor {
      */
     @Override
     public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, String[] args) {
+        if (args.length > 1 && args[0].equalsIgnoreCase("rollback")) {
+            return rollbackCommand.onTabComplete(sender, command, alias, Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length > 1 && args[0].equalsIgnoreCase("search")) {
+            return searchCommand.onTabComplete(sender, command, alias, Arrays.copyOfRange(args, 1, args.length));
+        }
+        if (args.length > 1 && args[0].equalsIgnoreCase("import")) {
+            return backupCommand.onTabComplete(sender, command, alias, args);
+        }
+        if (args.length > 1 && args[0].equalsIgnoreCase("verify")) {
+            return verifyCommand.onTabComplete(sender, command, alias, Arrays.copyOfRange(args, 1, args.length));
+        }
+
         List<String> suggestions = new ArrayList<>();
 
+        // Restores, and with them player names and saves, are only suggested to those who may run them
+        boolean canRestore = sender.hasPermission(RESTORE_PERMISSION);
+
         if (args.length == 1) {
-            suggestions.add("death");
-            suggestions.add("save");
+            if (canRestore) {
+                suggestions.add("death");
+                suggestions.add("save");
+            }
+            if (sender.hasPermission("invrestore.rollback")) {
+                suggestions.add("rollback");
+            }
+            if (sender.hasPermission("invrestore.search")) {
+                suggestions.add("search");
+            }
+            if (sender.hasPermission("invrestore.backup")) {
+                suggestions.add("export");
+                suggestions.add("import");
+            }
+            if (sender.hasPermission("invrestore.verify")) {
+                suggestions.add("verify");
+            }
+        } else if (!canRestore) {
+            return List.of();
         } else if (args.length == 2) {
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                suggestions.add(player.getName());
+            // Offline players can only be targeted by whole-inventory restores, which are queued
+            suggestions.addAll(nameIndex.complete(args[1], true));
+            if (args[0].equalsIgnoreCase("save") && sender instanceof Player player) {
+                suggestions.addAll(database.getNamedSaves(player.getUniqueId()).keySet());
+            }
+        } else if (args.length == 3) {
+            suggestions.addAll(List.of("armor", "hotbar", "offhand", "slot:", "xp", "enderchest"));
+            UUID targetId = args[0].equalsIgnoreCase("save") ? nameIndex.resolve(args[1]) : null;
+            if (targetId != null) {
+                suggestions.addAll(database.getNamedSaves(targetId).keySet());
             }
         }
 
@@ -0,0 +1,250 @@
+package me.honeyberries.invRestore.command;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.storage.BulkRollback;
+import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.SnapshotType;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Handles /inventoryrestore rollback, which rolls every stored player back to their newest
+ * snapshot from before a point in time. Without "confirm" only a dry-run report is shown.
+ */
+public class RollbackCommand implements TabExecutor {
+
+    // Instance of the main plugin class to access plugin methods and data
+    private final InvRestore plugin = InvRestore.getInstance();
+
+    // Instance of PlayerDataStorage to access inventory data
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    private static final String ROLLBACK_PERMISSION = "invrestore.rollback";
+
+    /** Matches one part of a duration such as "2h" in "1d2h30m". */
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+)([smhdw])");
+
+    /** How many player names are listed in a dry-run report. */
+    private static final int DRY_RUN_SAMPLE = 10;
+
+    /** Set while a rollback is running, so two cannot overlap. */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Executes the rollback subcommand. The arguments do not include "rollback" itself.
+     *
+     * @param sender  The command sender (player or console).
+     * @param command The command being executed.
+     * @param label   The command label.
+     * @param args    The subcommand arguments: {@code <duration> [type|any] [confirm]}.
+     * @return True, as the command is always handled.
+     */
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+
+        if (!sender.hasPermission(ROLLBACK_PERMISSION)) {
+            sender.sendMessage(Component.text("You do not have permission to use this command.")
+                    .color(NamedTextColor.RED));
+            return true;
+        }
+
+        if (args.length < 1 || args.length > 3) {
+            sendHelpMessage(sender);
+            return true;
+        }
+
+        long duration = parseDuration(args[0]);
+        if (duration <= 0) {
+            sender.sendMessage(Component.text("Invalid duration. Use e.g. 30m, 2h or 1d12h.").color(NamedTextColor.RED));
+            return true;
+        }
+
+        SnapshotType type = null;
+        boolean confirm = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i].toLowerCase();
+            if (arg.equals("confirm")) {
+                confirm = true;
+            } else if (!arg.equals("any")) {
+                type = SnapshotType.fromKey(arg);
+                if (type == null) {
+                    sendHelpMessage(sender);
+                    return true;
+                }
+            }
+        }
+
+        if (confirm && !running.compareAndSet(false, true)) {
+            sender.sendMessage(Component.text("A rollback is already running.").color(NamedTextColor.YELLOW));
+            return true;
+        }
+
+        final long cutoff = System.currentTimeMillis() - duration;
+        final SnapshotType filter = type;
+        final boolean execute = confirm;
+
+        // Selecting snapshots walks the whole store, keep it off the region threads
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            Map<UUID, String> selection = database.findSnapshotsBefore(cutoff, filter);
+            if (execute) {
+                startRollback(sender, selection);
+            } else {
+                sendDryRunReport(sender, selection, cutoff, filter);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Reports what a rollback would do without changing anything.
+     *
+     * @param sender    The command sender.
+     * @param selection The snapshot selected per player.
+     * @param cutoff    The point in time being rolled back to.
+     * @param type      The snapshot type filter, or null for any.
+     */
+    private void sendDryRunReport(CommandSender sender, Map<UUID, String> selection, long cutoff, @Nullable SnapshotType type) {
+        long online = selection.keySet().stream()
+                .filter(uuid -> plugin.getServer().getPlayer(uuid) != null)
+                .count();
+
+        sender.sendMessage(Component.text("---- Rollback Dry Run ----").color(NamedTextColor.GOLD));
+        sender.sendMessage(Component.text("Rolling back to " + Instant.ofEpochMilli(cutoff)
+                + " using " + (type == null ? "any" : type.getKey()) + " snapshots.").color(NamedTextColor.AQUA));
+        sender.sendMessage(Component.text(selection.size() + " player(s) would be affected: " + online
+                + " online, " + (selection.size() - online) + " offline (queued until they join).").color(NamedTextColor.AQUA));
+
+        List<String> sample = selection.keySet().stream()
+                .limit(DRY_RUN_SAMPLE)
+                .map(uuid -> {
+                    OfflinePlayer player = plugin.getServer().getOfflinePlayer(uuid);
+                    return player.getName() != null ? player.getName() : uuid.toString();
+                })
+                .toList();
+        if (!sample.isEmpty()) {
+            sender.sendMessage(Component.text("Includes: " + String.join(", ", sample)
+                    + (selection.size() > sample.size() ? ", ..." : "")).color(NamedTextColor.GRAY));
+        }
+        sender.sendMessage(Component.text("Add \"confirm\" to the command to perform the rollback.").color(NamedTextColor.YELLOW));
+    }
+
+    /**
+     * Starts the rollback and reports progress to the sender until it finishes.
+     *
+     * @param sender    The command sender.
+     * @param selection The snapshot selected per player.
+     */
+    private void startRollback(CommandSender sender, Map<UUID, String> selection) {
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+        BulkRollback rollback = new BulkRollback(plugin, selection, senderName);
+
+        sender.sendMessage(Component.text("Rolling back " + rollback.getTotal() + " player(s)...").color(NamedTextColor.GOLD));
+
+        ScheduledTask progress = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> {
+            if (rollback.isFinished()) return;
+            sender.sendMessage(Component.text(String.format("Rollback progress: %d/%d (%.1f players/s)",
+                    rollback.getProcessed(), rollback.getTotal(), rollback.getPlayersPerSecond())).color(NamedTextColor.GRAY));
+        }, 5, 5, TimeUnit.SECONDS);
+
+        rollback.start(() -> {
+            progress.cancel();
+            running.set(false);
+
+            String summary = String.format("Rollback finished: %d applied, %d queued for offline players, %d failed (%.1f players/s).",
+                    rollback.getApplied(), rollback.getQueued(), rollback.getFailed(), rollback.getPlayersPerSecond());
+            sender.sendMessage(Component.text(summary)
+                    .color(rollback.getFailed() == 0 ? NamedTextColor.GREEN : NamedTextColor.YELLOW));
+            plugin.getLogger().info(senderName + " ran a rollback. " + summary);
+        });
+    }
+
+    /**
+     * Parses a duration such as "30m", "2h" or "1d12h".
+     *
+     * @param input The duration text.
+     * @return The duration in milliseconds, or -1 if it is invalid or too long to represent.
+     */
+    private long parseDuration(String input) {
+        String text = input.toLowerCase();
+        Matcher matcher = DURATION_PART.matcher(text);
+        long total = 0;
+        int end = 0;
+        try {
+            while (matcher.find()) {
+                if (matcher.start() != end) return -1;
+                end = matcher.end();
+
+                long unit = switch (matcher.group(2)) {
+                    case "s" -> TimeUnit.SECONDS.toMillis(1);
+                    case "m" -> TimeUnit.MINUTES.toMillis(1);
+                    case "h" -> TimeUnit.HOURS.toMillis(1);
+                    case "d" -> TimeUnit.DAYS.toMillis(1);
+                    default -> TimeUnit.DAYS.toMillis(7);
+                };
+                total = Math.addExact(total, Math.multiplyExact(Long.parseLong(matcher.group(1)), unit));
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            // An amount or total past the range of a long
+            return -1;
+        }
+        return end == text.length() ? total : -1;
+    }
+
+    /**
+     * Sends a help message to the sender.
+     *
+     * @param sender The command sender.
+     */
+    private void sendHelpMessage(CommandSender sender) {
+        sender.sendMessage(Component.text("---- Inventory Rollback Help ----").color(NamedTextColor.GOLD));
+        sender.sendMessage(Component.text("/inventoryrestore rollback <duration> [type|any]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Show which players would be rolled back to before that long ago.")));
+        sender.sendMessage(Component.text("/inventoryrestore rollback <duration> [type|any] confirm").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Roll back every player, queueing offline players until they join.")));
+    }
+
+    /**
+     * Handles tab completion for the rollback subcommand. The arguments do not include "rollback" itself.
+     *
+     * @param sender  The command sender.
+     * @param command The command being executed.
+     * @param alias   The alias used for the command.
+     * @param args    The subcommand arguments.
+     * @return A list of possible tab completions.
+     */
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
+        Stream<String> options;
+        if (args.length == 1) {
+            options = Stream.of("30m", "1h", "6h", "1d");
+        } else if (args.length == 2) {
+            options = Stream.concat(Arrays.stream(SnapshotType.values()).map(SnapshotType::getKey),
+                    Stream.of("any", "confirm"));
+        } else if (args.length == 3) {
+            options = Stream.of("confirm");
+        } else {
+            return List.of();
+        }
+
+        return options.filter(option -> option.startsWith(args[args.length - 1].toLowerCase())).toList();
+    }
+}
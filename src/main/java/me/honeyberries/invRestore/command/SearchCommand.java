@@ -0,0 +1,175 @@
+package me.honeyberries.invRestore.command;
+
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.storage.ItemIndex;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.jetbrains.annotations.NotNull;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Handles /inventoryrestore search, which lists every snapshot containing a given item
+ * using the {@link ItemIndex}, without decoding any snapshot.
+ */
+public class SearchCommand implements TabExecutor {
+
+    // Instance of the main plugin class to access plugin methods and data
+    private final InvRestore plugin = InvRestore.getInstance();
+
+    // Index of the items in every snapshot
+    private final ItemIndex itemIndex = ItemIndex.getInstance();
+
+    private static final String SEARCH_PERMISSION = "invrestore.search";
+
+    /** Number of results shown per page. */
+    private static final int PAGE_SIZE = 10;
+
+    /**
+     * Executes the search subcommand. The arguments do not include "search" itself.
+     *
+     * @param sender  The command sender (player or console).
+     * @param command The command being executed.
+     * @param label   The command label.
+     * @param args    The subcommand arguments: {@code <material|model|name> <value...> [page]}.
+     * @return True, as the command is always handled.
+     */
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+
+        if (!sender.hasPermission(SEARCH_PERMISSION)) {
+            sender.sendMessage(Component.text("You do not have permission to use this command.")
+                    .color(NamedTextColor.RED));
+            return true;
+        }
+
+        if (args.length < 2) {
+            sendHelpMessage(sender);
+            return true;
+        }
+
+        // A trailing number is the page, unless it is the only value given
+        int page = 1;
+        int valueEnd = args.length;
+        if (args.length > 2 && args[args.length - 1].matches("\\d+")) {
+            page = Math.max(1, Integer.parseInt(args[args.length - 1]));
+            valueEnd--;
+        }
+        String value = String.join(" ", Arrays.copyOfRange(args, 1, valueEnd));
+
+        String key;
+        switch (args[0].toLowerCase()) {
+            case "material" -> key = ItemIndex.materialKey(value);
+            case "model" -> {
+                try {
+                    key = ItemIndex.modelKey(Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(Component.text("Custom model data must be a number.").color(NamedTextColor.RED));
+                    return true;
+                }
+            }
+            case "name" -> key = ItemIndex.nameKey(value);
+            default -> {
+                sendHelpMessage(sender);
+                return true;
+            }
+        }
+
+        if (!itemIndex.isReady()) {
+            sender.sendMessage(Component.text("The item index is still being built, results may be incomplete.")
+                    .color(NamedTextColor.YELLOW));
+        }
+
+        sendResults(sender, args[0].toLowerCase() + " " + value, itemIndex.query(key), page);
+        return true;
+    }
+
+    /**
+     * Sends one page of search results to the sender.
+     *
+     * @param sender  The command sender.
+     * @param query   The query, as shown in the header.
+     * @param results Every matching snapshot, newest first.
+     * @param page    The 1-based page to show.
+     */
+    private void sendResults(CommandSender sender, String query, List<ItemIndex.Entry> results, int page) {
+        if (results.isEmpty()) {
+            sender.sendMessage(Component.text("No snapshots contain " + query + ".").color(NamedTextColor.YELLOW));
+            return;
+        }
+
+        int pages = (results.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        page = Math.min(page, pages);
+
+        sender.sendMessage(Component.text("---- " + results.size() + " snapshot(s) with " + query
+                + " (page " + page + "/" + pages + ") ----").color(NamedTextColor.GOLD));
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        int start = (page - 1) * PAGE_SIZE;
+        for (ItemIndex.Entry entry : results.subList(start, Math.min(start + PAGE_SIZE, results.size()))) {
+            OfflinePlayer owner = plugin.getServer().getOfflinePlayer(entry.owner());
+            String ownerName = owner.getName() != null ? owner.getName() : entry.owner().toString();
+            String type = entry.type() != null ? entry.type().getKey() : "unknown";
+
+            sender.sendMessage(Component.text(ownerName).color(NamedTextColor.AQUA)
+                    .append(Component.text(" - " + type + " - " + dateFormat.format(new Date(entry.time())))
+                            .color(NamedTextColor.WHITE))
+                    .append(Component.text(" #" + entry.id()).color(NamedTextColor.GRAY)));
+        }
+
+        if (page < pages) {
+            sender.sendMessage(Component.text("Use /inventoryrestore search " + query + " " + (page + 1)
+                    + " for the next page.").color(NamedTextColor.GRAY));
+        }
+    }
+
+    /**
+     * Sends a help message to the sender.
+     *
+     * @param sender The command sender.
+     */
+    private void sendHelpMessage(CommandSender sender) {
+        sender.sendMessage(Component.text("---- Inventory Search Help ----").color(NamedTextColor.GOLD));
+        sender.sendMessage(Component.text("/inventoryrestore search material <material> [page]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Find snapshots containing a material.")));
+        sender.sendMessage(Component.text("/inventoryrestore search model <custom model data> [page]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Find snapshots containing an item with custom model data.")));
+        sender.sendMessage(Component.text("/inventoryrestore search name <display name> [page]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Find snapshots containing an item with that exact name.")));
+    }
+
+    /**
+     * Handles tab completion for the search subcommand. The arguments do not include "search" itself.
+     *
+     * @param sender  The command sender.
+     * @param command The command being executed.
+     * @param alias   The alias used for the command.
+     * @param args    The subcommand arguments.
+     * @return A list of possible tab completions.
+     */
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
+        String input = args[args.length - 1].toLowerCase();
+        if (args.length == 1) {
+            return Stream.of("material", "model", "name")
+                    .filter(option -> option.startsWith(input))
+                    .toList();
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("material")) {
+            return Arrays.stream(Material.values())
+                    .filter(material -> !material.isLegacy() && material.isItem())
+                    .map(material -> material.name().toLowerCase())
+                    .filter(name -> name.startsWith(input))
+                    .toList();
+        }
+        return List.of();
+    }
+}
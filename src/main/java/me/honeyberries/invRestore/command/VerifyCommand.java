@@ -0,0 +1,182 @@
+package me.honeyberries.invRestore.command;
+
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.storage.CodecCorpus;
+import me.honeyberries.invRestore.storage.IntegrityScanner;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Handles /inventoryrestore verify, which scans every stored snapshot for corruption
+ * and quarantines the snapshots that fail. See {@link IntegrityScanner}.
+ * Also handles /inventoryrestore verify codecs, which checks the snapshot codecs against the
+ * golden {@link CodecCorpus}.
+ */
+public class VerifyCommand implements TabExecutor {
+
+    // Instance of the main plugin class to access plugin methods and data
+    private final InvRestore plugin = InvRestore.getInstance();
+
+    private static final String VERIFY_PERMISSION = "invrestore.verify";
+
+    /**
+     * Executes the verify subcommand. The arguments do not include "verify" itself.
+     *
+     * @param sender  The command sender (player or console).
+     * @param command The command being executed.
+     * @param label   The command label.
+     * @param args    The subcommand arguments: nothing, or {@code codecs [record]}.
+     * @return True, as the command is always handled.
+     */
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+
+        if (!sender.hasPermission(VERIFY_PERMISSION)) {
+            sender.sendMessage(Component.text("You do not have permission to use this command.")
+                    .color(NamedTextColor.RED));
+            return true;
+        }
+
+        if (args.length >= 1 && args[0].equalsIgnoreCase("codecs")) {
+            if (args.length == 1) {
+                return checkCodecs(sender);
+            }
+            if (args.length == 2 && args[1].equalsIgnoreCase("record")) {
+                return recordCodecs(sender);
+            }
+        }
+
+        if (args.length != 0) {
+            sendHelpMessage(sender);
+            return true;
+        }
+
+        String senderName = (sender instanceof Player) ? sender.getName() : "Console";
+        sender.sendMessage(Component.text("Verifying every snapshot...").color(NamedTextColor.GOLD));
+
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            IntegrityScanner.Result result = plugin.getIntegrityScanner().scan(false);
+            if (result == null) {
+                sender.sendMessage(Component.text("A scan is already running.").color(NamedTextColor.YELLOW));
+                return;
+            }
+
+            String summary = String.format("Checked %d snapshot(s) in %.1fs: %d corrupt, %d quarantined, %d given a checksum.",
+                    result.checked(), result.millis() / 1000.0, result.corrupt(), result.quarantined(), result.checksumsAdded());
+            sender.sendMessage(Component.text(summary)
+                    .color(result.corrupt() == 0 ? NamedTextColor.GREEN : NamedTextColor.YELLOW));
+            for (String sample : result.samples()) {
+                sender.sendMessage(Component.text(" - " + sample).color(NamedTextColor.GRAY));
+            }
+            if (result.corrupt() > result.samples().size()) {
+                sender.sendMessage(Component.text(" ... and " + (result.corrupt() - result.samples().size()) + " more")
+                        .color(NamedTextColor.GRAY));
+            }
+            plugin.getLogger().info(senderName + " ran an integrity scan. " + summary);
+        });
+        return true;
+    }
+
+    /**
+     * Checks the snapshot codecs against the codec corpus on the async scheduler and reports every failure.
+     *
+     * @param sender The command sender.
+     * @return True, as the command was handled.
+     */
+    private boolean checkCodecs(CommandSender sender) {
+        sender.sendMessage(Component.text("Checking snapshot codecs against the corpus...").color(NamedTextColor.GOLD));
+
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            CodecCorpus.Result result = new CodecCorpus(plugin).check();
+            if (result == null) {
+                sender.sendMessage(Component.text("There is no codec corpus yet, record one with /inventoryrestore verify codecs record.")
+                        .color(NamedTextColor.YELLOW));
+                return;
+            }
+
+            String report = result.report() == null ? "" : " Report written to " + result.report().getFileName() + ".";
+            if (result.passed()) {
+                sender.sendMessage(Component.text("All " + result.entries() + " corpus entries passed." + report)
+                        .color(NamedTextColor.GREEN));
+                plugin.getLogger().info("Codec check passed for " + result.entries() + " corpus entries.");
+                return;
+            }
+
+            sender.sendMessage(Component.text("Codec check FAILED with " + result.failures().size() + " failure(s)." + report)
+                    .color(NamedTextColor.RED));
+            for (String failure : result.failures()) {
+                sender.sendMessage(Component.text(" - " + failure).color(NamedTextColor.GRAY));
+            }
+            plugin.getLogger().severe("Codec check failed: " + String.join("; ", result.failures()));
+        });
+        return true;
+    }
+
+    /**
+     * Records a new codec corpus into the data folder on the async scheduler.
+     *
+     * @param sender The command sender.
+     * @return True, as the command was handled.
+     */
+    private boolean recordCodecs(CommandSender sender) {
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            try {
+                Path file = new CodecCorpus(plugin).record();
+                sender.sendMessage(Component.text("Recorded the codec corpus to " + file.getFileName()
+                        + ". Run /inventoryrestore verify codecs after updating the plugin or the server to check against it.")
+                        .color(NamedTextColor.GREEN));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not record the codec corpus", e);
+                sender.sendMessage(Component.text("Could not record the codec corpus: " + e.getMessage())
+                        .color(NamedTextColor.RED));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Sends a help message to the sender.
+     *
+     * @param sender The command sender.
+     */
+    private void sendHelpMessage(CommandSender sender) {
+        sender.sendMessage(Component.text("---- Inventory Verify Help ----").color(NamedTextColor.GOLD));
+        sender.sendMessage(Component.text("/inventoryrestore verify").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Check every snapshot and quarantine the corrupt ones.")));
+        sender.sendMessage(Component.text("/inventoryrestore verify codecs [record]").color(NamedTextColor.AQUA)
+                .append(Component.text(" - Check the snapshot codecs against the golden corpus, or record a new one.")));
+    }
+
+    /**
+     * Handles tab completion for the verify subcommand. The arguments do not include "verify" itself.
+     *
+     * @param sender  The command sender.
+     * @param command The command being executed.
+     * @param alias   The alias used for the command.
+     * @param args    The subcommand arguments.
+     * @return A list of possible tab completions.
+     */
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
+        Stream<String> options;
+        if (args.length == 1) {
+            options = Stream.of("codecs");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("codecs")) {
+            options = Stream.of("record");
+        } else {
+            return List.of();
+        }
+        return options.filter(option -> option.startsWith(args[args.length - 1].toLowerCase())).toList();
+    }
+}
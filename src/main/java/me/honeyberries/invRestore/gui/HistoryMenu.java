@@ -0,0 +1,281 @@
+package me.honeyberries.invRestore.gui;
+
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.SnapshotInfo;
+import me.honeyberries.invRestore.storage.SnapshotType;
+import me.honeyberries.invRestore.util.PlayerData;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A browser over a player's snapshot history.
+ * <p>
+ * The list pages are built from snapshot metadata only (time, cause and item count), no data is read
+ * to list the history. A snapshot's data is loaded by id and decoded when it is opened, off the
+ * region thread, and the next older snapshot is prefetched in the background so paging through the
+ * history does not wait on decoding.
+ * Besides the inventory, only the small sections shown on the info item (death cause, location,
+ * vitals and level) are decoded; the ender chest and potion effects are left untouched.
+ */
+public class HistoryMenu extends SnapshotMenu {
+
+    /** Number of snapshot entries per list page. */
+    private static final int ENTRIES_PER_PAGE = 45;
+    /** Number of slots used by a player inventory (storage, armor and offhand). */
+    private static final int CONTENT_SLOTS = 41;
+
+    private static final int SLOT_PREVIOUS = 45;
+    private static final int SLOT_INFO = 49;
+    private static final int SLOT_NEXT = 53;
+
+    private final InvRestore plugin = InvRestore.getInstance();
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** The player viewing this menu. */
+    private final Player viewer;
+    /** The snapshots being browsed, newest first. */
+    private final List<SnapshotInfo> snapshots;
+    /** Decoded or decoding snapshots, by index in {@link #snapshots}. */
+    private final Map<Integer, CompletableFuture<Decoded>> decoded = new HashMap<>();
+
+    /** The list page being shown, when no snapshot is open. */
+    private int listPage = 0;
+    /** The index of the open snapshot, or -1 when a list page is shown. */
+    private int openSnapshot = -1;
+
+    /**
+     * The parts of a snapshot shown when it is opened.
+     *
+     * @param contents the inventory contents
+     * @param details extra lines for the info item
+     */
+    private record Decoded(ItemStack[] contents, List<Component> details) {
+    }
+
+    /**
+     * Creates a history browser. Call {@link #open()} to show it.
+     *
+     * @param viewer the player viewing the history
+     * @param targetName the name of the player whose history is shown
+     * @param snapshots the snapshots to browse, newest first
+     */
+    public HistoryMenu(Player viewer, String targetName, List<SnapshotInfo> snapshots) {
+        super(Component.text(targetName).color(NamedTextColor.DARK_GREEN)
+                .append(Component.text("'s History").color(NamedTextColor.GOLD)));
+        this.viewer = viewer;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Shows the first list page to the viewer. Must be called on the viewer's region thread.
+     */
+    public void open() {
+        renderList();
+        viewer.openInventory(inventory);
+    }
+
+    @Override
+    public void onClick(Player player, int slot) {
+        if (openSnapshot < 0) {
+            int pages = Math.max(1, (snapshots.size() + ENTRIES_PER_PAGE - 1) / ENTRIES_PER_PAGE);
+            if (slot == SLOT_PREVIOUS && listPage > 0) {
+                listPage--;
+                renderList();
+            } else if (slot == SLOT_NEXT && listPage < pages - 1) {
+                listPage++;
+                renderList();
+            } else if (slot < ENTRIES_PER_PAGE) {
+                int index = listPage * ENTRIES_PER_PAGE + slot;
+                if (index < snapshots.size()) {
+                    openSnapshot(index);
+                }
+            }
+        } else {
+            if (slot == SLOT_INFO) {
+                listPage = openSnapshot / ENTRIES_PER_PAGE;
+                openSnapshot = -1;
+                renderList();
+            } else if (slot == SLOT_PREVIOUS && openSnapshot > 0) {
+                openSnapshot(openSnapshot - 1);
+            } else if (slot == SLOT_NEXT && openSnapshot < snapshots.size() - 1) {
+                openSnapshot(openSnapshot + 1);
+            }
+        }
+    }
+
+    /**
+     * Shows the current list page, built from metadata alone.
+     */
+    private void renderList() {
+        inventory.clear();
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        int start = listPage * ENTRIES_PER_PAGE;
+        for (int i = start; i < Math.min(start + ENTRIES_PER_PAGE, snapshots.size()); i++) {
+            SnapshotInfo snapshot = snapshots.get(i);
+            String cause = snapshot.type() != null ? snapshot.type().getKey() : "unknown";
+            String items = snapshot.itemCount() >= 0 ? String.valueOf(snapshot.itemCount()) : "?";
+
+            inventory.setItem(i - start, icon(iconFor(snapshot.type()),
+                    Component.text(dateFormat.format(new Date(snapshot.time()))).color(NamedTextColor.AQUA),
+                    List.of(Component.text("Cause: " + cause).color(NamedTextColor.GRAY),
+                            Component.text("Items: " + items).color(NamedTextColor.GRAY),
+                            Component.text("Click to view").color(NamedTextColor.YELLOW))));
+        }
+
+        int pages = Math.max(1, (snapshots.size() + ENTRIES_PER_PAGE - 1) / ENTRIES_PER_PAGE);
+        if (listPage > 0) {
+            inventory.setItem(SLOT_PREVIOUS, icon(Material.ARROW, "Previous page", NamedTextColor.YELLOW));
+        }
+        inventory.setItem(SLOT_INFO, icon(Material.BOOK, "Page " + (listPage + 1) + "/" + pages
+                + " - " + snapshots.size() + " snapshot(s)", NamedTextColor.GOLD));
+        if (listPage < pages - 1) {
+            inventory.setItem(SLOT_NEXT, icon(Material.ARROW, "Next page", NamedTextColor.YELLOW));
+        }
+    }
+
+    /**
+     * Opens a snapshot, showing a placeholder until its contents are decoded, and prefetches the next one.
+     *
+     * @param index the index of the snapshot in {@link #snapshots}
+     */
+    private void openSnapshot(int index) {
+        openSnapshot = index;
+
+        // Only keep the neighbours of the open snapshot decoded
+        decoded.keySet().removeIf(i -> Math.abs(i - index) > 1);
+
+        CompletableFuture<Decoded> contents = decode(index);
+        if (index + 1 < snapshots.size()) {
+            decode(index + 1);
+        }
+
+        if (contents.isDone()) {
+            renderSnapshot(index, contents.join());
+            return;
+        }
+
+        renderSnapshot(index, null);
+        contents.thenAccept(snapshot -> viewer.getScheduler().run(plugin, task -> {
+            // The viewer may have moved on while the snapshot was decoding
+            if (openSnapshot == index && viewer.getOpenInventory().getTopInventory().getHolder(false) == this) {
+                renderSnapshot(index, snapshot);
+            }
+        }, null));
+    }
+
+    /**
+     * Starts decoding a snapshot on the async scheduler, unless it is already decoded or decoding.
+     *
+     * @param index the index of the snapshot in {@link #snapshots}
+     * @return the decoded snapshot, once available
+     */
+    private CompletableFuture<Decoded> decode(int index) {
+        return decoded.computeIfAbsent(index, i -> {
+            SnapshotInfo snapshot = snapshots.get(i);
+            CompletableFuture<Decoded> future = new CompletableFuture<>();
+            plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+                PlayerData data = database.getSnapshot(snapshot.owner(), snapshot.id());
+                future.complete(data != null
+                        ? new Decoded(data.getInventoryContents(), details(data))
+                        : new Decoded(new ItemStack[0], List.of()));
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Builds the info lines of a snapshot, decoding only the sections they need.
+     *
+     * @param data the snapshot
+     * @return the info lines
+     */
+    private static List<Component> details(PlayerData data) {
+        List<Component> lines = new ArrayList<>();
+
+        String deathCause = data.getDeathCause();
+        if (deathCause != null) {
+            lines.add(Component.text(deathCause).color(NamedTextColor.RED));
+        }
+
+        Location location = data.getLocation();
+        if (location != null) {
+            lines.add(Component.text(String.format("Location: %s %d, %d, %d", location.getWorld().getName(),
+                    location.getBlockX(), location.getBlockY(), location.getBlockZ())).color(NamedTextColor.GRAY));
+        }
+
+        PlayerData.Vitals vitals = data.getVitals();
+        if (vitals != null) {
+            lines.add(Component.text(String.format("Health: %.1f  Food: %d", vitals.health(), vitals.foodLevel()))
+                    .color(NamedTextColor.GRAY));
+        }
+
+        lines.add(Component.text("Level: " + data.getExpLevel()).color(NamedTextColor.GRAY));
+        return lines;
+    }
+
+    /**
+     * Shows an open snapshot and the navigation controls.
+     *
+     * @param index the index of the snapshot in {@link #snapshots}
+     * @param decodedSnapshot the decoded snapshot, or {@code null} while still decoding
+     */
+    private void renderSnapshot(int index, Decoded decodedSnapshot) {
+        inventory.clear();
+
+        List<Component> lore = new ArrayList<>();
+        if (decodedSnapshot == null) {
+            inventory.setItem(22, icon(Material.CLOCK, "Loading...", NamedTextColor.GRAY));
+        } else {
+            fill(decodedSnapshot.contents(), CONTENT_SLOTS);
+            lore.addAll(decodedSnapshot.details());
+        }
+
+        SnapshotInfo snapshot = snapshots.get(index);
+        String cause = snapshot.type() != null ? snapshot.type().getKey() : "unknown";
+        lore.add(0, Component.text("Cause: " + cause).color(NamedTextColor.GRAY));
+        lore.add(Component.text("Click to go back to the list").color(NamedTextColor.YELLOW));
+        if (index > 0) {
+            inventory.setItem(SLOT_PREVIOUS, icon(Material.ARROW, "Newer snapshot", NamedTextColor.YELLOW));
+        }
+        inventory.setItem(SLOT_INFO, icon(Material.BOOK,
+                Component.text(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(snapshot.time())))
+                        .color(NamedTextColor.GOLD), lore));
+        if (index < snapshots.size() - 1) {
+            inventory.setItem(SLOT_NEXT, icon(Material.ARROW, "Older snapshot", NamedTextColor.YELLOW));
+        }
+    }
+
+    /**
+     * Picks the list icon for a snapshot type.
+     *
+     * @param type the snapshot type, or {@code null} if unknown
+     * @return the icon material
+     */
+    private static Material iconFor(SnapshotType type) {
+        if (type == null) return Material.PAPER;
+        return switch (type) {
+            case DEATH -> Material.SKELETON_SKULL;
+            case SAVE -> Material.CHEST;
+            case NAMED_SAVE -> Material.NAME_TAG;
+            case AUTO -> Material.CLOCK;
+            case LOGOUT -> Material.OAK_DOOR;
+            case WORLD_CHANGE -> Material.ENDER_PEARL;
+            case GAMEMODE_CHANGE -> Material.COMMAND_BLOCK;
+            case TELEPORT -> Material.COMPASS;
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package me.honeyberries.invRestore.gui;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Base class for the read-only inventories opened by this plugin.
+ * The {@link me.honeyberries.invRestore.listener.GUIListener} recognizes them by their holder,
+ * cancels every click and forwards clicks inside the menu to {@link #onClick(Player, int)}.
+ */
+public abstract class SnapshotMenu implements InventoryHolder {
+
+    /** Number of slots in every menu, a double chest. */
+    protected static final int SIZE = 54;
+
+    /** The inventory backing this menu. */
+    protected final Inventory inventory;
+
+    /**
+     * Creates the backing inventory with this menu as its holder.
+     *
+     * @param title the title of the inventory
+     */
+    protected SnapshotMenu(Component title) {
+        this.inventory = Bukkit.createInventory(this, SIZE, title);
+    }
+
+    /**
+     * Gets the inventory backing this menu.
+     *
+     * @return the inventory
+     */
+    @Override
+    public @NotNull Inventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Called when a slot of this menu is clicked. The click has already been cancelled.
+     *
+     * @param player the player who clicked
+     * @param slot the raw slot that was clicked
+     */
+    public void onClick(Player player, int slot) {
+        // Plain views do not react to clicks
+    }
+
+    /**
+     * Fills slots with inventory contents, leaving slots past the end of the contents untouched.
+     *
+     * @param contents the items to show, may contain {@code null} entries
+     * @param limit the number of slots that may be filled
+     */
+    protected void fill(ItemStack[] contents, int limit) {
+        for (int i = 0; i < Math.min(contents.length, limit); i++) {
+            inventory.setItem(i, contents[i]);
+        }
+    }
+
+    /**
+     * Creates a named icon item for menu controls and entries.
+     *
+     * @param material the material of the icon
+     * @param name the display name
+     * @param lore the lore lines
+     * @return the icon
+     */
+    protected static ItemStack icon(Material material, Component name, List<Component> lore) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        meta.displayName(name.decoration(TextDecoration.ITALIC, false));
+        meta.lore(lore.stream().map(line -> line.decoration(TextDecoration.ITALIC, false)).toList());
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    /**
+     * Creates a named icon item without lore.
+     *
+     * @param material the material of the icon
+     * @param name the display name
+     * @param color the color of the name
+     * @return the icon
+     */
+    protected static ItemStack icon(Material material, String name, NamedTextColor color) {
+        return icon(material, Component.text(name).color(color), List.of());
+    }
+}
@@ -0,0 +1,51 @@
+package me.honeyberries.invRestore.gui;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * A read-only view of a single decoded snapshot, as opened by /inventorysaveview death and save.
+ * It can be opened as a loading placeholder first and filled in once the snapshot is decoded.
+ */
+public class SnapshotViewMenu extends SnapshotMenu {
+
+    /** Slot of the loading placeholder, in the middle of the menu. */
+    private static final int SLOT_LOADING = 22;
+
+    /**
+     * Creates a view showing a loading placeholder until {@link #show(ItemStack[])} is called.
+     *
+     * @param targetName the name of the player the snapshot belongs to
+     */
+    public SnapshotViewMenu(String targetName) {
+        super(Component.text(targetName).color(NamedTextColor.DARK_GREEN)
+                .append(Component.text("'s Inventory").color(NamedTextColor.GOLD)));
+
+        inventory.setItem(SLOT_LOADING, icon(Material.CLOCK, "Loading...", NamedTextColor.GRAY));
+    }
+
+    /**
+     * Creates a view showing the given inventory contents.
+     *
+     * @param targetName the name of the player the snapshot belongs to
+     * @param contents the decoded inventory contents
+     */
+    public SnapshotViewMenu(String targetName, ItemStack[] contents) {
+        this(targetName);
+        show(contents);
+    }
+
+    /**
+     * Replaces whatever the view shows with inventory contents. Must be called on the viewer's region thread.
+     *
+     * @param contents the decoded inventory contents
+     */
+    public void show(ItemStack[] contents) {
+        inventory.clear();
+
+        // The armor and offhand items are already included in the contents array
+        fill(contents, SIZE);
+    }
+}
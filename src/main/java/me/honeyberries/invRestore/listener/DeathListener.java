@@ -1,8 +1,9 @@
 package me.honeyberries.invRestore.listener;
 
-import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.DeathDebouncer;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -12,15 +13,25 @@ import org.bukkit.event.entity.PlayerDeathEvent;
 /**
  * Listener class for handling player death events.
  * This class is responsible for saving a player's inventory when they die.
+ * Deaths in quick succession are coalesced by the {@link DeathDebouncer}.
  */
 public class DeathListener implements Listener {
 
-    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+    private final DeathDebouncer deathDebouncer;
+
+    /**
+     * Creates the listener.
+     *
+     * @param deathDebouncer the debouncer that death snapshots are handed to
+     */
+    public DeathListener(DeathDebouncer deathDebouncer) {
+        this.deathDebouncer = deathDebouncer;
+    }
 
     /**
      * Event handler for the PlayerDeathEvent.
      * This method saves the player's inventory to the YAML file when they die.
-     * Uses HIGHEST priority to ensure it runs before items are potentially dropped.
+     * The inventory is captured inside the handler, before the server clears it for the drops.
      *
      * @param event The PlayerDeathEvent.
      */
@@ -28,8 +39,10 @@ public class DeathListener implements Listener {
     public void onPlayerDeath(PlayerDeathEvent event) {
         Player player = event.getEntity();
 
-        // Save the player's inventory and XP
-        database.savePlayerData(player, true);
+        // Save the player's inventory and XP, along with what killed them
+        Component deathMessage = event.deathMessage();
+        String deathCause = deathMessage == null ? null : PlainTextComponentSerializer.plainText().serialize(deathMessage);
+        deathDebouncer.onDeath(player, deathCause);
 
         // Notify the player that their inventory has been saved
         player.sendMessage(Component.text("Your inventory has been saved.")
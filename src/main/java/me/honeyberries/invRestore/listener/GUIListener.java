@@ -1,23 +1,21 @@
 package me.honeyberries.invRestore.listener;
 
-import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.gui.SnapshotMenu;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
-import org.bukkit.event.inventory.InventoryCloseEvent;
-import org.bukkit.inventory.Inventory;
+import org.bukkit.event.inventory.InventoryDragEvent;
 
 /**
  * Listener to handle custom GUI interactions for restricted inventories.
+ * Menus are recognized by their {@link SnapshotMenu} holder.
  */
 public class GUIListener implements Listener {
 
-    private static final String RESTORE_INVENTORY_METADATA = InvRestore.getInstance().RESTORE_INVENTORY_METADATA;
-    private final InvRestore plugin = InvRestore.getInstance();
-
     /**
-     * Handles InventoryClickEvent to prevent moving items from the restricted inventory.
+     * Handles InventoryClickEvent to prevent moving items into or out of a menu,
+     * and forwards clicks inside the menu to it.
      *
      * @param event The InventoryClickEvent to process.
      */
@@ -26,34 +24,28 @@ public class GUIListener implements Listener {
         if (!(event.getWhoClicked() instanceof Player player)) {
             return;
         }
-        // If there is no clicked inventory, nothing needs to be done.
-        if (event.getClickedInventory() == null || !event.getClickedInventory().equals(event.getInventory())) {
-            return;
-        }
-        // If the player doesn't have the metadata, ignore the event.
-        if (!player.hasMetadata(RESTORE_INVENTORY_METADATA)) {
+        // If the open inventory is not one of our menus, ignore the event.
+        if (!(event.getInventory().getHolder(false) instanceof SnapshotMenu menu)) {
             return;
         }
 
-        final Inventory restrictedInventory = event.getInventory();
-        // If the clicked inventory is the restricted one, cancel the event.
-        if (event.getClickedInventory().equals(restrictedInventory)) {
-            event.setCancelled(true);
+        // Cancel every click while a menu is open, including shift-clicks from the player's own inventory.
+        event.setCancelled(true);
+
+        if (event.getClickedInventory() != null && event.getClickedInventory().equals(event.getInventory())) {
+            menu.onClick(player, event.getRawSlot());
         }
     }
 
     /**
-     * Handles InventoryCloseEvent to remove metadata when the restricted inventory is closed.
+     * Handles InventoryDragEvent to prevent dragging items into a menu.
      *
-     * @param event The InventoryCloseEvent to process.
+     * @param event The InventoryDragEvent to process.
      */
     @EventHandler
-    public void onClose(final InventoryCloseEvent event) {
-        if (!(event.getPlayer() instanceof Player player)) {
-            return;
-        }
-        if (player.hasMetadata(RESTORE_INVENTORY_METADATA)) {
-            player.removeMetadata(RESTORE_INVENTORY_METADATA, plugin);
+    public void onDrag(final InventoryDragEvent event) {
+        if (event.getInventory().getHolder(false) instanceof SnapshotMenu) {
+            event.setCancelled(true);
         }
     }
-}
\ No newline at end of file
+}
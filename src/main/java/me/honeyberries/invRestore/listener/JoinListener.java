@@ -0,0 +1,32 @@
+package me.honeyberries.invRestore.listener;
+
+import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+/**
+ * Listener class for handling player join events.
+ * This class applies restores that were queued while the player was offline.
+ */
+public class JoinListener implements Listener {
+
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /**
+     * Event handler for the PlayerJoinEvent.
+     * Checking for a queued restore is an in-memory lookup, so joins without one cost nothing extra.
+     *
+     * @param event The PlayerJoinEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+
+        if (database.hasPendingRestore(player.getUniqueId())) {
+            database.applyPendingRestore(player);
+        }
+    }
+}
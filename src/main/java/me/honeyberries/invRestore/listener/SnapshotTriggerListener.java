@@ -0,0 +1,174 @@
+package me.honeyberries.invRestore.listener;
+
+import me.honeyberries.invRestore.storage.PlayerDataStorage;
+import me.honeyberries.invRestore.storage.SnapshotType;
+import me.honeyberries.invRestore.util.PlayerData;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener class for taking snapshots on player events other than death:
+ * logout, world change, game mode change and teleports by plugins or commands.
+ * <p>
+ * Handlers run at LOWEST priority so the inventory is captured before per-world inventory plugins
+ * swap it. Cancellable events are only captured there; the snapshot is stored from a MONITOR handler
+ * once no other plugin cancelled the event. Each trigger is debounced per player, so a player bouncing
+ * between worlds only gets one snapshot per window, and a cancelled change does not use up the window.
+ */
+public class SnapshotTriggerListener implements Listener {
+
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** The triggers enabled in the configuration. */
+    private final Set<SnapshotType> enabledTriggers = EnumSet.noneOf(SnapshotType.class);
+    /** Minimum time between two snapshots of the same trigger for a player. */
+    private final long debounceMillis;
+    /** When each player was last captured, per trigger. */
+    private final Map<UUID, Map<SnapshotType, Long>> lastCaptured = new ConcurrentHashMap<>();
+    /** Captures taken at LOWEST priority, waiting for the outcome of their event. */
+    private final Map<UUID, Map<SnapshotType, PlayerData.Capture>> captured = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the listener from the "triggers" section of the plugin configuration.
+     *
+     * @param section the triggers configuration section, may be {@code null} to disable all triggers
+     */
+    public SnapshotTriggerListener(ConfigurationSection section) {
+        this.debounceMillis = TimeUnit.SECONDS.toMillis(section == null ? 30 : Math.max(0, section.getLong("debounce-seconds", 30)));
+        if (section == null) return;
+
+        for (SnapshotType type : new SnapshotType[]{SnapshotType.LOGOUT, SnapshotType.WORLD_CHANGE,
+                SnapshotType.GAMEMODE_CHANGE, SnapshotType.TELEPORT}) {
+            if (section.getBoolean(type.getKey(), true)) {
+                enabledTriggers.add(type);
+            }
+        }
+    }
+
+    /**
+     * Snapshots players as they leave.
+     *
+     * @param event The PlayerQuitEvent.
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onQuit(PlayerQuitEvent event) {
+        trigger(event.getPlayer(), SnapshotType.LOGOUT);
+        lastCaptured.remove(event.getPlayer().getUniqueId());
+        captured.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Snapshots players when they change worlds.
+     *
+     * @param event The PlayerChangedWorldEvent.
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        trigger(event.getPlayer(), SnapshotType.WORLD_CHANGE);
+    }
+
+    /**
+     * Captures players before their game mode changes.
+     *
+     * @param event The PlayerGameModeChangeEvent.
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onGameModeChange(PlayerGameModeChangeEvent event) {
+        capture(event.getPlayer(), SnapshotType.GAMEMODE_CHANGE);
+    }
+
+    /**
+     * Stores the game mode change capture, unless the change was cancelled.
+     *
+     * @param event The PlayerGameModeChangeEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onGameModeChanged(PlayerGameModeChangeEvent event) {
+        commit(event.getPlayer(), SnapshotType.GAMEMODE_CHANGE, event.isCancelled());
+    }
+
+    /**
+     * Captures players before they are teleported by a plugin or command.
+     *
+     * @param event The PlayerTeleportEvent.
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent event) {
+        PlayerTeleportEvent.TeleportCause cause = event.getCause();
+        if (cause == PlayerTeleportEvent.TeleportCause.PLUGIN || cause == PlayerTeleportEvent.TeleportCause.COMMAND) {
+            capture(event.getPlayer(), SnapshotType.TELEPORT);
+        }
+    }
+
+    /**
+     * Stores the teleport capture, unless the teleport was cancelled.
+     *
+     * @param event The PlayerTeleportEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTeleported(PlayerTeleportEvent event) {
+        commit(event.getPlayer(), SnapshotType.TELEPORT, event.isCancelled());
+    }
+
+    /**
+     * Captures and stores a snapshot for a trigger that cannot be cancelled.
+     *
+     * @param player the player to capture
+     * @param type the trigger that fired
+     */
+    private void trigger(Player player, SnapshotType type) {
+        capture(player, type);
+        commit(player, type, false);
+    }
+
+    /**
+     * Captures a player for a trigger, unless it is disabled or debounced. The capture is held until
+     * {@link #commit} is called for the same trigger. Runs inside the event handler, where the capture
+     * only copies the inventory.
+     *
+     * @param player the player to capture
+     * @param type the trigger that fired
+     */
+    private void capture(Player player, SnapshotType type) {
+        if (!enabledTriggers.contains(type)) return;
+
+        Map<SnapshotType, Long> times = lastCaptured.get(player.getUniqueId());
+        Long last = times == null ? null : times.get(type);
+        if (last != null && System.currentTimeMillis() - last < debounceMillis) return;
+
+        captured.computeIfAbsent(player.getUniqueId(), uuid -> new ConcurrentHashMap<>())
+                .put(type, PlayerData.Capture.of(player, null));
+    }
+
+    /**
+     * Stores the capture held for a trigger, or drops it if the event was cancelled. Only a stored
+     * capture starts the debounce window.
+     *
+     * @param player the player who was captured
+     * @param type the trigger that fired
+     * @param cancelled whether the event was cancelled
+     */
+    private void commit(Player player, SnapshotType type, boolean cancelled) {
+        Map<SnapshotType, PlayerData.Capture> captures = captured.get(player.getUniqueId());
+        PlayerData.Capture capture = captures == null ? null : captures.remove(type);
+        if (capture == null || cancelled) return;
+
+        lastCaptured.computeIfAbsent(player.getUniqueId(), uuid -> new ConcurrentHashMap<>())
+                .put(type, System.currentTimeMillis());
+        database.saveCapture(player.getUniqueId(), player.getName(), type, capture, null);
+    }
+}
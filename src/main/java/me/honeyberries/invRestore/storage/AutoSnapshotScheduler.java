@@ -0,0 +1,147 @@
+package me.honeyberries.invRestore.storage;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.InvRestore;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Periodically takes {@link SnapshotType#AUTO} snapshots of online players.
+ * <p>
+ * Every player is hashed into one tick slot of the interval, so captures are spread evenly instead
+ * of happening all at once. Each tick only visits the players in its slot, keeping the per-tick cost
+ * flat regardless of how many players are online. Captures run on the player's entity scheduler and
+ * are skipped when the inventory and experience have not changed since the last auto snapshot.
+ */
+public class AutoSnapshotScheduler implements Listener {
+
+    private final InvRestore plugin;
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** Whether automatic snapshots are enabled. */
+    private final boolean enabled;
+    /** Length of one full round over all players, in ticks. */
+    private final int intervalTicks;
+
+    /** Online players by the tick slot they are captured in. */
+    private final Map<Integer, Set<UUID>> slots = new ConcurrentHashMap<>();
+    /** Hash of each player's state at their last auto snapshot. */
+    private final Map<UUID, Integer> lastStateHash = new ConcurrentHashMap<>();
+
+    /** The current position in the interval. */
+    private int tick = 0;
+    private ScheduledTask task;
+
+    /**
+     * Creates a scheduler from the "auto-snapshot" section of the plugin configuration.
+     *
+     * @param plugin the InvRestore plugin instance
+     * @param section the auto-snapshot configuration section
+     */
+    public AutoSnapshotScheduler(InvRestore plugin, ConfigurationSection section) {
+        this.plugin = plugin;
+        this.enabled = section != null && section.getBoolean("enabled", true);
+        this.intervalTicks = (int) Math.max(20, (section == null ? 10 : section.getLong("interval-minutes", 10)) * 60 * 20);
+    }
+
+    /**
+     * Starts the scheduler on the global region scheduler and registers players already online.
+     */
+    public void start() {
+        if (!enabled) return;
+
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        plugin.getServer().getOnlinePlayers().forEach(player -> slotOf(player.getUniqueId()).add(player.getUniqueId()));
+
+        task = plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, t -> runTick(), 1, 1);
+    }
+
+    /**
+     * Stops the scheduler if it is running.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        slots.clear();
+        lastStateHash.clear();
+    }
+
+    /**
+     * Captures the players whose slot is the current tick.
+     */
+    private void runTick() {
+        Set<UUID> due = slots.get(tick);
+        tick = (tick + 1) % intervalTicks;
+        if (due == null) return;
+
+        for (UUID uuid : due) {
+            Player player = plugin.getServer().getPlayer(uuid);
+            if (player == null) continue;
+
+            player.getScheduler().run(plugin, t -> capture(player), null);
+        }
+    }
+
+    /**
+     * Takes an auto snapshot of a player unless nothing changed. Runs on the player's region thread.
+     *
+     * @param player the player to capture
+     */
+    private void capture(Player player) {
+        int stateHash = Objects.hash(Arrays.hashCode(player.getInventory().getContents()),
+                player.getTotalExperience(), player.getLevel(), player.getExp());
+
+        Integer previous = lastStateHash.put(player.getUniqueId(), stateHash);
+        if (previous != null && previous == stateHash) return;
+
+        database.saveNow(player, SnapshotType.AUTO);
+    }
+
+    /**
+     * Gets the set of players captured in the same tick slot as a player.
+     *
+     * @param uuid the player's UUID
+     * @return the players in that slot
+     */
+    private Set<UUID> slotOf(UUID uuid) {
+        int slot = Math.floorMod(uuid.hashCode(), intervalTicks);
+        return slots.computeIfAbsent(slot, s -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Adds joining players to their tick slot.
+     *
+     * @param event The PlayerJoinEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        slotOf(uuid).add(uuid);
+    }
+
+    /**
+     * Removes leaving players from their tick slot.
+     *
+     * @param event The PlayerQuitEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        slotOf(uuid).remove(uuid);
+        lastStateHash.remove(uuid);
+    }
+}
@@ -0,0 +1,358 @@
+package me.honeyberries.invRestore.storage;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Off-heap store for serialized snapshot data, so the blobs never become part of the Java heap.
+ * <p>
+ * Blobs are Base64 strings. They are kept decoded, a quarter smaller, in direct {@link ByteBuffer}
+ * slabs handed out by a bump allocator; strings that do not round-trip through Base64 are kept
+ * as-is. A blob is addressed by a {@code long} handle holding its slab and offset, which is all the
+ * heap keeps of it. Once every blob in a slab is freed the slab is recycled, keeping one empty slab
+ * spare; blobs larger than a slab get a slab of their own that is released when they are freed.
+ * <p>
+ * Long-lived blobs spread over many slabs would keep them all reserved, so {@link #compact(Map)}
+ * moves the blobs out of sparsely used slabs and releases them.
+ */
+class BlobArena {
+
+    /** Size of a regular slab. */
+    private static final int SLAB_SIZE = 4 << 20;
+    /** Bytes in front of every blob: its length, and whether it is decoded Base64. */
+    private static final int HEADER_SIZE = 5;
+
+    private static final byte RAW = 0;
+    private static final byte BASE64 = 1;
+
+    /** Slabs less full than this are emptied by a compaction. */
+    private static final double SPARSE_SLAB = 0.5;
+    /** Bytes read from a slab at a time when streaming a blob out, a multiple of 3 so Base64 needs no padding in between. */
+    private static final int STREAM_CHUNK = 3 * 4096;
+
+    /**
+     * A block of off-heap memory.
+     */
+    private static final class Slab {
+        final ByteBuffer buffer;
+        /** Offset of the first free byte. */
+        int top = 0;
+        /** Number of blobs in the slab that are still in use. */
+        int live = 0;
+        /** Bytes taken by the blobs still in use, including their headers. */
+        int used = 0;
+
+        Slab(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /** Slabs by index, {@code null} where a released slab was. */
+    private final List<Slab> slabs = new ArrayList<>();
+    /** Indexes of regular slabs that are empty and can be reused. */
+    private final Deque<Integer> emptySlabs = new ArrayDeque<>();
+    /** Index of the slab new blobs are allocated from, or -1 if there is none yet. */
+    private int current = -1;
+    /** Bytes taken by blobs in use, including their headers. */
+    private long usedBytes = 0;
+
+    /**
+     * Stores a blob.
+     *
+     * @param data the serialized data
+     * @return the handle to read or free the blob with
+     */
+    long put(String data) {
+        byte tag = RAW;
+        byte[] bytes = null;
+        try {
+            byte[] decoded = Base64.getDecoder().decode(data);
+            // Only keep it decoded if it encodes back to the exact same string, checksums cover the string
+            if (Base64.getEncoder().encodeToString(decoded).equals(data)) {
+                tag = BASE64;
+                bytes = decoded;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // Not Base64, kept as-is
+        }
+        if (bytes == null) bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        return store(tag, bytes);
+    }
+
+    /**
+     * Copies a blob into a slab.
+     *
+     * @param tag whether the bytes are decoded Base64
+     * @param bytes the blob
+     * @return the handle of the blob
+     */
+    private synchronized long store(byte tag, byte[] bytes) {
+        int size = HEADER_SIZE + bytes.length;
+        int index = allocate(size);
+        Slab slab = slabs.get(index);
+        int offset = slab.top;
+        slab.buffer.putInt(offset, bytes.length);
+        slab.buffer.put(offset + 4, tag);
+        slab.buffer.put(offset + HEADER_SIZE, bytes);
+        slab.top += size;
+        slab.live++;
+        slab.used += size;
+        usedBytes += size;
+        return ((long) index << 32) | offset;
+    }
+
+    /**
+     * Reads a blob back as the string it was stored from.
+     *
+     * @param handle the blob's handle
+     * @return the serialized data
+     */
+    synchronized String getString(long handle) {
+        Slab slab = slab(handle);
+        int offset = (int) handle;
+        byte[] bytes = new byte[slab.buffer.getInt(offset)];
+        slab.buffer.get(offset + HEADER_SIZE, bytes);
+        return slab.buffer.get(offset + 4) == BASE64
+                ? Base64.getEncoder().encodeToString(bytes)
+                : new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads a blob as decoded bytes, skipping the Base64 string.
+     *
+     * @param handle the blob's handle
+     * @return the decoded bytes, or {@code null} if the blob is not valid Base64
+     */
+    synchronized byte[] getDecoded(long handle) {
+        Slab slab = slab(handle);
+        int offset = (int) handle;
+        if (slab.buffer.get(offset + 4) != BASE64) return null;
+
+        byte[] bytes = new byte[slab.buffer.getInt(offset)];
+        slab.buffer.get(offset + HEADER_SIZE, bytes);
+        return bytes;
+    }
+
+    /**
+     * Checks whether a blob is kept as decoded Base64, so {@link #writeBase64} can stream it.
+     *
+     * @param handle the blob's handle
+     * @return {@code true} if the blob is decoded Base64, {@code false} if it is kept as-is
+     */
+    synchronized boolean isBase64(long handle) {
+        Slab slab = slab(handle);
+        return slab.buffer.get((int) handle + 4) == BASE64;
+    }
+
+    /**
+     * Writes a Base64 blob as the string it was stored from, encoding it piece by piece straight from
+     * its slab so the string never exists on the heap.
+     *
+     * @param handle the blob's handle, which must be Base64, see {@link #isBase64}
+     * @param out the stream to write the ASCII characters of the string to, left open
+     * @throws IOException if the stream could not be written
+     */
+    synchronized void writeBase64(long handle, OutputStream out) throws IOException {
+        Slab slab = slab(handle);
+        int offset = (int) handle;
+        if (slab.buffer.get(offset + 4) != BASE64) {
+            throw new IllegalArgumentException("Blob " + Long.toHexString(handle) + " is not Base64");
+        }
+
+        int length = slab.buffer.getInt(offset);
+        byte[] chunk = new byte[Math.min(length, STREAM_CHUNK)];
+        OutputStream encoder = Base64.getEncoder().wrap(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // Flushing the padding must not close the caller's stream
+                flush();
+            }
+        });
+        for (int done = 0; done < length; done += chunk.length) {
+            int size = Math.min(chunk.length, length - done);
+            slab.buffer.get(offset + HEADER_SIZE + done, chunk, 0, size);
+            encoder.write(chunk, 0, size);
+        }
+        encoder.close();
+    }
+
+    /**
+     * Frees a blob. The handle must not be used afterwards.
+     *
+     * @param handle the blob's handle
+     */
+    synchronized void free(long handle) {
+        int index = (int) (handle >>> 32);
+        Slab slab = slab(handle);
+        int size = HEADER_SIZE + slab.buffer.getInt((int) handle);
+        slab.used -= size;
+        usedBytes -= size;
+        if (--slab.live > 0) return;
+
+        if (slab.buffer.capacity() != SLAB_SIZE) {
+            // A slab of its own, give the memory back
+            slabs.set(index, null);
+            if (index == current) current = -1;
+        } else {
+            slab.top = 0;
+            if (index == current) return;
+            // Keep one empty slab around for the next allocations, give the rest back
+            if (emptySlabs.isEmpty()) {
+                emptySlabs.push(index);
+            } else {
+                slabs.set(index, null);
+            }
+        }
+    }
+
+    /**
+     * Moves the blobs out of regular slabs that are less than half full and releases those slabs.
+     * Nothing is moved unless it frees at least one slab. The handles of moved blobs change, so
+     * every handle in use must be in the map, whose values are updated in place.
+     *
+     * @param handles every handle in use, by any key
+     * @param <K> the type of the keys
+     * @return the number of slabs released
+     */
+    synchronized <K> int compact(Map<K, Long> handles) {
+        Set<Integer> sparse = new HashSet<>();
+        long sparseUsed = 0;
+        for (int i = 0; i < slabs.size(); i++) {
+            Slab slab = slabs.get(i);
+            if (slab == null || slab.buffer.capacity() != SLAB_SIZE || slab.live == 0) continue;
+            if (slab.used < SLAB_SIZE * SPARSE_SLAB) {
+                sparse.add(i);
+                sparseUsed += slab.used;
+            }
+        }
+        // Their blobs need this many slabs once packed; moving them only pays off if that is fewer
+        long needed = (sparseUsed + SLAB_SIZE - 1) / SLAB_SIZE;
+        if (sparse.size() - needed <= 0) return 0;
+
+        // New blobs must not land in a slab being emptied
+        if (sparse.contains(current)) current = -1;
+        int before = countSlabs();
+        for (Map.Entry<K, Long> entry : handles.entrySet()) {
+            long handle = entry.getValue();
+            if (!sparse.contains((int) (handle >>> 32))) continue;
+
+            Slab slab = slab(handle);
+            int offset = (int) handle;
+            byte[] bytes = new byte[slab.buffer.getInt(offset)];
+            slab.buffer.get(offset + HEADER_SIZE, bytes);
+            entry.setValue(store(slab.buffer.get(offset + 4), bytes));
+            free(handle);
+        }
+        return before - countSlabs();
+    }
+
+    /**
+     * Gets how much of the memory of slabs holding blobs is not taken by blobs in use. The spare
+     * empty slab is left out, it is not fragmentation.
+     *
+     * @return the unused share of the bytes of slabs in use, from 0 to 1
+     */
+    synchronized double getFragmentation() {
+        long reserved = slabs.stream().filter(slab -> slab != null && slab.live > 0)
+                .mapToLong(slab -> slab.buffer.capacity()).sum();
+        return reserved == 0 ? 0 : 1 - (double) usedBytes / reserved;
+    }
+
+    /**
+     * Frees every blob and releases all slabs.
+     */
+    synchronized void clear() {
+        slabs.clear();
+        emptySlabs.clear();
+        current = -1;
+        usedBytes = 0;
+    }
+
+    /**
+     * Gets the bytes taken by blobs in use.
+     *
+     * @return the used bytes
+     */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Gets the off-heap memory reserved by all slabs.
+     *
+     * @return the reserved bytes
+     */
+    synchronized long getReservedBytes() {
+        return slabs.stream().filter(slab -> slab != null).mapToLong(slab -> slab.buffer.capacity()).sum();
+    }
+
+    /**
+     * Counts the slabs currently reserved.
+     */
+    private int countSlabs() {
+        return (int) slabs.stream().filter(slab -> slab != null).count();
+    }
+
+    /**
+     * Finds a slab with room for a blob, allocating one if needed.
+     *
+     * @param size the size of the blob including its header
+     * @return the index of the slab
+     */
+    private int allocate(int size) {
+        if (size > SLAB_SIZE) {
+            return addSlab(new Slab(size));
+        }
+
+        Slab slab = current < 0 ? null : slabs.get(current);
+        if (slab != null && slab.buffer.capacity() == SLAB_SIZE && SLAB_SIZE - slab.top >= size) {
+            return current;
+        }
+        // A full slab stays in use by its blobs and becomes reusable once they are all freed
+        current = emptySlabs.isEmpty() ? addSlab(new Slab(SLAB_SIZE)) : emptySlabs.pop();
+        return current;
+    }
+
+    /**
+     * Adds a slab, reusing the index of a released one if possible.
+     *
+     * @param slab the slab to add
+     * @return its index
+     */
+    private int addSlab(Slab slab) {
+        int index = slabs.indexOf(null);
+        if (index < 0) {
+            slabs.add(slab);
+            return slabs.size() - 1;
+        }
+        slabs.set(index, slab);
+        return index;
+    }
+
+    /**
+     * Gets the slab a handle points into.
+     */
+    private Slab slab(long handle) {
+        Slab slab = slabs.get((int) (handle >>> 32));
+        if (slab == null) {
+            throw new IllegalStateException("Blob handle " + Long.toHexString(handle) + " points into a released slab");
+        }
+        return slab;
+    }
+}
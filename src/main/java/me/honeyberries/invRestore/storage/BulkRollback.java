@@ -0,0 +1,218 @@
+package me.honeyberries.invRestore.storage;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.util.PlayerData;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Rolls many players back to a selected snapshot each.
+ * Snapshots are decoded in parallel on a dedicated thread pool, then applied through each player's
+ * entity scheduler so the work is spread across regions. Offline players get a queued restore instead.
+ */
+public class BulkRollback {
+
+    private final InvRestore plugin;
+    private final Logger logger;
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** The snapshot id to roll back to, per player. */
+    private final Map<UUID, String> selection;
+    /** Name of whoever started the rollback, shown to affected players. */
+    private final String requestedBy;
+
+    private final AtomicInteger applied = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger remaining;
+
+    private long startNanos;
+    private ExecutorService executor;
+
+    /**
+     * Creates a rollback over the given selection. Nothing happens until {@link #start(Runnable)} is called.
+     *
+     * @param plugin the InvRestore plugin instance
+     * @param selection the snapshot id to roll back to, per player
+     * @param requestedBy the name of whoever started the rollback
+     */
+    public BulkRollback(InvRestore plugin, Map<UUID, String> selection, String requestedBy) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.selection = selection;
+        this.requestedBy = requestedBy;
+        this.remaining = new AtomicInteger(selection.size());
+    }
+
+    /**
+     * Starts decoding and applying every selected snapshot.
+     *
+     * @param onFinish called once every player has been handled, from whichever thread finished last
+     */
+    public void start(Runnable onFinish) {
+        startNanos = System.nanoTime();
+        if (selection.isEmpty()) {
+            onFinish.run();
+            return;
+        }
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "InvRestore-Rollback-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (Map.Entry<UUID, String> entry : selection.entrySet()) {
+            executor.execute(() -> rollback(entry.getKey(), entry.getValue(), onFinish));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Rolls back a single player. Runs on the rollback thread pool.
+     *
+     * @param uuid the player's UUID
+     * @param snapshotId the snapshot to roll back to
+     * @param onFinish called if this was the last player to be handled
+     */
+    private void rollback(UUID uuid, String snapshotId, Runnable onFinish) {
+        try {
+            Player player = plugin.getServer().getPlayer(uuid);
+            if (player == null) {
+                queue(uuid, snapshotId, onFinish);
+                return;
+            }
+
+            PlayerData data = database.getSnapshot(uuid, snapshotId);
+            if (data == null) {
+                failed.incrementAndGet();
+                complete(onFinish);
+                return;
+            }
+
+            // Decode the items here so the region thread only has to set them
+            ItemStack[] contents = data.getInventoryContents();
+            ScheduledTask scheduled = player.getScheduler().run(plugin, task -> {
+                // Every player must be counted, or the rollback never finishes
+                boolean done = false;
+                try {
+                    data.applyToPlayer(player, contents);
+                    player.sendMessage(Component.text("Your inventory has been rolled back by " + requestedBy)
+                            .color(NamedTextColor.GREEN));
+                    done = true;
+                } catch (RuntimeException e) {
+                    logger.warning("Rollback failed for " + uuid + ": " + e.getMessage());
+                } finally {
+                    (done ? applied : failed).incrementAndGet();
+                    complete(onFinish);
+                }
+            }, () -> queue(uuid, snapshotId, onFinish));
+            // The player was retired before the task could be scheduled
+            if (scheduled == null) queue(uuid, snapshotId, onFinish);
+        } catch (RuntimeException e) {
+            logger.warning("Rollback failed for " + uuid + ": " + e.getMessage());
+            failed.incrementAndGet();
+            complete(onFinish);
+        }
+    }
+
+    /**
+     * Queues a restore for a player who is offline or left before the rollback reached them.
+     */
+    private void queue(UUID uuid, String snapshotId, Runnable onFinish) {
+        boolean done = false;
+        try {
+            done = database.queueRestore(uuid, snapshotId, requestedBy);
+        } catch (RuntimeException e) {
+            logger.warning("Could not queue the rollback of " + uuid + ": " + e.getMessage());
+        } finally {
+            (done ? queued : failed).incrementAndGet();
+            complete(onFinish);
+        }
+    }
+
+    /**
+     * Marks one player as handled and runs the finish callback after the last one.
+     */
+    private void complete(Runnable onFinish) {
+        if (remaining.decrementAndGet() == 0) {
+            onFinish.run();
+        }
+    }
+
+    /**
+     * Gets the number of players selected for this rollback.
+     *
+     * @return the total number of players
+     */
+    public int getTotal() {
+        return selection.size();
+    }
+
+    /**
+     * Gets the number of players that have been handled so far.
+     *
+     * @return the number of applied, queued and failed players
+     */
+    public int getProcessed() {
+        return selection.size() - remaining.get();
+    }
+
+    /**
+     * Gets the number of online players whose inventory was rolled back.
+     *
+     * @return the applied count
+     */
+    public int getApplied() {
+        return applied.get();
+    }
+
+    /**
+     * Gets the number of offline players that received a queued restore.
+     *
+     * @return the queued count
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the number of players whose snapshot could not be decoded or queued.
+     *
+     * @return the failed count
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Gets the throughput since the rollback started.
+     *
+     * @return players handled per second
+     */
+    public double getPlayersPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds <= 0 ? 0 : getProcessed() / seconds;
+    }
+
+    /**
+     * Checks whether every selected player has been handled.
+     *
+     * @return {@code true} if the rollback is finished
+     */
+    public boolean isFinished() {
+        return remaining.get() == 0;
+    }
+}
@@ -0,0 +1,521 @@
+package me.honeyberries.invRestore.storage;
+
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.util.InventorySerializer;
+import me.honeyberries.invRestore.util.PlayerData;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+
+/**
+ * Golden corpus of encoded snapshots, checked against the current codecs to catch changes that make
+ * stored data unreadable, different, larger or slower to decode.
+ * <p>
+ * The corpus holds snapshots in every format the plugin still reads: the original whole-inventory
+ * Java serialization and the current {@link me.honeyberries.invRestore.util.SnapshotSections}.
+ * Entries are generated from a fixed seed as well-used inventories: full hotbars, armor, enchanted and
+ * renamed tools and partly filled ender chests. They are recorded together with a digest of what they
+ * decode to, their size and their decode time. A check decodes every entry and compares the digest,
+ * then encodes it again: entries in the older format are written back as read, entries in the current
+ * format are encoded from their decoded contents, and both must come out byte for byte the same. Size
+ * is compared per codec against the threshold in the corpus, and everything is written to a JSON report.
+ * Decode time is only compared when the corpus sets a threshold for it, as {@link #record()} does: the
+ * times are only comparable on the machine they were recorded on.
+ * <p>
+ * The corpus is recorded into and checked from the data folder. Item bytes depend on the server's data
+ * version, so current-format entries are only compared byte for byte when the corpus was recorded on
+ * the same one. The build checks a corpus kept under {@code src/test/resources} on a test server with
+ * that data version pinned, without decode times.
+ */
+public class CodecCorpus {
+
+    /** Name of the corpus in the data folder. */
+    public static final String FILE_NAME = "codec-corpus.yml";
+
+    /** Number of generated snapshots per codec. */
+    private static final int TEMPLATES = 8;
+    /** Decodes run before timing, so the JIT has settled. */
+    private static final int WARMUP_RUNS = 5;
+    /** Timed decodes per entry; the median is kept. */
+    private static final int TIMED_RUNS = 25;
+    /** Allowed growth of a codec's encoded size when a corpus does not set one, in percent. */
+    private static final double DEFAULT_MAX_SIZE_GROWTH = 5.0;
+    /** Allowed growth of a codec's decode time in a newly recorded corpus, in percent. */
+    private static final double DEFAULT_MAX_DECODE_SLOWDOWN = 100.0;
+
+    private static final Material[] TOOLS = {Material.NETHERITE_SWORD, Material.DIAMOND_PICKAXE, Material.BOW,
+            Material.DIAMOND_AXE, Material.CROSSBOW, Material.TRIDENT, Material.SHIELD};
+    private static final Material[] STACKS = {Material.COBBLESTONE, Material.OAK_LOG, Material.TORCH, Material.ARROW,
+            Material.COOKED_BEEF, Material.IRON_INGOT, Material.GOLDEN_APPLE, Material.ENDER_PEARL, Material.REDSTONE,
+            Material.OBSIDIAN, Material.DIRT, Material.GLASS, Material.EXPERIENCE_BOTTLE, Material.BREAD};
+    private static final Material[] ARMOR = {Material.DIAMOND_BOOTS, Material.DIAMOND_LEGGINGS,
+            Material.NETHERITE_CHESTPLATE, Material.DIAMOND_HELMET};
+
+    /**
+     * The snapshot formats in the corpus.
+     */
+    public enum Codec {
+        /** Whole inventory written with a Bukkit object stream, the original format. */
+        LEGACY_INVENTORY("legacy-inventory"),
+        /** Independently encoded sections, the current format. */
+        SECTIONED("sectioned");
+
+        private final String key;
+
+        Codec(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Gets the name of the codec in the corpus.
+         *
+         * @return the key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        private static @Nullable Codec fromKey(@Nullable String key) {
+            for (Codec codec : values()) {
+                if (codec.key.equals(key)) return codec;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The outcome of a check.
+     *
+     * @param entries the number of corpus entries checked
+     * @param failures a description of every failed assertion, empty if the check passed
+     * @param report the written JSON report, or {@code null} if it could not be written
+     */
+    public record Result(int entries, List<String> failures, @Nullable Path report) {
+
+        /**
+         * Checks whether every assertion held.
+         *
+         * @return {@code true} if there were no failures
+         */
+        public boolean passed() {
+            return failures.isEmpty();
+        }
+    }
+
+    /**
+     * Totals of one codec over a check.
+     */
+    private static final class CodecStats {
+        int entries;
+        long recordedBytes;
+        long currentBytes;
+        double recordedMicros;
+        double currentMicros;
+    }
+
+    private final InvRestore plugin;
+
+    /**
+     * Creates a corpus runner.
+     *
+     * @param plugin the InvRestore plugin instance
+     */
+    public CodecCorpus(InvRestore plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Generates a corpus with the current codecs and writes it to the data folder, replacing any
+     * corpus recorded there before. Creates item stacks only, so it can run off the region threads.
+     *
+     * @return the written file
+     * @throws IOException if encoding or writing fails
+     */
+    public Path record() throws IOException {
+        YamlConfiguration corpus = new YamlConfiguration();
+        corpus.set("data-version", dataVersion());
+        corpus.set("recorded", System.currentTimeMillis());
+
+        // Keep the thresholds of the previous corpus, so recording never loosens them
+        YamlConfiguration previous = loadRecorded();
+        corpus.set("thresholds.max-size-growth-percent", previous == null ? DEFAULT_MAX_SIZE_GROWTH
+                : previous.getDouble("thresholds.max-size-growth-percent", DEFAULT_MAX_SIZE_GROWTH));
+        corpus.set("thresholds.max-decode-slowdown-percent", previous == null ? DEFAULT_MAX_DECODE_SLOWDOWN
+                : previous.getDouble("thresholds.max-decode-slowdown-percent", DEFAULT_MAX_DECODE_SLOWDOWN));
+
+        ConfigurationSection entries = corpus.createSection("entries");
+        Random random = new Random(1337);
+        for (int i = 0; i < TEMPLATES; i++) {
+            ItemStack[] inventory = generateInventory(random);
+            ItemStack[] enderChest = generateEnderChest(random);
+            int level = random.nextInt(60);
+            float progress = random.nextInt(100) / 100f;
+            int totalXp = level * 17 + random.nextInt(17);
+            // Every other snapshot is a death snapshot with a long, real-world-shaped message
+            String deathCause = i % 2 == 0 ? null : "Player" + i + " was shot by Skeleton using [Bow of the Hundredth Arrow]";
+
+            putEntry(entries, Codec.LEGACY_INVENTORY.getKey() + "-" + i, Codec.LEGACY_INVENTORY,
+                    PlayerData.legacy(inventory, totalXp, level, progress), true);
+            putEntry(entries, Codec.SECTIONED.getKey() + "-" + i, Codec.SECTIONED,
+                    PlayerData.encode(new PlayerData.Capture(inventory, enderChest, totalXp, level, progress,
+                            6.5 + i, 20 - i, i / 2f,
+                            List.of(new PotionEffect(PotionEffectType.SPEED, 600 * (i + 1), i % 3),
+                                    new PotionEffect(PotionEffectType.FIRE_RESISTANCE, 9600, 0, true, false, true)),
+                            null, deathCause)), true);
+        }
+
+        Path file = plugin.getDataFolder().toPath().resolve(FILE_NAME);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, corpus.saveToString(), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Adds an entry to a corpus: the encoded snapshot with a digest of what it decodes to, its size and,
+     * if timed, its decode time.
+     *
+     * @param entries the corpus's entries section
+     * @param name the name of the entry
+     * @param codec the format the snapshot is in
+     * @param data the snapshot
+     * @param timed whether to measure and record the decode time
+     * @throws IOException if the snapshot does not round-trip
+     */
+    static void putEntry(ConfigurationSection entries, String name, Codec codec, PlayerData data, boolean timed)
+            throws IOException {
+        String encoded = InventorySerializer.serialize(data);
+        PlayerData decoded = encoded == null ? null : InventorySerializer.deserialize(encoded);
+        if (decoded == null) {
+            throw new IOException("Corpus entry " + name + " does not round-trip");
+        }
+
+        ConfigurationSection entry = entries.createSection(name);
+        entry.set("codec", codec.getKey());
+        entry.set("data", encoded);
+        entry.set("digest", digest(decoded));
+        entry.set("size", Base64.getDecoder().decode(encoded).length);
+        if (timed) entry.set("decode-micros", timeDecode(encoded));
+    }
+
+    /**
+     * Checks the current codecs against the corpus and writes a report to the "benchmarks" folder.
+     *
+     * @return the result, or {@code null} if there is no corpus with entries to check against
+     */
+    public @Nullable Result check() {
+        YamlConfiguration corpus = loadRecorded();
+        ConfigurationSection entries = corpus == null ? null : corpus.getConfigurationSection("entries");
+        if (entries == null || entries.getKeys(false).isEmpty()) return null;
+
+        int recordedVersion = corpus.getInt("data-version");
+        boolean sameVersion = recordedVersion == dataVersion();
+        double maxGrowth = corpus.getDouble("thresholds.max-size-growth-percent", DEFAULT_MAX_SIZE_GROWTH);
+        // Decode times are only compared against a corpus timed on this machine, which sets the threshold
+        Double maxSlowdown = corpus.isSet("thresholds.max-decode-slowdown-percent")
+                ? corpus.getDouble("thresholds.max-decode-slowdown-percent") : null;
+
+        List<String> failures = new ArrayList<>();
+        Map<Codec, CodecStats> stats = new EnumMap<>(Codec.class);
+        for (String name : entries.getKeys(false)) {
+            ConfigurationSection entry = entries.getConfigurationSection(name);
+            Codec codec = entry == null ? null : Codec.fromKey(entry.getString("codec"));
+            String data = entry == null ? null : entry.getString("data");
+            if (codec == null || data == null) {
+                failures.add(name + ": malformed corpus entry");
+                continue;
+            }
+
+            PlayerData decoded = InventorySerializer.deserialize(data);
+            if (decoded == null) {
+                failures.add(name + ": no longer decodes");
+                continue;
+            }
+            if (!digest(decoded).equals(entry.getString("digest"))) {
+                failures.add(name + ": decodes to different contents than recorded");
+            }
+
+            CodecStats codecStats = stats.computeIfAbsent(codec, c -> new CodecStats());
+            codecStats.entries++;
+            codecStats.recordedBytes += entry.getLong("size");
+            codecStats.recordedMicros += entry.getDouble("decode-micros");
+            codecStats.currentMicros += timeDecode(data);
+
+            try {
+                // Older formats are written back as read, which keeps their item bytes on any data version
+                boolean legacy = codec != Codec.SECTIONED;
+                String encoded = InventorySerializer.serialize(legacy ? decoded : PlayerData.encode(recapture(decoded)));
+                codecStats.currentBytes += encoded == null ? 0 : Base64.getDecoder().decode(encoded).length;
+                if ((legacy || sameVersion) && !data.equals(encoded)) {
+                    failures.add(name + ": encodes to different bytes than recorded");
+                }
+            } catch (IOException e) {
+                failures.add(name + ": no longer encodes (" + e.getMessage() + ")");
+            }
+        }
+
+        Map<String, Object> codecs = new LinkedHashMap<>();
+        stats.forEach((codec, codecStats) -> {
+            double growth = percentChange(codecStats.recordedBytes, codecStats.currentBytes);
+            double slowdown = percentChange(codecStats.recordedMicros, codecStats.currentMicros);
+            if (growth > maxGrowth) {
+                failures.add(String.format("%s: %.1f%% larger than recorded, limit %.1f%%", codec.getKey(), growth, maxGrowth));
+            }
+            if (maxSlowdown != null && slowdown > maxSlowdown) {
+                failures.add(String.format("%s: decodes %.1f%% slower than recorded, limit %.1f%%", codec.getKey(), slowdown, maxSlowdown));
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("entries", codecStats.entries);
+            summary.put("recordedBytes", codecStats.recordedBytes);
+            summary.put("currentBytes", codecStats.currentBytes);
+            summary.put("sizeGrowthPercent", growth);
+            summary.put("recordedDecodeMs", codecStats.recordedMicros / 1000.0);
+            summary.put("currentDecodeMs", codecStats.currentMicros / 1000.0);
+            summary.put("decodeSlowdownPercent", slowdown);
+            codecs.put(codec.getKey(), summary);
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("recordedDataVersion", recordedVersion);
+        report.put("dataVersion", dataVersion());
+        report.put("byteExactChecked", String.valueOf(sameVersion));
+        report.put("decodeTimeChecked", String.valueOf(maxSlowdown != null));
+        report.put("passed", String.valueOf(failures.isEmpty()));
+        report.put("codecs", codecs);
+        Map<String, Object> failureList = new LinkedHashMap<>();
+        for (int i = 0; i < failures.size(); i++) {
+            failureList.put(String.valueOf(i + 1), failures.get(i));
+        }
+        report.put("failures", failureList);
+
+        Path file = plugin.getDataFolder().toPath().resolve("benchmarks")
+                .resolve("codecs-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, toJson(report) + "\n", StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not write codec report", e);
+            file = null;
+        }
+        return new Result(entries.getKeys(false).size(), failures, file);
+    }
+
+    /**
+     * Loads the corpus recorded into the data folder.
+     *
+     * @return the corpus, or {@code null} if none was recorded
+     */
+    private @Nullable YamlConfiguration loadRecorded() {
+        Path file = plugin.getDataFolder().toPath().resolve(FILE_NAME);
+        return Files.exists(file) ? YamlConfiguration.loadConfiguration(file.toFile()) : null;
+    }
+
+    /**
+     * Times a full decode of an entry: the container, every inventory and ender chest slot and the other sections.
+     *
+     * @param data the encoded entry
+     * @return the median decode time in microseconds
+     */
+    private static double timeDecode(String data) {
+        long[] nanos = new long[TIMED_RUNS];
+        for (int run = -WARMUP_RUNS; run < TIMED_RUNS; run++) {
+            long start = System.nanoTime();
+            PlayerData decoded = InventorySerializer.deserialize(data);
+            if (decoded != null) digest(decoded);
+            if (run >= 0) nanos[run] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[TIMED_RUNS / 2] / 1000.0;
+    }
+
+    /**
+     * Builds a capture from decoded data, to encode it again.
+     *
+     * @param data the decoded snapshot
+     * @return the capture
+     */
+    private static PlayerData.Capture recapture(PlayerData data) {
+        ItemStack[] enderChest = data.getEnderChestContents();
+        PlayerData.Vitals vitals = data.getVitals();
+        return new PlayerData.Capture(data.getInventoryContents(), enderChest != null ? enderChest : new ItemStack[0],
+                data.getTotalXp(), data.getExpLevel(), data.getExpProgress(),
+                vitals != null ? vitals.health() : 20.0, vitals != null ? vitals.foodLevel() : 20,
+                vitals != null ? vitals.saturation() : 5.0f,
+                data.getPotionEffects(), data.getLocation(), data.getDeathCause());
+    }
+
+    /**
+     * Digests what a snapshot decodes to: every slot's material, amount, enchantments and name, and
+     * every other section. It does not depend on how the items are encoded, so it stays the same
+     * across data versions and formats.
+     *
+     * @param data the decoded snapshot
+     * @return the SHA-256 digest as hex
+     */
+    private static String digest(PlayerData data) {
+        StringBuilder text = new StringBuilder();
+        describe(text, "inventory", data.getInventoryContents());
+        ItemStack[] enderChest = data.getEnderChestContents();
+        if (enderChest != null) describe(text, "enderchest", enderChest);
+
+        text.append("xp ").append(data.getTotalXp()).append(' ').append(data.getExpLevel())
+                .append(' ').append(data.getExpProgress()).append('\n');
+        PlayerData.Vitals vitals = data.getVitals();
+        if (vitals != null) text.append(vitals).append('\n');
+        for (PotionEffect effect : data.getPotionEffects()) {
+            text.append(effect.getType().getKey()).append(' ').append(effect.getDuration()).append(' ')
+                    .append(effect.getAmplifier()).append(' ').append(effect.isAmbient()).append(' ')
+                    .append(effect.hasParticles()).append(' ').append(effect.hasIcon()).append('\n');
+        }
+        if (data.getDeathCause() != null) text.append("death ").append(data.getDeathCause()).append('\n');
+
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(text.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Appends a line per non-empty slot to a digest text.
+     */
+    private static void describe(StringBuilder text, String section, ItemStack[] items) {
+        text.append(section).append(' ').append(items.length).append('\n');
+        for (int slot = 0; slot < items.length; slot++) {
+            ItemStack item = items[slot];
+            if (item == null || item.getType().isAir()) continue;
+
+            text.append(slot).append(' ').append(item.getType().getKey()).append(' ').append(item.getAmount());
+            item.getEnchantments().entrySet().stream()
+                    .sorted(Comparator.comparing((Map.Entry<Enchantment, Integer> e) -> e.getKey().getKey().toString()))
+                    .forEach(e -> text.append(' ').append(e.getKey().getKey()).append('=').append(e.getValue()));
+            ItemMeta meta = item.getItemMeta();
+            if (meta != null && meta.hasDisplayName()) {
+                text.append(" \"").append(PlainTextComponentSerializer.plainText().serialize(meta.displayName())).append('"');
+            }
+            text.append('\n');
+        }
+    }
+
+    /**
+     * Gets the relative change between a recorded and a current value.
+     *
+     * @return the change in percent, 0 if nothing was recorded
+     */
+    private static double percentChange(double recorded, double current) {
+        return recorded <= 0 ? 0 : (current - recorded) * 100.0 / recorded;
+    }
+
+    /**
+     * Writes a report as JSON. Values are maps, numbers or strings.
+     *
+     * @param value the value to write
+     * @return the JSON text
+     */
+    static String toJson(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            StringBuilder json = new StringBuilder("{");
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (json.length() > 1) json.append(',');
+                json.append('"').append(entry.getKey()).append("\":").append(toJson(entry.getValue()));
+            }
+            return json.append('}').toString();
+        }
+        if (value instanceof Double number) {
+            return String.format(Locale.ROOT, "%.3f", number);
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        return '"' + String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * Generates a well-used player inventory: tools and blocks in most slots, full armor and an offhand item.
+     */
+    private static ItemStack[] generateInventory(Random random) {
+        ItemStack[] items = new ItemStack[41];
+        for (int slot = 0; slot < 36; slot++) {
+            if (random.nextInt(10) < 3) continue;
+            if (slot < 9 && random.nextBoolean()) {
+                items[slot] = tool(TOOLS[random.nextInt(TOOLS.length)], random);
+            } else {
+                Material material = STACKS[random.nextInt(STACKS.length)];
+                items[slot] = new ItemStack(material, 1 + random.nextInt(material.getMaxStackSize()));
+            }
+        }
+        for (int i = 0; i < ARMOR.length; i++) {
+            items[36 + i] = tool(ARMOR[i], random);
+        }
+        items[40] = new ItemStack(Material.TOTEM_OF_UNDYING);
+        return items;
+    }
+
+    /**
+     * Generates a partly filled ender chest.
+     */
+    private static ItemStack[] generateEnderChest(Random random) {
+        ItemStack[] items = new ItemStack[27];
+        for (int slot = 0; slot < items.length; slot++) {
+            if (random.nextInt(10) < 7) continue;
+            Material material = STACKS[random.nextInt(STACKS.length)];
+            items[slot] = new ItemStack(material, material.getMaxStackSize());
+        }
+        return items;
+    }
+
+    /**
+     * Creates an enchanted, sometimes renamed tool or armor piece.
+     */
+    private static ItemStack tool(Material material, Random random) {
+        ItemStack item = new ItemStack(material);
+        item.addUnsafeEnchantment(Enchantment.UNBREAKING, 3);
+        item.addUnsafeEnchantment(Enchantment.MENDING, 1);
+        if (random.nextBoolean()) {
+            ItemMeta meta = item.getItemMeta();
+            meta.displayName(Component.text("Trusty " + material.name().toLowerCase().replace('_', ' ')));
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+    /**
+     * Gets the data version of the running server, which item encodings depend on.
+     */
+    @SuppressWarnings("deprecation")
+    private static int dataVersion() {
+        return Bukkit.getUnsafe().getDataVersion();
+    }
+}
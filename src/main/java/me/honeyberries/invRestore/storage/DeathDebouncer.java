@@ -0,0 +1,283 @@
+package me.honeyberries.invRestore.storage;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.util.PlayerData;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Coalesces the death snapshots of players who die in quick succession.
+ * <p>
+ * A death is captured right away but held in memory for a window; a later death within the window
+ * replaces it, and only the latest one is written once the window closes or the player quits. The
+ * window follows each player's death rate: a first or rare death is written after the minimum window,
+ * while a player dying every few seconds gets a window somewhat longer than their usual interval, up
+ * to the maximum. No death is held longer than the maximum window. Held deaths are served by
+ * {@link PlayerDataStorage#getPlayerData(UUID, SnapshotType)}, so the latest death stays restorable,
+ * are stored early when a snapshot listing or a restore by id needs them, and are written by the
+ * {@link ShutdownFlush} if the server stops first.
+ */
+public class DeathDebouncer implements Listener {
+
+    /** How much longer than a player's usual interval between deaths the window is. */
+    private static final double WINDOW_FACTOR = 1.5;
+    /** Weight of the newest interval in the running average. */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final InvRestore plugin;
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** Whether deaths are held back at all. */
+    private final boolean enabled;
+    /** Shortest window, used for first and rare deaths. */
+    private final long minWindowMillis;
+    /** Longest window, and the longest any death is held. */
+    private final long maxWindowMillis;
+
+    /** The death held for each player. */
+    private final Map<UUID, HeldDeath> held = new ConcurrentHashMap<>();
+    /** The death rate of each online player. */
+    private final Map<UUID, DeathRate> rates = new ConcurrentHashMap<>();
+
+    private ScheduledTask task;
+
+    /**
+     * A death waiting for its window to close.
+     *
+     * @param name the player's name
+     * @param capture the captured state
+     * @param timestamp when the death happened
+     * @param heldSince when the first death coalesced into this one happened
+     * @param deadline when the window closes
+     * @param writing whether it has been handed to storage and is being written
+     * @param encoded the capture encoded for reads, shared by every copy of this death
+     */
+    private record HeldDeath(String name, PlayerData.Capture capture, long timestamp, long heldSince, long deadline,
+                             boolean writing, EncodedCapture encoded) {
+
+        HeldDeath withWriting(boolean writing) {
+            return new HeldDeath(name, capture, timestamp, heldSince, deadline, writing, encoded);
+        }
+    }
+
+    /**
+     * A capture encoded on the first read, so repeated reads of a held death do not encode it again.
+     */
+    private static final class EncodedCapture {
+        private byte[] bytes;
+
+        /**
+         * Gets the encoded capture, encoding it on the first call.
+         *
+         * @param capture the captured state
+         * @return a snapshot over the encoded capture
+         * @throws IOException if encoding fails
+         */
+        synchronized PlayerData get(PlayerData.Capture capture) throws IOException {
+            if (bytes == null) {
+                bytes = PlayerData.encode(capture).getSections().toByteArray();
+            }
+            // Each read gets its own view, snapshots decode their sections lazily and are not shared
+            return PlayerData.fromSections(bytes);
+        }
+    }
+
+    /**
+     * A player's recent death rate.
+     *
+     * @param last when they last died
+     * @param meanInterval running average of the time between their deaths, or -1 after a first death
+     */
+    private record DeathRate(long last, double meanInterval) {
+
+        DeathRate next(long now) {
+            long interval = now - last;
+            return new DeathRate(now, meanInterval < 0 ? interval
+                    : meanInterval * (1 - RATE_SMOOTHING) + interval * RATE_SMOOTHING);
+        }
+    }
+
+    /**
+     * Creates a debouncer from the "death-debounce" section of the plugin configuration.
+     *
+     * @param plugin the InvRestore plugin instance
+     * @param section the death-debounce configuration section, may be {@code null}
+     */
+    public DeathDebouncer(InvRestore plugin, ConfigurationSection section) {
+        this.plugin = plugin;
+        this.enabled = section == null || section.getBoolean("enabled", true);
+        this.minWindowMillis = TimeUnit.SECONDS.toMillis(Math.max(0, section == null ? 2 : section.getLong("min-seconds", 2)));
+        this.maxWindowMillis = Math.max(minWindowMillis,
+                TimeUnit.SECONDS.toMillis(section == null ? 60 : section.getLong("max-seconds", 60)));
+    }
+
+    /**
+     * Starts closing windows once a second on the async scheduler.
+     */
+    public void start() {
+        if (!enabled) return;
+
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        task = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, t -> writeDue(), 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops closing windows. Deaths still held are left for {@link #drain()}.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Captures a player's death, holding it back if the debouncer is enabled.
+     * Must be called on the player's region thread, for example from the death event handler.
+     *
+     * @param player the player who died
+     * @param deathCause the plain text death message, or {@code null}
+     */
+    public void onDeath(Player player, @Nullable String deathCause) {
+        if (!enabled) {
+            database.saveNow(player, SnapshotType.DEATH, deathCause);
+            return;
+        }
+
+        UUID uuid = player.getUniqueId();
+        long now = System.currentTimeMillis();
+        PlayerData.Capture capture = PlayerData.Capture.of(player, deathCause);
+        long window = windowFor(uuid, now);
+
+        // A death being written is not replaced, the new one is held on its own
+        held.compute(uuid, (id, previous) -> {
+            long heldSince = previous == null || previous.writing() ? now : previous.heldSince();
+            long deadline = Math.min(heldSince + maxWindowMillis, now + window);
+            return new HeldDeath(player.getName(), capture, now, heldSince, deadline, false, new EncodedCapture());
+        });
+        if (window == 0) write(uuid);
+    }
+
+    /**
+     * Gets the death held for a player, if any.
+     *
+     * @param uuid the UUID of the player
+     * @return the held death, encoded, or {@code null} if none is held
+     */
+    public @Nullable PlayerData getHeld(UUID uuid) {
+        HeldDeath death = held.get(uuid);
+        if (death == null) return null;
+        try {
+            return death.encoded().get(death.capture());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not encode the held death of " + death.name(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Takes every death that has not been handed to storage yet, so the shutdown flush can write it.
+     *
+     * @return the held deaths as pending writes
+     */
+    List<PlayerDataStorage.PendingWrite> drain() {
+        return drain(null);
+    }
+
+    /**
+     * Takes the death held for one player, or for everyone, if it has not been handed to storage yet.
+     * Storage uses this to store held deaths before reads that pick snapshots by id.
+     *
+     * @param player the player, or {@code null} for every player
+     * @return the held deaths as pending writes
+     */
+    List<PlayerDataStorage.PendingWrite> drain(@Nullable UUID player) {
+        List<PlayerDataStorage.PendingWrite> deaths = new ArrayList<>();
+        for (UUID uuid : player != null ? List.of(player) : new ArrayList<>(held.keySet())) {
+            HeldDeath death = held.get(uuid);
+            // Deaths already being written are drained from storage's own pending writes
+            if (death != null && !death.writing() && held.remove(uuid, death)) {
+                deaths.add(new PlayerDataStorage.PendingWrite(uuid, death.name(), SnapshotType.DEATH, null,
+                        death.timestamp(), death.capture()));
+            }
+        }
+        return deaths;
+    }
+
+    /**
+     * Writes the held death of players as they leave.
+     *
+     * @param event The PlayerQuitEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        rates.remove(uuid);
+        write(uuid);
+    }
+
+    /**
+     * Picks the window for a death and records it in the player's death rate.
+     *
+     * @param uuid the player's UUID
+     * @param now when the death happened
+     * @return the window in milliseconds
+     */
+    private long windowFor(UUID uuid, long now) {
+        DeathRate rate = rates.compute(uuid, (id, previous) -> previous == null ? new DeathRate(now, -1) : previous.next(now));
+        if (rate.meanInterval() < 0 || rate.meanInterval() > maxWindowMillis) {
+            return minWindowMillis;
+        }
+        return Math.max(minWindowMillis, Math.min(maxWindowMillis, (long) (rate.meanInterval() * WINDOW_FACTOR)));
+    }
+
+    /**
+     * Writes every held death whose window has closed.
+     */
+    private void writeDue() {
+        long now = System.currentTimeMillis();
+        held.forEach((uuid, death) -> {
+            if (!death.writing() && now >= death.deadline()) write(uuid);
+        });
+    }
+
+    /**
+     * Hands a player's held death to storage. It stays visible to reads until it is written; if the
+     * write fails it is held again, and retried by {@link #writeDue()} or written by the shutdown flush.
+     *
+     * @param uuid the player's UUID
+     */
+    private void write(UUID uuid) {
+        HeldDeath[] started = new HeldDeath[1];
+        held.computeIfPresent(uuid, (id, current) -> {
+            if (current.writing()) return current;
+            started[0] = current.withWriting(true);
+            return started[0];
+        });
+        HeldDeath death = started[0];
+        if (death == null) return;
+
+        database.saveCapture(uuid, death.name(), SnapshotType.DEATH, null, death.timestamp(), death.capture(), success -> {
+            if (success) {
+                held.remove(uuid, death);
+            } else if (held.replace(uuid, death, death.withWriting(false))) {
+                plugin.getLogger().warning("Could not write the held death of " + death.name() + ", retrying.");
+            }
+        });
+    }
+}
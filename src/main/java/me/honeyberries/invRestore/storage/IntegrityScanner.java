@@ -0,0 +1,250 @@
+package me.honeyberries.invRestore.storage;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.util.InventorySerializer;
+import me.honeyberries.invRestore.util.SnapshotSections;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Checks every stored snapshot for corruption and quarantines the ones that fail.
+ * <p>
+ * A snapshot fails if its data does not match the stored CRC32C, is not valid Base64, or does not
+ * decode: sectioned snapshots have every section inflated and their slot tables checked, without
+ * decoding any item, and snapshots from older versions are deserialized. The store is listed without
+ * its data and split across a fork-join pool, each task loading one snapshot at a time. Snapshots
+ * written before checksums existed get one once they pass.
+ * <p>
+ * Scans run on demand through {@code /inventoryrestore verify}, and optionally as a background job
+ * on a single low-priority thread.
+ */
+public class IntegrityScanner {
+
+    /** Below this many snapshots a scan task checks them itself instead of splitting further. */
+    private static final int SPLIT_THRESHOLD = 256;
+    /** How many corrupt snapshots are named in a scan result. */
+    private static final int SAMPLE_SIZE = 10;
+
+    private final InvRestore plugin;
+    private final Logger logger;
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** Whether the background scan is enabled. */
+    private final boolean backgroundEnabled;
+    /** Minutes between background scans. */
+    private final long intervalMinutes;
+
+    /** Set while a scan is running, so two cannot overlap. */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private ScheduledTask task;
+
+    /**
+     * The outcome of a scan.
+     *
+     * @param checked the number of snapshots checked
+     * @param corrupt the number of snapshots that failed
+     * @param quarantined the number of failed snapshots moved to quarantine
+     * @param checksumsAdded the number of older snapshots that were given a checksum
+     * @param samples descriptions of up to {@value #SAMPLE_SIZE} failed snapshots
+     * @param millis how long the scan took
+     */
+    public record Result(int checked, int corrupt, int quarantined, int checksumsAdded, List<String> samples, long millis) {
+    }
+
+    /**
+     * Creates a scanner from the "integrity" section of the plugin configuration.
+     *
+     * @param plugin the InvRestore plugin instance
+     * @param section the integrity configuration section, may be {@code null}
+     */
+    public IntegrityScanner(InvRestore plugin, ConfigurationSection section) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.backgroundEnabled = section != null && section.getBoolean("background-scan.enabled", false);
+        this.intervalMinutes = Math.max(1, section == null ? 360 : section.getLong("background-scan.interval-minutes", 360));
+    }
+
+    /**
+     * Starts the background scan on the async scheduler, if enabled.
+     */
+    public void start() {
+        if (!backgroundEnabled) return;
+
+        task = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, t -> {
+            Result result = scan(true);
+            if (result != null && result.corrupt() > 0) {
+                logger.warning("Background integrity scan found " + result.corrupt() + " corrupt snapshot(s), "
+                        + result.quarantined() + " quarantined: " + String.join(", ", result.samples()));
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the background scan if it is running.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Scans the whole store, quarantining corrupt snapshots. Blocks until the scan is done,
+     * so it must be called off the region threads.
+     *
+     * @param background {@code true} to scan on a single low-priority thread, {@code false} to use every core
+     * @return the result, or {@code null} if another scan is already running
+     */
+    public Result scan(boolean background) {
+        if (!running.compareAndSet(false, true)) return null;
+
+        long start = System.nanoTime();
+        int parallelism = background ? 1 : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("InvRestore-Verify-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            if (background) thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+
+        try {
+            List<SnapshotInfo> snapshots = database.listAllSnapshots();
+            Findings findings = pool.invoke(new ScanTask(database, snapshots, 0, snapshots.size()));
+
+            int quarantined = findings.corrupt.isEmpty() ? 0 : database.quarantineSnapshots(findings.corrupt);
+            int checksumsAdded = findings.unchecked.isEmpty() ? 0 : database.storeChecksums(findings.unchecked);
+
+            List<String> samples = findings.corrupt.entrySet().stream()
+                    .limit(SAMPLE_SIZE)
+                    .map(entry -> entry.getKey().owner() + "/" + entry.getKey().id() + " (" + entry.getValue() + ")")
+                    .toList();
+            return new Result(findings.checked, findings.corrupt.size(), quarantined, checksumsAdded, samples,
+                    (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            pool.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Checks a single snapshot. A snapshot that makes a decoder throw is reported as corrupt,
+     * so one bad record never aborts the scan.
+     *
+     * @param record the snapshot to check
+     * @return why the snapshot is corrupt, or {@code null} if it is fine
+     */
+    private static String check(SnapshotRecord record) {
+        try {
+            return verify(record);
+        } catch (RuntimeException e) {
+            return "decoder failed: " + e;
+        }
+    }
+
+    /**
+     * Checks a single snapshot, letting decoder failures propagate.
+     *
+     * @param record the snapshot to check
+     * @return why the snapshot is corrupt, or {@code null} if it is fine
+     */
+    private static String verify(SnapshotRecord record) {
+        if (!record.matchesChecksum()) {
+            return "checksum mismatch";
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(record.data());
+        } catch (IllegalArgumentException e) {
+            return "invalid Base64";
+        }
+
+        if (SnapshotSections.isSectioned(bytes)) {
+            try {
+                SnapshotSections.parse(bytes).verify();
+                return null;
+            } catch (IOException e) {
+                return e.getMessage();
+            }
+        }
+        return InventorySerializer.deserialize(record.data()) == null ? "undecodable" : null;
+    }
+
+    /**
+     * What a scan task found.
+     */
+    private static final class Findings {
+        /** Corrupt snapshots with the reason they failed. */
+        final Map<SnapshotRecord, String> corrupt = new LinkedHashMap<>();
+        /** Snapshots that passed but have no stored checksum yet, with the checksum of their data. */
+        final Map<SnapshotInfo, Long> unchecked = new LinkedHashMap<>();
+        /** Number of snapshots checked, leaving out those removed before they were loaded. */
+        int checked = 0;
+
+        Findings merge(Findings other) {
+            corrupt.putAll(other.corrupt);
+            unchecked.putAll(other.unchecked);
+            checked += other.checked;
+            return this;
+        }
+    }
+
+    /**
+     * Checks a range of snapshots, splitting it in half until it is small enough.
+     */
+    private static final class ScanTask extends RecursiveTask<Findings> {
+
+        private final PlayerDataStorage database;
+        private final List<SnapshotInfo> snapshots;
+        private final int from;
+        private final int to;
+
+        ScanTask(PlayerDataStorage database, List<SnapshotInfo> snapshots, int from, int to) {
+            this.database = database;
+            this.snapshots = snapshots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Findings compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                ScanTask left = new ScanTask(database, snapshots, from, middle);
+                left.fork();
+                Findings right = new ScanTask(database, snapshots, middle, to).compute();
+                return left.join().merge(right);
+            }
+
+            Findings findings = new Findings();
+            for (int i = from; i < to; i++) {
+                SnapshotInfo info = snapshots.get(i);
+                SnapshotRecord record = database.readSnapshot(info.owner(), info.id());
+                if (record == null) continue;
+
+                findings.checked++;
+                String problem = check(record);
+                if (problem != null) {
+                    findings.corrupt.put(record, problem);
+                } else if (record.checksum() < 0) {
+                    findings.unchecked.put(info, SnapshotRecord.checksumOf(record.data()));
+                }
+            }
+            return findings;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package me.honeyberries.invRestore.storage;
+
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.util.PlayerData;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * In-memory inverted index from item keys to the snapshots containing them, used to answer
+ * "who had item X" queries without decoding every snapshot.
+ * <p>
+ * Keys have the form {@code material:<MATERIAL>}, {@code model:<custom model data>} and
+ * {@code name:<lowercase plain display name>}. Items in the ender chest and inside shulker boxes are
+ * indexed too.
+ * The index is kept up to date as snapshots are written and pruned, and rebuilt in parallel on startup.
+ */
+public class ItemIndex {
+
+    /** Singleton instance of the class. */
+    private static final ItemIndex INSTANCE = new ItemIndex();
+
+    /**
+     * A snapshot in the index, with enough metadata to list it without decoding.
+     *
+     * @param owner the UUID of the player the snapshot belongs to
+     * @param id the id of the snapshot in the player's history
+     * @param type the kind of snapshot
+     * @param time when the snapshot was taken, in milliseconds
+     * @param keys the item keys found in the snapshot
+     */
+    public record Entry(UUID owner, String id, SnapshotType type, long time, Set<String> keys) {
+    }
+
+    /** Item key to the references ({@code uuid/id}) of snapshots containing it. */
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+    /** Snapshot reference to its index entry. */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /** Whether the startup rebuild has finished. */
+    private volatile boolean ready = false;
+
+    private ItemIndex() {
+    }
+
+    /**
+     * Returns the singleton instance of this class.
+     *
+     * @return the singleton ItemIndex instance
+     */
+    public static ItemIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the key for a material.
+     *
+     * @param material the material name, case-insensitive
+     * @return the index key
+     */
+    public static String materialKey(String material) {
+        return "material:" + material.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Builds the key for a custom model data value.
+     *
+     * @param customModelData the custom model data value
+     * @return the index key
+     */
+    public static String modelKey(int customModelData) {
+        return "model:" + customModelData;
+    }
+
+    /**
+     * Builds the key for a display name.
+     *
+     * @param name the plain display name, case-insensitive
+     * @return the index key
+     */
+    public static String nameKey(String name) {
+        return "name:" + name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Collects the index keys of some sets of items, including items inside shulker boxes.
+     * Only reads item metadata, so it is cheap enough to run when a snapshot is taken.
+     *
+     * @param groups the sets of items to index, such as the inventory and the ender chest; a set may be
+     *               {@code null} and may contain {@code null} entries
+     * @return the distinct keys found
+     */
+    public static Set<String> extractKeys(ItemStack[]... groups) {
+        Set<String> keys = new HashSet<>();
+        for (ItemStack[] items : groups) {
+            if (items != null) collectKeys(items, keys);
+        }
+        return keys;
+    }
+
+    private static void collectKeys(ItemStack[] items, Set<String> keys) {
+        for (ItemStack item : items) {
+            if (item == null || item.getType().isAir()) continue;
+
+            keys.add(materialKey(item.getType().name()));
+            if (!item.hasItemMeta()) continue;
+
+            ItemMeta meta = item.getItemMeta();
+            if (meta.hasCustomModelData()) {
+                keys.add(modelKey(meta.getCustomModelData()));
+            }
+            if (meta.hasDisplayName() && meta.displayName() != null) {
+                keys.add(nameKey(PlainTextComponentSerializer.plainText().serialize(meta.displayName())));
+            }
+            if (meta instanceof BlockStateMeta blockStateMeta && blockStateMeta.getBlockState() instanceof ShulkerBox shulker) {
+                collectKeys(shulker.getInventory().getContents(), keys);
+            }
+        }
+    }
+
+    /**
+     * Adds or replaces a snapshot in the index.
+     *
+     * @param owner the UUID of the player the snapshot belongs to
+     * @param id the id of the snapshot in the player's history
+     * @param type the kind of snapshot
+     * @param time when the snapshot was taken
+     * @param keys the item keys found in the snapshot
+     */
+    public void add(UUID owner, String id, SnapshotType type, long time, Set<String> keys) {
+        Entry added = new Entry(owner, id, type, time, Set.copyOf(keys));
+        // The entry's bin is held while its postings change, so an add and a remove of the same snapshot cannot interleave
+        entries.compute(owner + "/" + id, (ref, previous) -> {
+            if (previous != null) unpost(ref, previous.keys());
+            for (String key : added.keys()) {
+                postings.compute(key, (k, refs) -> {
+                    Set<String> updated = refs != null ? refs : ConcurrentHashMap.newKeySet();
+                    updated.add(ref);
+                    return updated;
+                });
+            }
+            return added;
+        });
+    }
+
+    /**
+     * Loads and decodes a stored snapshot and adds it to the index. Decoding is the expensive part,
+     * so this should be called off the region threads. A snapshot removed while it was being added
+     * is taken out again.
+     *
+     * @param info the stored snapshot's metadata
+     */
+    public void add(SnapshotInfo info) {
+        PlayerDataStorage database = PlayerDataStorage.getInstance();
+        PlayerData data = database.getSnapshot(info.owner(), info.id());
+        if (data == null) return;
+
+        add(info.owner(), info.id(), info.type(), info.time(),
+                extractKeys(data.getInventoryContents(), data.getEnderChestContents()));
+        // Storage removes and unindexes a snapshot under its write lock, so this either sees it gone or is unindexed after
+        if (!database.hasSnapshot(info.owner(), info.id())) {
+            remove(info.owner(), info.id());
+        }
+    }
+
+    /**
+     * Removes a snapshot from the index, if present.
+     *
+     * @param owner the UUID of the player the snapshot belongs to
+     * @param id the id of the snapshot in the player's history
+     */
+    public void remove(UUID owner, String id) {
+        entries.computeIfPresent(owner + "/" + id, (ref, entry) -> {
+            unpost(ref, entry.keys());
+            return null;
+        });
+    }
+
+    /**
+     * Takes a snapshot out of the postings of some keys, dropping postings left empty.
+     *
+     * @param ref the snapshot reference
+     * @param keys the keys to take it out of
+     */
+    private void unpost(String ref, Set<String> keys) {
+        for (String key : keys) {
+            postings.computeIfPresent(key, (k, refs) -> {
+                refs.remove(ref);
+                return refs.isEmpty() ? null : refs;
+            });
+        }
+    }
+
+    /**
+     * Finds every snapshot containing an item key, newest first.
+     *
+     * @param key the key to look up, see {@link #materialKey}, {@link #modelKey} and {@link #nameKey}
+     * @return the matching snapshots
+     */
+    public List<Entry> query(String key) {
+        Set<String> refs = postings.get(key);
+        if (refs == null) return List.of();
+
+        return refs.stream()
+                .map(entries::get)
+                .filter(entry -> entry != null)
+                .sorted(Comparator.comparingLong(Entry::time).reversed())
+                .toList();
+    }
+
+    /**
+     * Checks whether the startup rebuild has finished. Before that, queries may miss older snapshots.
+     *
+     * @return {@code true} if the index covers every stored snapshot
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Rebuilds the index from every stored snapshot on the async scheduler.
+     * The store is listed without its data and snapshots are loaded and decoded one by one in
+     * parallel; snapshots written meanwhile are indexed as usual, and snapshots pruned meanwhile
+     * are not left behind.
+     *
+     * @param plugin the InvRestore plugin instance
+     */
+    public void rebuildAsync(InvRestore plugin) {
+        Logger logger = plugin.getLogger();
+        ready = false;
+
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            long start = System.nanoTime();
+            List<SnapshotInfo> snapshots = PlayerDataStorage.getInstance().listAllSnapshots();
+
+            snapshots.parallelStream().forEach(this::add);
+
+            ready = true;
+            logger.info("Indexed items of " + snapshots.size() + " snapshot(s) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        });
+    }
+}
@@ -3,19 +3,69 @@ package me.honeyberries.invRestore.storage;
 import me.honeyberries.invRestore.InvRestore;
 import me.honeyberries.invRestore.util.InventorySerializer;
 import me.honeyberries.invRestore.util.PlayerData;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Handles all database operations for storing and retrieving player data.
- * Uses a YAML file for persistent storage.
+ * Uses a YAML file for persistent storage, keeping a history of timestamped snapshots per player:
+ * <pre>
+ * inventories:
+ *   &lt;uuid&gt;:
+ *     name: &lt;last known player name&gt;
+ *     snapshots:
+ *       &lt;id&gt;:
+ *         type: death
+ *         time: 1700000000000
+ *         items: 27
+ *         data: &lt;Base64 blob&gt;
+ *         crc: &lt;CRC32C of data&gt;
+ *     saves:
+ *       &lt;save name&gt;: &lt;id of a save snapshot&gt;
+ * pending-restores:
+ *   &lt;uuid&gt;:
+ *     snapshot: &lt;id&gt;
+ *     requested-by: &lt;name&gt;
+ * quarantine:
+ *   &lt;uuid&gt;:
+ *     &lt;id&gt;: &lt;the snapshot, plus reason and quarantined time&gt;
+ * </pre>
+ * The {@code data} of snapshots in the player histories is only part of the file on disk. In memory
+ * it lives off-heap in a {@link BlobArena}, and is streamed from there into the file on each save.
  */
 public class PlayerDataStorage {
 
@@ -23,6 +73,24 @@ public class PlayerDataStorage {
     private static final PlayerDataStorage INSTANCE = new PlayerDataStorage();
     /** Base path in the YAML file for inventory data. */
     private static final String INVENTORY_PATH = "inventories.";
+    /** Section name under each player holding their snapshot history. */
+    private static final String SNAPSHOTS_KEY = "snapshots";
+    /** Key under each player holding their last known name. */
+    private static final String NAME_KEY = "name";
+    /** Section name under each player indexing their named saves. */
+    private static final String SAVES_KEY = "saves";
+    /** Base path in the YAML file for restores queued for offline players. */
+    private static final String PENDING_PATH = "pending-restores.";
+    /** Base path in the YAML file for snapshots that failed an integrity check. */
+    private static final String QUARANTINE_PATH = "quarantine.";
+    /** Marks the placeholders standing in for off-heap data while the YAML tree is serialized. */
+    private static final String BLOB_MARKER = "@blob@";
+    /** Share of the off-heap memory left unused above which it is compacted. */
+    private static final double MAX_FRAGMENTATION = 0.5;
+    /** Off-heap memory below which fragmentation is not worth compacting. */
+    private static final long MIN_COMPACT_BYTES = 32L << 20;
+    /** Ticks a scheduled write of the YAML file waits, folding in every change made meanwhile. */
+    private static final long SAVE_DELAY_TICKS = 40;
 
     /** Reference to the main plugin instance. */
     private InvRestore plugin;
@@ -34,9 +102,46 @@ public class PlayerDataStorage {
     private YamlConfiguration yamlConfig;
     /** Read-write lock for thread-safe access to the YAML configuration. */
     private final ReadWriteLock configLock = new ReentrantReadWriteLock();
+    /**
+     * Players with a queued restore, mirrored from the YAML file so joins can be checked
+     * without touching the configuration or its lock.
+     */
+    private final Set<UUID> pendingRestores = ConcurrentHashMap.newKeySet();
+    /** Index of the items in every snapshot, kept in sync with writes and pruning. */
+    private final ItemIndex itemIndex = ItemIndex.getInstance();
+    /** Name index kept in sync with the players in storage. */
+    private final PlayerNameIndex nameIndex = PlayerNameIndex.getInstance();
+    /** Off-heap data of the snapshots in the player histories. */
+    private final BlobArena blobs = new BlobArena();
+    /** Handle of each snapshot's data in {@link #blobs}, by {@code uuid/id}. Guarded by the config lock. */
+    private final Map<String, Long> blobHandles = new HashMap<>();
+    /** Captures handed to {@link #saveCapture} and not written yet, by sequence number. */
+    private final Map<Long, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    /** Source of the sequence numbers of pending writes. */
+    private final AtomicLong writeSequence = new AtomicLong();
+    /** Whether a write of the YAML file is already scheduled. */
+    private final AtomicBoolean saveQueued = new AtomicBoolean(false);
+    /** Whether high fragmentation of the off-heap data has been reported, so it is not repeated on every write. */
+    private boolean fragmentationWarned = false;
+    /** Shared storage for proxy networks, or {@code null} if this server keeps its data to itself. */
+    private SharedStore sharedStore;
     /** Flag to track if the database has been initialized */
     private boolean initialized = false;
 
+    /**
+     * A captured snapshot that has not been written to the YAML file yet.
+     *
+     * @param uuid the UUID of the player the snapshot belongs to
+     * @param name the player's name
+     * @param type the kind of snapshot
+     * @param saveName the name to save the snapshot under, or {@code null} for an unnamed snapshot
+     * @param timestamp when the snapshot was taken
+     * @param capture the captured state
+     */
+    record PendingWrite(UUID uuid, String name, SnapshotType type, @Nullable String saveName, long timestamp,
+                        PlayerData.Capture capture) {
+    }
+
     /**
      * Private constructor for a singleton pattern.
      * Initialization is deferred to the init method to avoid circular dependencies.
@@ -83,7 +188,24 @@ public class PlayerDataStorage {
                 logger.info("Created inventories.yml!");
             }
             yamlConfig = YamlConfiguration.loadConfiguration(configFile);
+            blobs.clear();
+            blobHandles.clear();
             logger.info("Loaded inventories.yml!");
+
+            if (migrateLegacyEntries()) {
+                writeFile();
+                logger.info("Migrated legacy inventories to the snapshot history format.");
+            }
+            if (migrateNamedSaves()) {
+                writeFile();
+                logger.info("Gave named saves their own snapshot type.");
+            }
+
+            int moved = moveDataOffHeap(yamlConfig.getConfigurationSection("inventories"));
+            logger.info(String.format("Keeping the data of %d snapshot(s) off-heap: %.1f MiB in %.1f MiB of slabs.",
+                    moved, blobs.getUsedBytes() / 1_048_576.0, blobs.getReservedBytes() / 1_048_576.0));
+
+            loadPendingRestores();
         } catch (IOException e) {
             logger.severe("Could not create/load inventories.yml!");
             e.printStackTrace();
@@ -92,50 +214,600 @@ public class PlayerDataStorage {
         }
     }
 
+    /**
+     * Switches to shared storage if it is enabled in the "storage.shared" section of the configuration.
+     * Must be called after {@link #loadSync()}; the local file then serves as a read cache of the shared store.
+     *
+     * @param section the shared storage configuration section, may be {@code null}
+     */
+    public void startSharedStore(@Nullable ConfigurationSection section) {
+        if (section == null || !section.getBoolean("enabled", false)) return;
+        if (section.getString("directory", "").isBlank()) {
+            logger.warning("Shared storage is enabled but no directory is set, keeping data local.");
+            return;
+        }
+
+        SharedStore store = new SharedStore(plugin, this, section);
+        sharedStore = store;
+        try {
+            store.start();
+        } catch (IOException e) {
+            sharedStore = null;
+            logger.log(Level.SEVERE, "Could not use shared storage, keeping data local.", e);
+        }
+    }
+
+    /**
+     * Stops shared storage, writing changes still queued for it. Does nothing if it is not in use.
+     */
+    public void stopSharedStore() {
+        if (sharedStore != null) {
+            sharedStore.stop();
+        }
+    }
+
+    /**
+     * Sets a value in the YAML file and queues the change for shared storage, if in use.
+     * Must be called with the write lock held.
+     *
+     * @param path the full path to set
+     * @param value the value, or {@code null} to remove the path
+     */
+    private void set(String path, Object value) {
+        yamlConfig.set(path, value);
+        if (sharedStore != null) {
+            sharedStore.record(path, value);
+        }
+    }
+
+    /**
+     * Lists every player with any data in the local file.
+     *
+     * @return the player UUIDs
+     */
+    List<UUID> getLocalPlayerIds() {
+        Set<UUID> uuids = new LinkedHashSet<>();
+        configLock.readLock().lock();
+        try {
+            for (String root : SharedStore.ROOTS) {
+                ConfigurationSection section = yamlConfig.getConfigurationSection(root);
+                if (section == null) continue;
+                for (String key : section.getKeys(false)) {
+                    try {
+                        uuids.add(UUID.fromString(key));
+                    } catch (IllegalArgumentException ignored) {
+                        // Not a player entry
+                    }
+                }
+            }
+        } finally {
+            configLock.readLock().unlock();
+        }
+        return new ArrayList<>(uuids);
+    }
+
+    /**
+     * Collects every value stored for a player, keyed by its path in a shared player document
+     * ({@code <root>.<path below the player>}).
+     *
+     * @param uuid the player
+     * @return the player's values
+     */
+    Map<String, Object> getPlayerValues(UUID uuid) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        configLock.readLock().lock();
+        try {
+            for (String root : SharedStore.ROOTS) {
+                ConfigurationSection section = yamlConfig.getConfigurationSection(root + "." + uuid);
+                if (section == null) continue;
+                section.getValues(true).forEach((key, value) -> {
+                    if (!(value instanceof ConfigurationSection)) values.put(root + "." + key, value);
+                });
+            }
+
+            // Snapshot data is kept off-heap, outside the YAML tree
+            ConfigurationSection snapshots = yamlConfig.getConfigurationSection(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY);
+            if (snapshots != null) {
+                for (String id : snapshots.getKeys(false)) {
+                    String data = getData(uuid.toString(), snapshots.getConfigurationSection(id));
+                    if (data != null) values.put("inventories." + SNAPSHOTS_KEY + "." + id + ".data", data);
+                }
+            }
+        } finally {
+            configLock.readLock().unlock();
+        }
+        return values;
+    }
+
+    /**
+     * Replaces everything cached for a player with a shared player document, then re-applies the
+     * changes still queued for shared storage so local writes are not lost. Keeps the item index and
+     * the pending restore set in sync. Called from shared storage, off the region threads.
+     *
+     * @param uuid the player
+     * @param document the player's shared document
+     */
+    void replacePlayer(UUID uuid, ConfigurationSection document) {
+        Set<String> before;
+        List<SnapshotInfo> after;
+        String name;
+
+        configLock.writeLock().lock();
+        try {
+            ConfigurationSection oldSnapshots = yamlConfig.getConfigurationSection(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY);
+            before = oldSnapshots == null ? Set.of() : oldSnapshots.getKeys(false);
+
+            for (String root : SharedStore.ROOTS) {
+                yamlConfig.set(root + "." + uuid, null);
+                ConfigurationSection section = document.getConfigurationSection(root);
+                if (section == null) continue;
+                section.getValues(true).forEach((key, value) -> {
+                    if (!(value instanceof ConfigurationSection)) yamlConfig.set(root + "." + uuid + "." + key, value);
+                });
+            }
+            if (sharedStore != null) {
+                for (SharedStore.Op op : sharedStore.getQueued(uuid)) {
+                    int dot = op.path().indexOf('.');
+                    String root = dot < 0 ? op.path() : op.path().substring(0, dot);
+                    yamlConfig.set(root + "." + uuid + (dot < 0 ? "" : op.path().substring(dot)), op.value());
+                }
+            }
+
+            // The document carries the data inline, swap the player's off-heap data for it
+            for (String id : before) {
+                freeData(uuid.toString(), id);
+            }
+            moveDataOffHeap(yamlConfig.getConfigurationSection(INVENTORY_PATH + uuid));
+
+            after = readInfos(uuid, yamlConfig.getConfigurationSection(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY));
+            name = yamlConfig.getString(INVENTORY_PATH + uuid + "." + NAME_KEY);
+            if (yamlConfig.contains(PENDING_PATH + uuid)) {
+                pendingRestores.add(uuid);
+            } else {
+                pendingRestores.remove(uuid);
+            }
+        } finally {
+            configLock.writeLock().unlock();
+        }
+
+        if (after.isEmpty()) {
+            nameIndex.unmarkStored(uuid);
+        } else if (name != null) {
+            nameIndex.markStored(uuid, name);
+        }
+
+        // Index what appeared and drop what disappeared; before the startup rebuild, the rebuild covers it
+        if (!itemIndex.isReady()) {
+            saveAsync();
+            return;
+        }
+        Set<String> remaining = new HashSet<>();
+        for (SnapshotInfo info : after) {
+            remaining.add(info.id());
+            if (!before.contains(info.id())) itemIndex.add(info);
+        }
+        for (String id : before) {
+            if (!remaining.contains(id)) itemIndex.remove(uuid, id);
+        }
+        saveAsync();
+    }
+
+    /**
+     * Moves entries written by older versions ({@code inventories.<uuid>.death} and {@code .save}
+     * holding a single blob) into the snapshot history. Must be called with the write lock held.
+     *
+     * @return {@code true} if anything was migrated
+     */
+    private boolean migrateLegacyEntries() {
+        ConfigurationSection inventories = yamlConfig.getConfigurationSection("inventories");
+        if (inventories == null) return false;
+
+        boolean migrated = false;
+        long legacyTime = configFile.lastModified();
+        for (String uuid : inventories.getKeys(false)) {
+            for (SnapshotType type : SnapshotType.values()) {
+                String legacyPath = INVENTORY_PATH + uuid + "." + type.getKey();
+                String legacyData = yamlConfig.getString(legacyPath);
+                if (legacyData == null) continue;
+
+                writeSnapshot(uuid, type, legacyTime, -1, legacyData);
+                set(legacyPath, null);
+                migrated = true;
+            }
+        }
+        return migrated;
+    }
+
     /**
      * Saves a player's data in a non-blocking and thread-safe manner.
-     * Serialization is performed on the player's region thread, and file I/O is scheduled
-     * on the global region scheduler to avoid blocking region threads.
      *
      * @param player the player whose data is being saved
      * @param isDeathInventory {@code true} if this is a death inventory, {@code false} otherwise
+     * @see #savePlayerData(Player, SnapshotType)
      */
     public void savePlayerData(Player player, boolean isDeathInventory) {
+        savePlayerData(player, isDeathInventory ? SnapshotType.DEATH : SnapshotType.SAVE);
+    }
+
+    /**
+     * Saves a player's data as a new snapshot in a non-blocking and thread-safe manner.
+     * The capture is scheduled on the player's region thread.
+     *
+     * @param player the player whose data is being saved
+     * @param type the kind of snapshot being taken
+     * @see #saveNow(Player, SnapshotType)
+     */
+    public void savePlayerData(Player player, SnapshotType type) {
+        if (player == null) return;
+
+        player.getScheduler().run(plugin, task -> saveNow(player, type),
+                () -> logger.warning("Failed to schedule inventory save for " + player.getName())
+        );
+    }
+
+    /**
+     * Saves a player's data as a {@link SnapshotType#NAMED_SAVE} snapshot, replacing any earlier save
+     * of the same name. Named saves are exempt from retention and never returned as the latest
+     * {@link SnapshotType#SAVE}. The capture is scheduled on the player's region thread.
+     *
+     * @param player the player whose data is being saved
+     * @param saveName the name of the save, already validated and lowercased
+     */
+    public void saveNamed(Player player, String saveName) {
+        if (player == null) return;
+
+        player.getScheduler().run(plugin, task -> saveCapture(player.getUniqueId(), player.getName(), SnapshotType.NAMED_SAVE,
+                        saveName, System.currentTimeMillis(), PlayerData.Capture.of(player, null), null),
+                () -> logger.warning("Failed to schedule inventory save for " + player.getName())
+        );
+    }
+
+    /**
+     * Captures a player's data as a new snapshot right away. Must be called on the player's region thread,
+     * for example from an event handler, where it only copies the player's state.
+     * Serialization is performed on the async scheduler, and file I/O is scheduled on the global
+     * region scheduler to avoid blocking region threads.
+     *
+     * @param player the player whose data is being saved
+     * @param type the kind of snapshot being taken
+     */
+    public void saveNow(Player player, SnapshotType type) {
+        saveNow(player, type, null);
+    }
+
+    /**
+     * Captures a player's data as a new snapshot right away, recording the death message with it.
+     * Must be called on the player's region thread.
+     *
+     * @param player the player whose data is being saved
+     * @param type the kind of snapshot being taken
+     * @param deathCause the plain text death message, or {@code null} if this is not a death snapshot
+     * @see #saveNow(Player, SnapshotType)
+     */
+    public void saveNow(Player player, SnapshotType type, String deathCause) {
         if (player == null) return;
 
-        player.getScheduler().run(plugin,task -> {
+        // Copy what we need while on the region thread, the live state may change afterwards
+        saveCapture(player.getUniqueId(), player.getName(), type, PlayerData.Capture.of(player, deathCause), null);
+    }
+
+    /**
+     * Stores an already captured player state as a new snapshot. Serialization is performed on the
+     * async scheduler and the snapshot is stored on the global region scheduler; the file is written
+     * by {@link #saveAsync()}, which folds the snapshots of a few seconds into one write.
+     *
+     * @param uuid the UUID of the player the snapshot belongs to
+     * @param name the player's name, for log messages
+     * @param type the kind of snapshot being taken
+     * @param capture the captured state, which must not be modified afterwards
+     * @param onComplete called with {@code true} once the snapshot is stored, or {@code false} if it could
+     *                   not be encoded; may be {@code null}
+     */
+    public void saveCapture(UUID uuid, String name, SnapshotType type, PlayerData.Capture capture,
+                            @Nullable Consumer<Boolean> onComplete) {
+        saveCapture(uuid, name, type, null, System.currentTimeMillis(), capture, onComplete);
+    }
+
+    /**
+     * Stores an already captured player state as a new snapshot, optionally under a save name.
+     *
+     * @param uuid the UUID of the player the snapshot belongs to
+     * @param name the player's name, for log messages
+     * @param type the kind of snapshot being taken
+     * @param saveName the name to save the snapshot under, or {@code null} for an unnamed snapshot
+     * @param timestamp when the state was captured
+     * @param capture the captured state, which must not be modified afterwards
+     * @param onComplete called with {@code true} once the snapshot is stored, or {@code false} if it could
+     *                   not be encoded; may be {@code null}
+     * @see #saveCapture(UUID, String, SnapshotType, PlayerData.Capture, Consumer)
+     */
+    void saveCapture(UUID uuid, String name, SnapshotType type, @Nullable String saveName, long timestamp,
+                     PlayerData.Capture capture, @Nullable Consumer<Boolean> onComplete) {
+        final ItemStack[] contents = capture.inventory();
+        final Consumer<Boolean> callback = onComplete != null ? onComplete : success -> { };
+
+        // Tracked until written, so a shutdown can flush it if the scheduled tasks never run
+        final long sequence = writeSequence.incrementAndGet();
+        pendingWrites.put(sequence, new PendingWrite(uuid, name, type, saveName, timestamp, capture));
 
-            // Create PlayerData directly from the player
-            PlayerData playerData = PlayerData.fromPlayer(player);
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            final Set<String> itemKeys = ItemIndex.extractKeys(contents, capture.enderChest());
+            final int itemCount = countItems(contents);
 
             // Serialize the player data
-            final String serializedData = InventorySerializer.serialize(playerData);
+            String encoded;
+            try {
+                encoded = InventorySerializer.serialize(PlayerData.encode(capture));
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to encode snapshot for " + name, e);
+                pendingWrites.remove(sequence);
+                callback.accept(false);
+                return;
+            }
+            final String serializedData = encoded;
             if (serializedData == null) {
-                logger.warning("Failed to serialize inventory for " + player.getName());
+                logger.warning("Failed to serialize inventory for " + name);
+                pendingWrites.remove(sequence);
+                callback.accept(false);
                 return;
             }
 
-            String path = INVENTORY_PATH + player.getUniqueId() + (isDeathInventory ? ".death" : ".save");
-
             // Schedule file write on global region scheduler (never block region thread)
             plugin.getServer().getGlobalRegionScheduler().run(plugin, (t) -> {
+                // A shutdown flush may have written it already
+                if (pendingWrites.remove(sequence) == null) {
+                    callback.accept(true);
+                    return;
+                }
+
                 configLock.writeLock().lock();
                 try {
-                    yamlConfig.set(path, serializedData);
-                    yamlConfig.save(configFile);
-                } catch (IOException e) {
-                    logger.log(Level.SEVERE, "Could not save inventories.yml!", e);
+                    String id = writeSnapshot(uuid.toString(), type, timestamp, itemCount, serializedData);
+                    set(INVENTORY_PATH + uuid + "." + NAME_KEY, name);
+                    if (saveName != null) linkNamedSave(uuid.toString(), saveName, id);
+                    itemIndex.add(uuid, id, type, timestamp, itemKeys);
+                    nameIndex.markStored(uuid, name);
                 } finally {
                     configLock.writeLock().unlock();
                 }
+
+                // The file is written by the next coalesced save, not once per snapshot
+                saveAsync();
+                callback.accept(true);
             });
+        });
+    }
 
-        }, () -> logger.warning("Failed to schedule inventory save for " + player.getName())
-        );
+    /**
+     * Writes a snapshot into the player's history. Must be called with the write lock held.
+     * Snapshot ids are derived from the timestamp and bumped until they are unique for the player.
+     * A CRC32C of the data is stored with it, see {@link IntegrityScanner}.
+     *
+     * @param uuid the player's UUID as a string
+     * @param type the kind of snapshot
+     * @param timestamp when the snapshot was taken
+     * @param itemCount the number of non-empty slots, or -1 if unknown
+     * @param serializedData the serialized player data
+     * @return the id of the new snapshot
+     */
+    private String writeSnapshot(String uuid, SnapshotType type, long timestamp, int itemCount, String serializedData) {
+        String base = INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + ".";
+        long id = timestamp;
+        while (yamlConfig.contains(base + id)) {
+            id++;
+        }
+
+        set(base + id + ".type", type.getKey());
+        set(base + id + ".time", timestamp);
+        if (itemCount >= 0) {
+            set(base + id + ".items", itemCount);
+        }
+        putData(uuid, String.valueOf(id), serializedData);
+        set(base + id + ".crc", SnapshotRecord.checksumOf(serializedData));
+        return String.valueOf(id);
+    }
+
+    /**
+     * Points a save name at a snapshot, removing the snapshot it pointed at before.
+     * Must be called with the write lock held.
+     *
+     * @param uuid the player's UUID as a string
+     * @param saveName the name of the save
+     * @param id the id of the new snapshot
+     */
+    private void linkNamedSave(String uuid, String saveName, String id) {
+        String path = INVENTORY_PATH + uuid + "." + SAVES_KEY + "." + saveName;
+        String previous = yamlConfig.getString(path);
+        if (previous != null && !previous.equals(id)) {
+            removeUnlinkedSave(uuid, previous);
+        }
+        set(path, id);
+    }
+
+    /**
+     * Removes the snapshot of a named save that lost its name. If a queued restore still points at it,
+     * it is left for the pruner, which removes it once the restore has been applied.
+     * Must be called with the write lock held.
+     *
+     * @param uuid the player's UUID as a string
+     * @param id the id of the save's snapshot
+     */
+    private void removeUnlinkedSave(String uuid, String id) {
+        if (id.equals(yamlConfig.getString(PENDING_PATH + uuid + ".snapshot"))) return;
+
+        set(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + "." + id, null);
+        unindex(uuid, id);
+    }
+
+    /**
+     * Marks the snapshots of named saves written before named saves had their own type.
+     * Must be called with the write lock held.
+     *
+     * @return {@code true} if anything was marked
+     */
+    private boolean migrateNamedSaves() {
+        ConfigurationSection inventories = yamlConfig.getConfigurationSection("inventories");
+        if (inventories == null) return false;
+
+        boolean migrated = false;
+        for (String uuid : inventories.getKeys(false)) {
+            for (String id : readNamedSaves(uuid).values()) {
+                String typePath = INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + "." + id + ".type";
+                if (SnapshotType.SAVE.getKey().equals(yamlConfig.getString(typePath))) {
+                    set(typePath, SnapshotType.NAMED_SAVE.getKey());
+                    migrated = true;
+                }
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * Gets the snapshot ids of a player's named saves, leaving out names whose snapshot is gone.
+     * Must be called with a lock held.
+     *
+     * @param uuid the player's UUID as a string
+     * @return the snapshot id of each save name, in name order
+     */
+    private Map<String, String> readNamedSaves(String uuid) {
+        Map<String, String> saves = new TreeMap<>();
+        ConfigurationSection section = yamlConfig.getConfigurationSection(INVENTORY_PATH + uuid + "." + SAVES_KEY);
+        if (section == null) return saves;
+
+        String snapshots = INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + ".";
+        for (String saveName : section.getKeys(false)) {
+            String id = section.getString(saveName);
+            if (id != null && yamlConfig.contains(snapshots + id)) saves.put(saveName, id);
+        }
+        return saves;
+    }
+
+    /**
+     * Counts the captures handed to {@link #saveCapture} that are not written yet.
+     *
+     * @return the number of pending writes
+     */
+    int getPendingWriteCount() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * Takes every capture that is not written yet, so the caller can write it instead of the scheduled task.
+     *
+     * @return the pending captures, oldest first
+     */
+    List<PendingWrite> drainPendingWrites() {
+        return drainPendingWrites(null);
+    }
+
+    /**
+     * Takes the captures of one player, or of everyone, that are not written yet.
+     *
+     * @param uuid the player, or {@code null} for every player
+     * @return the pending captures, oldest first
+     */
+    private List<PendingWrite> drainPendingWrites(@Nullable UUID uuid) {
+        List<PendingWrite> drained = new ArrayList<>();
+        pendingWrites.forEach((sequence, write) -> {
+            if ((uuid == null || uuid.equals(write.uuid())) && pendingWrites.remove(sequence, write)) {
+                drained.add(write);
+            }
+        });
+        drained.sort(Comparator.comparingLong(PendingWrite::timestamp));
+        return drained;
     }
 
     /**
-     * Retrieves a player's saved data in a thread-safe manner.
+     * Stores the deaths the debouncer still holds, and captures whose scheduled write has not run yet,
+     * right away. Reads that pick snapshots by id call this first, so the latest death is one of them.
+     * Encodes on the calling thread.
+     *
+     * @param uuid the player, or {@code null} for every player
+     */
+    private void storeUnwritten(@Nullable UUID uuid) {
+        List<PendingWrite> writes = drainPendingWrites(uuid);
+        DeathDebouncer deathDebouncer = plugin.getDeathDebouncer();
+        if (deathDebouncer != null) writes.addAll(deathDebouncer.drain(uuid));
+        if (writes.isEmpty()) return;
+
+        Map<PendingWrite, String> encoded = new LinkedHashMap<>();
+        for (PendingWrite write : writes) {
+            try {
+                String data = InventorySerializer.serialize(PlayerData.encode(write.capture()));
+                if (data != null) {
+                    encoded.put(write, data);
+                } else {
+                    logger.warning("Failed to serialize inventory for " + write.name());
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to encode snapshot for " + write.name(), e);
+            }
+        }
+        writeEncoded(encoded);
+        saveAsync();
+    }
+
+    /**
+     * Writes already encoded snapshots to the YAML file in memory, without saving it.
+     *
+     * @param encoded pending captures with their encoded data
+     */
+    void writeEncoded(Map<PendingWrite, String> encoded) {
+        configLock.writeLock().lock();
+        try {
+            encoded.forEach((write, data) -> {
+                String uuid = write.uuid().toString();
+                String id = writeSnapshot(uuid, write.type(), write.timestamp(), countItems(write.capture().inventory()), data);
+                set(INVENTORY_PATH + uuid + "." + NAME_KEY, write.name());
+                if (write.saveName() != null) linkNamedSave(uuid, write.saveName(), id);
+                itemIndex.add(write.uuid(), id, write.type(), write.timestamp(),
+                        ItemIndex.extractKeys(write.capture().inventory(), write.capture().enderChest()));
+                nameIndex.markStored(write.uuid(), write.name());
+            });
+        } finally {
+            configLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the non-empty slots of an inventory, stored with each snapshot so lists can show it without decoding.
+     *
+     * @param contents the inventory contents
+     * @return the number of non-empty slots
+     */
+    private static int countItems(ItemStack[] contents) {
+        int count = 0;
+        for (ItemStack item : contents) {
+            if (item != null && !item.getType().isAir()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the newest snapshot of a type for a player. Must be called with a lock held.
+     *
+     * @param uuid the player's UUID
+     * @param type the kind of snapshot to look for
+     * @return the snapshot's section, or {@code null} if the player has none of that type
+     */
+    private ConfigurationSection findLatestSnapshot(UUID uuid, SnapshotType type) {
+        ConfigurationSection snapshots = yamlConfig.getConfigurationSection(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY);
+        if (snapshots == null) return null;
+
+        ConfigurationSection latest = null;
+        for (String id : snapshots.getKeys(false)) {
+            ConfigurationSection snapshot = snapshots.getConfigurationSection(id);
+            if (snapshot == null || !type.getKey().equals(snapshot.getString("type"))) continue;
+
+            if (latest == null || snapshot.getLong("time") > latest.getLong("time")) {
+                latest = snapshot;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Retrieves a player's most recent saved data of the given kind in a thread-safe manner.
      *
      * @param player the player whose data is being retrieved
      * @param isDeathInventory {@code true} to retrieve the death inventory, {@code false} for the saved inventory
@@ -143,48 +815,986 @@ public class PlayerDataStorage {
      */
     public PlayerData getPlayerData(Player player, boolean isDeathInventory) {
         if (player == null) return null;
+        return getPlayerData(player.getUniqueId(), isDeathInventory ? SnapshotType.DEATH : SnapshotType.SAVE);
+    }
+
+    /**
+     * Retrieves the most recent saved data of the given kind for a player who may be offline.
+     *
+     * @param uuid the UUID of the player whose data is being retrieved
+     * @param type the kind of snapshot to retrieve
+     * @return the deserialized PlayerData, or {@code null} if not found
+     */
+    public PlayerData getPlayerData(UUID uuid, SnapshotType type) {
+        // A death still held back by the debouncer is newer than any stored one
+        DeathDebouncer deathDebouncer = plugin.getDeathDebouncer();
+        if (type == SnapshotType.DEATH && deathDebouncer != null) {
+            PlayerData held = deathDebouncer.getHeld(uuid);
+            if (held != null) return held;
+        }
 
-        String path = INVENTORY_PATH + player.getUniqueId() + (isDeathInventory ? ".death" : ".save");
+        byte[] decoded;
+        String serializedData;
         configLock.readLock().lock();
         try {
-            String serializedData = yamlConfig.getString(path);
-            if (serializedData == null) {
-                return null;
-            }
-            return InventorySerializer.deserialize(serializedData);
+            ConfigurationSection snapshot = findLatestSnapshot(uuid, type);
+            if (snapshot == null) return null;
+            decoded = getDecodedData(uuid.toString(), snapshot.getName());
+            serializedData = decoded == null ? getData(uuid.toString(), snapshot) : null;
         } finally {
             configLock.readLock().unlock();
         }
+        return decode(decoded, serializedData);
     }
 
     /**
-     * Restores a player's inventory and XP.
+     * Retrieves a specific snapshot of a player by its id.
      *
-     * @param player the player to restore data to
-     * @param isDeathInventory {@code true} to restore death inventory, {@code false} for saved inventory
-     * @return {@code true} if successful, {@code false} otherwise
+     * @param uuid the UUID of the player
+     * @param snapshotId the id of the snapshot in the player's history
+     * @return the deserialized PlayerData, or {@code null} if the snapshot no longer exists
      */
-    public boolean restorePlayerData(Player player, boolean isDeathInventory) {
-        PlayerData data = getPlayerData(player, isDeathInventory);
-        if (data == null) {
-            return false;
+    public PlayerData getSnapshot(UUID uuid, String snapshotId) {
+        byte[] decoded;
+        String serializedData;
+        configLock.readLock().lock();
+        try {
+            ConfigurationSection snapshot = yamlConfig.getConfigurationSection(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + "." + snapshotId);
+            if (snapshot == null) return null;
+            decoded = getDecodedData(uuid.toString(), snapshotId);
+            serializedData = decoded == null ? getData(uuid.toString(), snapshot) : null;
+        } finally {
+            configLock.readLock().unlock();
         }
-
-        // Apply the data to the player
-        data.applyToPlayer(player);
-
-        logger.info("Restored inventory and XP for " + player.getName());
-        return true;
+        return decode(decoded, serializedData);
     }
 
     /**
-     * Synchronously saves all inventory data to disk.
-     * Should be called when the plugin is disabled.
+     * Checks whether a snapshot is still stored, without reading its data.
+     *
+     * @param uuid the UUID of the player
+     * @param snapshotId the id of the snapshot in the player's history
+     * @return {@code true} if the snapshot exists
+     */
+    public boolean hasSnapshot(UUID uuid, String snapshotId) {
+        configLock.readLock().lock();
+        try {
+            return yamlConfig.isConfigurationSection(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + "." + snapshotId);
+        } finally {
+            configLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists a player's named saves with the time each was taken. Only the index and the snapshot
+     * times are read, no snapshot is decoded.
+     *
+     * @param uuid the UUID of the player
+     * @return the time of each save in milliseconds, by save name in name order
+     */
+    public Map<String, Long> getNamedSaves(UUID uuid) {
+        Map<String, Long> saves = new LinkedHashMap<>();
+        configLock.readLock().lock();
+        try {
+            String snapshots = INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + ".";
+            readNamedSaves(uuid.toString()).forEach((saveName, id) ->
+                    saves.put(saveName, yamlConfig.getLong(snapshots + id + ".time")));
+        } finally {
+            configLock.readLock().unlock();
+        }
+        return saves;
+    }
+
+    /**
+     * Gets the id of the snapshot behind a named save.
+     *
+     * @param uuid the UUID of the player
+     * @param saveName the name of the save, lowercased
+     * @return the snapshot id, or {@code null} if the player has no such save
+     */
+    public @Nullable String getNamedSaveId(UUID uuid, String saveName) {
+        configLock.readLock().lock();
+        try {
+            return readNamedSaves(uuid.toString()).get(saveName);
+        } finally {
+            configLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes a named save together with its snapshot.
+     *
+     * @param uuid the UUID of the player
+     * @param saveName the name of the save, lowercased
+     * @return {@code true} if the save existed
+     */
+    public boolean deleteNamedSave(UUID uuid, String saveName) {
+        configLock.writeLock().lock();
+        try {
+            String path = INVENTORY_PATH + uuid + "." + SAVES_KEY + "." + saveName;
+            String id = yamlConfig.getString(path);
+            if (id == null) return false;
+
+            set(path, null);
+            removeUnlinkedSave(uuid.toString(), id);
+        } finally {
+            configLock.writeLock().unlock();
+        }
+
+        saveAsync();
+        return true;
+    }
+
+    /**
+     * Decodes snapshot data read by {@link #getDecodedData} or {@link #getData}, outside the lock.
+     *
+     * @param decoded the decoded off-heap data, or {@code null}
+     * @param serializedData the data as a string, used if there is no decoded data
+     * @return the deserialized PlayerData, or {@code null} if there is no data or it does not decode
+     */
+    private static PlayerData decode(@Nullable byte[] decoded, @Nullable String serializedData) {
+        if (decoded != null) {
+            return InventorySerializer.deserialize(decoded);
+        }
+        return serializedData == null ? null : InventorySerializer.deserialize(serializedData);
+    }
+
+    /**
+     * Rebuilds the in-memory set of queued restores from the YAML file.
+     * Must be called with the write lock held.
+     */
+    private void loadPendingRestores() {
+        pendingRestores.clear();
+        ConfigurationSection pending = yamlConfig.getConfigurationSection("pending-restores");
+        if (pending == null) return;
+
+        for (String uuid : pending.getKeys(false)) {
+            try {
+                pendingRestores.add(UUID.fromString(uuid));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Ignoring pending restore with invalid UUID " + uuid);
+            }
+        }
+    }
+
+    /**
+     * Queues a restore of a player's most recent snapshot of the given kind, to be applied the next time they join.
+     * The snapshot is pinned when queued, so snapshots taken in the meantime do not change what gets restored.
+     *
+     * @param uuid the UUID of the (offline) player
+     * @param type the kind of snapshot to restore
+     * @param requestedBy the name of whoever queued the restore, shown to the player
+     * @return {@code true} if a restore was queued, {@code false} if the player has no such snapshot
+     */
+    public boolean queueRestore(UUID uuid, SnapshotType type, String requestedBy) {
+        // The restore is pinned by id, so a held death must be stored before the latest is picked
+        if (type == SnapshotType.DEATH) storeUnwritten(uuid);
+
+        String snapshotId;
+        configLock.readLock().lock();
+        try {
+            ConfigurationSection snapshot = findLatestSnapshot(uuid, type);
+            snapshotId = snapshot == null ? null : snapshot.getName();
+        } finally {
+            configLock.readLock().unlock();
+        }
+
+        return snapshotId != null && queueRestore(uuid, snapshotId, requestedBy);
+    }
+
+    /**
+     * Queues a restore of a specific snapshot, to be applied the next time the player joins.
+     * Replaces any restore already queued for the player.
+     *
+     * @param uuid the UUID of the (offline) player
+     * @param snapshotId the id of the snapshot in the player's history
+     * @param requestedBy the name of whoever queued the restore, shown to the player
+     * @return {@code true} if a restore was queued, {@code false} if the snapshot does not exist
+     */
+    public boolean queueRestore(UUID uuid, String snapshotId, String requestedBy) {
+        configLock.writeLock().lock();
+        try {
+            if (!yamlConfig.contains(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + "." + snapshotId)) {
+                return false;
+            }
+
+            set(PENDING_PATH + uuid + ".snapshot", snapshotId);
+            set(PENDING_PATH + uuid + ".requested-by", requestedBy);
+            pendingRestores.add(uuid);
+        } finally {
+            configLock.writeLock().unlock();
+        }
+
+        saveAsync();
+        return true;
+    }
+
+    /**
+     * Checks whether a player has a queued restore. This only consults memory and never blocks.
+     *
+     * @param uuid the UUID of the player
+     * @return {@code true} if a restore is waiting for the player
+     */
+    public boolean hasPendingRestore(UUID uuid) {
+        return pendingRestores.contains(uuid);
+    }
+
+    /**
+     * Applies a player's queued restore, if any. The snapshot is decoded off-thread and then applied
+     * on the player's entity scheduler; the queue entry is only removed once the restore has been applied.
+     *
+     * @param player the player who just joined
+     */
+    public void applyPendingRestore(Player player) {
+        final UUID uuid = player.getUniqueId();
+        if (!pendingRestores.contains(uuid)) return;
+
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            final String snapshotId;
+            final String requestedBy;
+            configLock.readLock().lock();
+            try {
+                snapshotId = yamlConfig.getString(PENDING_PATH + uuid + ".snapshot");
+                requestedBy = yamlConfig.getString(PENDING_PATH + uuid + ".requested-by", "Console");
+            } finally {
+                configLock.readLock().unlock();
+            }
+
+            final PlayerData data = snapshotId == null ? null : getSnapshot(uuid, snapshotId);
+            if (data == null) {
+                logger.warning("Queued restore for " + player.getName() + " refers to a snapshot that no longer exists.");
+                clearPendingRestore(uuid);
+                return;
+            }
+
+            player.getScheduler().run(plugin, t -> {
+                data.applyToPlayer(player);
+                clearPendingRestore(uuid);
+                player.sendMessage(Component.text("Your inventory has been restored by " + requestedBy)
+                        .color(NamedTextColor.GREEN));
+                logger.info("Applied queued restore for " + player.getName());
+            }, () -> logger.info("Player " + player.getName() + " left before their queued restore was applied."));
+        });
+    }
+
+    /**
+     * Removes a player's queued restore.
+     *
+     * @param uuid the UUID of the player
+     */
+    private void clearPendingRestore(UUID uuid) {
+        configLock.writeLock().lock();
+        try {
+            // A named save replaced or deleted while the restore was queued is no longer needed
+            String snapshotId = yamlConfig.getString(PENDING_PATH + uuid + ".snapshot");
+            set(PENDING_PATH + uuid, null);
+            pendingRestores.remove(uuid);
+            if (snapshotId != null && !readNamedSaves(uuid.toString()).containsValue(snapshotId) && SnapshotType.NAMED_SAVE.getKey()
+                    .equals(yamlConfig.getString(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + "." + snapshotId + ".type"))) {
+                removeUnlinkedSave(uuid.toString(), snapshotId);
+            }
+        } finally {
+            configLock.writeLock().unlock();
+        }
+        saveAsync();
+    }
+
+    /**
+     * Schedules a write of the YAML file on the global region scheduler, a short delay from now.
+     * Calls made while a write is already queued are folded into that write, so the file is
+     * rewritten at most once per delay however many snapshots are stored.
+     */
+    private void saveAsync() {
+        if (!saveQueued.compareAndSet(false, true)) return;
+
+        plugin.getServer().getGlobalRegionScheduler().runDelayed(plugin, t -> {
+            saveQueued.set(false);
+            configLock.writeLock().lock();
+            try {
+                writeFile();
+            } catch (IOException e) {
+                // The changes are still in memory, try again with the next write
+                logger.log(Level.SEVERE, "Could not save inventories.yml!", e);
+                saveAsync();
+            } finally {
+                configLock.writeLock().unlock();
+            }
+        }, SAVE_DELAY_TICKS);
+    }
+
+    /**
+     * Finds, for every stored player, the newest snapshot taken at or before a point in time.
+     * Used for server-wide rollbacks; players without a matching snapshot are left out.
+     *
+     * @param cutoff the point in time in milliseconds
+     * @param type the kind of snapshot to consider, or {@code null} for any kind
+     * @return the selected snapshot id per player
+     */
+    public Map<UUID, String> findSnapshotsBefore(long cutoff, @Nullable SnapshotType type) {
+        Map<UUID, String> selected = new LinkedHashMap<>();
+        storeUnwritten(null);
+
+        configLock.readLock().lock();
+        try {
+            ConfigurationSection inventories = yamlConfig.getConfigurationSection("inventories");
+            if (inventories == null) return selected;
+
+            for (String uuid : inventories.getKeys(false)) {
+                ConfigurationSection snapshots = inventories.getConfigurationSection(uuid + "." + SNAPSHOTS_KEY);
+                if (snapshots == null) continue;
+
+                String bestId = null;
+                long bestTime = Long.MIN_VALUE;
+                for (String id : snapshots.getKeys(false)) {
+                    ConfigurationSection snapshot = snapshots.getConfigurationSection(id);
+                    if (snapshot == null) continue;
+                    if (type != null && !type.getKey().equals(snapshot.getString("type"))) continue;
+
+                    long time = snapshot.getLong("time");
+                    if (time <= cutoff && time > bestTime) {
+                        bestId = id;
+                        bestTime = time;
+                    }
+                }
+
+                if (bestId != null) {
+                    try {
+                        selected.put(UUID.fromString(uuid), bestId);
+                    } catch (IllegalArgumentException e) {
+                        logger.warning("Skipping stored inventory with invalid UUID " + uuid);
+                    }
+                }
+            }
+        } finally {
+            configLock.readLock().unlock();
+        }
+        return selected;
+    }
+
+    /**
+     * Lists every stored snapshot without reading any data. Use {@link #readSnapshot} to load the
+     * data of one snapshot at a time.
+     *
+     * @return the metadata of every stored snapshot
+     */
+    public List<SnapshotInfo> listAllSnapshots() {
+        List<SnapshotInfo> infos = new ArrayList<>();
+
+        configLock.readLock().lock();
+        try {
+            ConfigurationSection inventories = yamlConfig.getConfigurationSection("inventories");
+            if (inventories == null) return infos;
+
+            for (String uuid : inventories.getKeys(false)) {
+                UUID owner;
+                try {
+                    owner = UUID.fromString(uuid);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                infos.addAll(readInfos(owner, inventories.getConfigurationSection(uuid + "." + SNAPSHOTS_KEY)));
+            }
+        } finally {
+            configLock.readLock().unlock();
+        }
+        return infos;
+    }
+
+    /**
+     * Reads a single snapshot, still serialized.
+     *
+     * @param owner the UUID of the player
+     * @param snapshotId the id of the snapshot in the player's history
+     * @return the snapshot, or {@code null} if it no longer exists
+     */
+    public @Nullable SnapshotRecord readSnapshot(UUID owner, String snapshotId) {
+        configLock.readLock().lock();
+        try {
+            ConfigurationSection snapshot = yamlConfig.getConfigurationSection(INVENTORY_PATH + owner + "." + SNAPSHOTS_KEY + "." + snapshotId);
+            String data = getData(owner.toString(), snapshot);
+            return data == null ? null : new SnapshotRecord(readInfo(owner, snapshot), data);
+        } finally {
+            configLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies a player's part of the store for an export: their name, snapshots (still serialized, with
+     * their stored checksums), named saves and queued restore. The copy is taken under the read lock, so
+     * it is consistent for the player, and can be processed afterwards without holding it. Each player is
+     * copied at a different moment; an export is not one consistent view of the whole store.
+     *
+     * @param uuid the UUID of the player
+     * @return the player's entry, or {@code null} if they have no data in storage
+     */
+    public @Nullable SnapshotArchive.PlayerEntry exportPlayer(UUID uuid) {
+        configLock.readLock().lock();
+        try {
+            String playerPath = INVENTORY_PATH + uuid;
+            if (!yamlConfig.contains(playerPath)) return null;
+
+            String requestedBy = yamlConfig.getString(PENDING_PATH + uuid + ".requested-by", "Console");
+            String pendingId = yamlConfig.getString(PENDING_PATH + uuid + ".snapshot");
+            return new SnapshotArchive.PlayerEntry(uuid, yamlConfig.getString(playerPath + "." + NAME_KEY),
+                    readSnapshots(uuid, yamlConfig.getConfigurationSection(playerPath + "." + SNAPSHOTS_KEY)),
+                    readNamedSaves(uuid.toString()),
+                    pendingId == null ? null : new SnapshotArchive.PendingRestore(pendingId, requestedBy));
+        } finally {
+            configLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes imported player entries into storage, keeping snapshot ids. Snapshots that already exist
+     * under the same id, whose type is unknown, or whose data does not match the checksum they were
+     * exported with are skipped; the latter are logged. A save name is only linked if the player
+     * has no save of that name yet, and a queued restore only if none is queued; both must point at a
+     * snapshot that exists. Players are stored under the name they already have in storage, or else the
+     * name in the archive or the one the server knows them by, so they can be looked up by name like any
+     * other stored player. The file is not saved; call {@link #save()} once the import is done.
+     *
+     * @param entries the player entries to import
+     * @return the snapshots that were written
+     */
+    public List<SnapshotRecord> importPlayers(List<SnapshotArchive.PlayerEntry> entries) {
+        List<SnapshotRecord> imported = new ArrayList<>();
+        // Looked up outside the lock, the server may read its user cache for these
+        Map<UUID, String> knownNames = new HashMap<>();
+        for (SnapshotArchive.PlayerEntry entry : entries) {
+            if (entry.name() == null) {
+                knownNames.computeIfAbsent(entry.uuid(), owner -> plugin.getServer().getOfflinePlayer(owner).getName());
+            }
+        }
+        Map<UUID, String> storedNames = new HashMap<>();
+
+        configLock.writeLock().lock();
+        try {
+            for (SnapshotArchive.PlayerEntry entry : entries) {
+                String uuid = entry.uuid().toString();
+                String snapshots = INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + ".";
+                boolean written = false;
+                for (SnapshotRecord record : entry.snapshots()) {
+                    String path = snapshots + record.id();
+                    if (record.type() == null || yamlConfig.contains(path)) continue;
+                    if (!record.matchesChecksum()) {
+                        logger.warning("Skipping imported snapshot " + uuid + "/" + record.id() + ", it does not match its checksum");
+                        continue;
+                    }
+
+                    set(path + ".type", record.type().getKey());
+                    set(path + ".time", record.time());
+                    if (record.itemCount() >= 0) {
+                        set(path + ".items", record.itemCount());
+                    }
+                    putData(uuid, record.id(), record.data());
+                    // Archives from before checksums were exported carry none, it is computed then
+                    set(path + ".crc", record.checksum() >= 0 ? record.checksum() : SnapshotRecord.checksumOf(record.data()));
+                    imported.add(record);
+                    written = true;
+                }
+
+                Map<String, String> saves = readNamedSaves(uuid);
+                entry.saves().forEach((saveName, id) -> {
+                    if (!saves.containsKey(saveName) && yamlConfig.contains(snapshots + id)) {
+                        set(INVENTORY_PATH + uuid + "." + SAVES_KEY + "." + saveName, id);
+                    }
+                });
+
+                SnapshotArchive.PendingRestore pending = entry.pending();
+                if (pending != null && !yamlConfig.contains(PENDING_PATH + uuid) && yamlConfig.contains(snapshots + pending.snapshotId())) {
+                    set(PENDING_PATH + uuid + ".snapshot", pending.snapshotId());
+                    set(PENDING_PATH + uuid + ".requested-by", pending.requestedBy());
+                    pendingRestores.add(entry.uuid());
+                }
+
+                if (!written) continue;
+                String namePath = INVENTORY_PATH + uuid + "." + NAME_KEY;
+                String name = yamlConfig.getString(namePath, entry.name() != null ? entry.name() : knownNames.get(entry.uuid()));
+                if (name != null) {
+                    set(namePath, name);
+                    storedNames.put(entry.uuid(), name);
+                }
+            }
+        } finally {
+            configLock.writeLock().unlock();
+        }
+
+        storedNames.forEach(nameIndex::markStored);
+        return imported;
+    }
+
+    /**
+     * Moves snapshots that failed an integrity check out of the player's history into the quarantine
+     * section, where they are kept for inspection but never restored. Snapshots that were rewritten
+     * or removed since they were checked are left alone. Saves the file if anything was moved.
+     *
+     * @param corrupt the snapshots to quarantine, with the reason each one failed
+     * @return the number of snapshots quarantined
+     */
+    public int quarantineSnapshots(Map<SnapshotRecord, String> corrupt) {
+        int moved = 0;
+        long now = System.currentTimeMillis();
+
+        configLock.writeLock().lock();
+        try {
+            for (Map.Entry<SnapshotRecord, String> entry : corrupt.entrySet()) {
+                SnapshotRecord record = entry.getKey();
+                String path = INVENTORY_PATH + record.owner() + "." + SNAPSHOTS_KEY + "." + record.id();
+                ConfigurationSection snapshot = yamlConfig.getConfigurationSection(path);
+                if (snapshot == null || !record.data().equals(getData(record.owner().toString(), snapshot))) continue;
+
+                // Quarantined snapshots are rarely read, their data stays in the YAML tree
+                String target = QUARANTINE_PATH + record.owner() + "." + record.id();
+                for (String key : snapshot.getKeys(false)) {
+                    set(target + "." + key, snapshot.get(key));
+                }
+                set(target + ".data", record.data());
+                set(target + ".reason", entry.getValue());
+                set(target + ".quarantined", now);
+
+                set(path, null);
+                unindex(record.owner().toString(), record.id());
+                moved++;
+            }
+
+            if (moved > 0) {
+                writeFile();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not save inventories.yml!", e);
+        } finally {
+            configLock.writeLock().unlock();
+        }
+        return moved;
+    }
+
+    /**
+     * Stores checksums for snapshots written before checksums existed, once they have been
+     * verified to decode. Snapshots that changed since they were checked are left alone.
+     *
+     * @param verified the verified snapshots without a stored checksum, with the checksum of the data that was verified
+     * @return the number of checksums stored
+     */
+    public int storeChecksums(Map<SnapshotInfo, Long> verified) {
+        int stored = 0;
+
+        configLock.writeLock().lock();
+        try {
+            for (Map.Entry<SnapshotInfo, Long> entry : verified.entrySet()) {
+                SnapshotInfo info = entry.getKey();
+                String path = INVENTORY_PATH + info.owner() + "." + SNAPSHOTS_KEY + "." + info.id();
+                String data = getData(info.owner().toString(), yamlConfig.getConfigurationSection(path));
+                if (data == null || SnapshotRecord.checksumOf(data) != entry.getValue()) continue;
+
+                set(path + ".crc", entry.getValue());
+                stored++;
+            }
+        } finally {
+            configLock.writeLock().unlock();
+        }
+
+        if (stored > 0) {
+            saveAsync();
+        }
+        return stored;
+    }
+
+    /**
+     * Lists a player's snapshots, newest first, from their metadata alone. No data is read; load a
+     * snapshot by id with {@link #getSnapshot} once it is needed.
+     *
+     * @param owner the UUID of the player
+     * @return the metadata of the player's snapshots
+     */
+    public List<SnapshotInfo> listSnapshots(UUID owner) {
+        storeUnwritten(owner);
+        return listStoredSnapshots(owner);
+    }
+
+    /**
+     * Lists a player's snapshots, newest first, leaving deaths the debouncer still holds where they are.
+     * For observers such as the load test, which must not cut the debounce window short.
+     *
+     * @param owner the UUID of the player
+     * @return the metadata of the player's stored snapshots
+     */
+    List<SnapshotInfo> listStoredSnapshots(UUID owner) {
+        List<SnapshotInfo> infos;
+        configLock.readLock().lock();
+        try {
+            infos = readInfos(owner, yamlConfig.getConfigurationSection(INVENTORY_PATH + owner + "." + SNAPSHOTS_KEY));
+        } finally {
+            configLock.readLock().unlock();
+        }
+
+        infos.sort(Comparator.comparingLong(SnapshotInfo::time).reversed());
+        return infos;
+    }
+
+    /**
+     * Converts a player's snapshots section into records. Must be called with a lock held.
+     *
+     * @param owner the UUID of the player
+     * @param snapshots the player's snapshots section, may be {@code null}
+     * @return the player's snapshots
+     */
+    private List<SnapshotRecord> readSnapshots(UUID owner, @Nullable ConfigurationSection snapshots) {
+        List<SnapshotRecord> records = new ArrayList<>();
+        if (snapshots == null) return records;
+
+        for (String id : snapshots.getKeys(false)) {
+            ConfigurationSection snapshot = snapshots.getConfigurationSection(id);
+            String data = getData(owner.toString(), snapshot);
+            if (data == null) continue;
+
+            records.add(new SnapshotRecord(readInfo(owner, snapshot), data));
+        }
+        return records;
+    }
+
+    /**
+     * Reads the metadata of a player's snapshots, leaving their data alone. Must be called with a lock held.
+     *
+     * @param owner the UUID of the player
+     * @param snapshots the player's snapshots section, may be {@code null}
+     * @return the metadata of the player's snapshots that have data
+     */
+    private List<SnapshotInfo> readInfos(UUID owner, @Nullable ConfigurationSection snapshots) {
+        List<SnapshotInfo> infos = new ArrayList<>();
+        if (snapshots == null) return infos;
+
+        for (String id : snapshots.getKeys(false)) {
+            ConfigurationSection snapshot = snapshots.getConfigurationSection(id);
+            if (snapshot == null || !hasData(owner.toString(), snapshot)) continue;
+            infos.add(readInfo(owner, snapshot));
+        }
+        return infos;
+    }
+
+    /**
+     * Reads the metadata of a snapshot. Must be called with a lock held.
+     *
+     * @param owner the UUID of the player
+     * @param snapshot the snapshot's section
+     * @return the snapshot's metadata
+     */
+    private static SnapshotInfo readInfo(UUID owner, ConfigurationSection snapshot) {
+        return new SnapshotInfo(owner, snapshot.getName(), SnapshotType.fromKey(snapshot.getString("type")),
+                snapshot.getLong("time"), snapshot.getInt("items", -1), snapshot.getLong("crc", -1));
+    }
+
+    /**
+     * Lists the UUIDs of every player that has data in storage.
+     * The returned list is a copy and can be iterated without holding any lock.
+     *
+     * @return the stored player UUIDs as strings
+     */
+    public List<String> getStoredPlayerIds() {
+        configLock.readLock().lock();
+        try {
+            ConfigurationSection inventories = yamlConfig.getConfigurationSection("inventories");
+            return inventories == null ? new ArrayList<>() : new ArrayList<>(inventories.getKeys(false));
+        } finally {
+            configLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the last known name of every player that has data in storage, without decoding any snapshot.
+     *
+     * @return stored player UUIDs to their name, which is {@code null} for players stored by older versions
+     */
+    public Map<UUID, String> getStoredPlayerNames() {
+        Map<UUID, String> names = new HashMap<>();
+
+        configLock.readLock().lock();
+        try {
+            ConfigurationSection inventories = yamlConfig.getConfigurationSection("inventories");
+            if (inventories == null) return names;
+
+            for (String uuid : inventories.getKeys(false)) {
+                try {
+                    names.put(UUID.fromString(uuid), inventories.getString(uuid + "." + NAME_KEY));
+                } catch (IllegalArgumentException ignored) {
+                    // Not a player entry
+                }
+            }
+        } finally {
+            configLock.readLock().unlock();
+        }
+        return names;
+    }
+
+    /**
+     * Applies a retention policy to a bounded group of players and schedules a save if anything changed.
+     * Only the given players are visited and the file is not written under the lock, so the write lock
+     * is held for a time proportional to the slice.
+     *
+     * @param uuids the players to prune
+     * @param policy the retention policy to enforce
+     * @param now the current time in milliseconds
+     * @return the number of snapshots removed
+     */
+    public int pruneSnapshots(List<String> uuids, RetentionPolicy policy, long now) {
+        int removed = 0;
+
+        configLock.writeLock().lock();
+        try {
+            for (String uuid : uuids) {
+                // Keep players with a queued restore intact until it has been applied
+                if (hasPendingRestore(uuid)) continue;
+                removed += prunePlayer(uuid, policy, now);
+            }
+        } finally {
+            configLock.writeLock().unlock();
+        }
+
+        // Written outside the lock, folded together with the other slices and snapshots
+        if (removed > 0) {
+            saveAsync();
+        }
+        return removed;
+    }
+
+    /**
+     * Applies a retention policy to a single player. Must be called with the write lock held.
+     *
+     * @param uuid the player's UUID as a string
+     * @param policy the retention policy to enforce
+     * @param now the current time in milliseconds
+     * @return the number of snapshots removed
+     */
+    private int prunePlayer(String uuid, RetentionPolicy policy, long now) {
+        String playerPath = INVENTORY_PATH + uuid;
+        ConfigurationSection snapshots = yamlConfig.getConfigurationSection(playerPath + "." + SNAPSHOTS_KEY);
+        if (snapshots == null) {
+            // Nothing left for this player, drop the empty entry
+            removePlayerEntry(uuid);
+            return 0;
+        }
+
+        List<ConfigurationSection> entries = new ArrayList<>();
+        for (String id : snapshots.getKeys(false)) {
+            ConfigurationSection snapshot = snapshots.getConfigurationSection(id);
+            if (snapshot != null) entries.add(snapshot);
+        }
+        entries.sort(Comparator.comparingLong((ConfigurationSection s) -> s.getLong("time")).reversed());
+
+        // Purge the player if even their newest snapshot is too old
+        if (entries.isEmpty()) {
+            removePlayerEntry(uuid);
+            return 0;
+        }
+        boolean inactive = !isOnline(uuid) && policy.isInactive(entries.get(0).getLong("time"), now);
+
+        int removed = 0;
+        int kept = 0;
+        int maxSnapshots = policy.getMaxSnapshotsPerPlayer();
+        Map<String, Integer> keptPerType = new HashMap<>();
+        // Named saves are kept until their owner deletes or replaces them, even for inactive players,
+        // and do not count towards limits
+        Map<String, String> named = readNamedSaves(uuid);
+        Set<String> namedSaves = new HashSet<>(named.values());
+        ConfigurationSection savesIndex = yamlConfig.getConfigurationSection(playerPath + "." + SAVES_KEY);
+        if (savesIndex != null) {
+            // Drop names whose snapshot was quarantined or removed by hand
+            for (String saveName : savesIndex.getKeys(false)) {
+                if (!named.containsKey(saveName)) set(playerPath + "." + SAVES_KEY + "." + saveName, null);
+            }
+        }
+        for (ConfigurationSection snapshot : entries) {
+            if (namedSaves.contains(snapshot.getName())) {
+                kept++;
+                continue;
+            }
+
+            SnapshotType type = SnapshotType.fromKey(snapshot.getString("type"));
+            // A named save without a name was replaced or deleted while a queued restore still needed it
+            boolean unnamed = type == SnapshotType.NAMED_SAVE;
+            boolean expired = policy.isExpired(type, snapshot.getLong("time"), now);
+            // Count limits apply per type, so frequent auto snapshots never push out death snapshots
+            int keptOfType = keptPerType.getOrDefault(snapshot.getString("type", ""), 0);
+            if (inactive || unnamed || expired || (maxSnapshots > 0 && keptOfType >= maxSnapshots)) {
+                set(playerPath + "." + SNAPSHOTS_KEY + "." + snapshot.getName(), null);
+                unindex(uuid, snapshot.getName());
+                removed++;
+            } else {
+                keptPerType.merge(snapshot.getString("type", ""), 1, Integer::sum);
+                kept++;
+            }
+        }
+
+        if (kept == 0) {
+            removePlayerEntry(uuid);
+        }
+        return removed;
+    }
+
+    /**
+     * Drops a removed snapshot from the item index and frees its off-heap data.
+     * Must be called with the write lock held.
+     *
+     * @param uuid the player's UUID as stored
+     * @param id the id of the removed snapshot
+     */
+    private void unindex(String uuid, String id) {
+        freeData(uuid, id);
+        try {
+            itemIndex.remove(UUID.fromString(uuid), id);
+        } catch (IllegalArgumentException ignored) {
+            // Malformed keys are never indexed
+        }
+    }
+
+    /**
+     * Drops a player's whole entry and takes them out of the name index. Must be called with the write lock held.
+     *
+     * @param uuid the player's UUID as stored
+     */
+    private void removePlayerEntry(String uuid) {
+        set(INVENTORY_PATH + uuid, null);
+        try {
+            nameIndex.unmarkStored(UUID.fromString(uuid));
+        } catch (IllegalArgumentException ignored) {
+            // Malformed keys are never indexed
+        }
+    }
+
+    /**
+     * Checks whether the player stored under a key has a queued restore.
+     *
+     * @param uuid the player's UUID as a string
+     * @return {@code true} if a restore is queued, {@code false} otherwise or if the key is malformed
+     */
+    private boolean hasPendingRestore(String uuid) {
+        try {
+            return pendingRestores.contains(UUID.fromString(uuid));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the player stored under a key is currently online.
+     *
+     * @param uuid the player's UUID as a string
+     * @return {@code true} if the player is online, {@code false} if offline or the key is malformed
+     */
+    private boolean isOnline(String uuid) {
+        try {
+            return plugin.getServer().getPlayer(UUID.fromString(uuid)) != null;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Restores a player's inventory and XP.
+     *
+     * @param player the player to restore data to
+     * @param isDeathInventory {@code true} to restore death inventory, {@code false} for saved inventory
+     * @return {@code true} if successful, {@code false} otherwise
+     */
+    public boolean restorePlayerData(Player player, boolean isDeathInventory) {
+        PlayerData data = getPlayerData(player, isDeathInventory);
+        if (data == null) {
+            return false;
+        }
+
+        // Apply the data to the player
+        data.applyToPlayer(player);
+
+        logger.info("Restored inventory and XP for " + player.getName());
+        return true;
+    }
+
+    /**
+     * Restores one of a player's named saves to them. Must be called on the player's region thread.
+     *
+     * @param player the player to restore data to
+     * @param saveName the name of the save, lowercased
+     * @return {@code true} if successful, {@code false} if there is no such save
+     */
+    public boolean restoreNamedSave(Player player, String saveName) {
+        String id = getNamedSaveId(player.getUniqueId(), saveName);
+        PlayerData data = id == null ? null : getSnapshot(player.getUniqueId(), id);
+        if (data == null) {
+            return false;
+        }
+
+        data.applyToPlayer(player);
+
+        logger.info("Restored save '" + saveName + "' for " + player.getName());
+        return true;
+    }
+
+    /**
+     * Restores only some slots of a player's inventory, merging them into what they currently carry.
+     * Only the requested slots are decoded. Must be called on the player's region thread.
+     *
+     * @param player the player to restore slots to
+     * @param isDeathInventory {@code true} to restore from the death inventory, {@code false} for the saved inventory
+     * @param slots the inventory slots to restore
+     * @return the number of slots restored, or -1 if there is no such inventory
+     */
+    public int restorePlayerSlots(Player player, boolean isDeathInventory, int[] slots) {
+        PlayerData data = getPlayerData(player, isDeathInventory);
+        if (data == null) {
+            return -1;
+        }
+
+        int restored = PlayerData.applySlotsToPlayer(player, data.getInventoryContents(slots));
+
+        logger.info("Restored " + restored + " inventory slot(s) for " + player.getName());
+        return restored;
+    }
+
+    /**
+     * Restores only a player's experience. Only the experience section is decoded.
+     * Must be called on the player's region thread.
+     *
+     * @param player the player to restore experience to
+     * @param isDeathInventory {@code true} to restore from the death snapshot, {@code false} for the saved one
+     * @return {@code true} if successful, {@code false} if there is no such snapshot
+     */
+    public boolean restorePlayerExperience(Player player, boolean isDeathInventory) {
+        PlayerData data = getPlayerData(player, isDeathInventory);
+        if (data == null) {
+            return false;
+        }
+
+        data.applyExperience(player);
+
+        logger.info("Restored XP for " + player.getName());
+        return true;
+    }
+
+    /**
+     * Restores only a player's ender chest. Only the ender chest section is decoded.
+     * Must be called on the player's region thread.
+     *
+     * @param player the player to restore the ender chest to
+     * @param isDeathInventory {@code true} to restore from the death snapshot, {@code false} for the saved one
+     * @return {@code true} if successful, {@code false} if there is no such snapshot or it has no ender chest
+     */
+    public boolean restorePlayerEnderChest(Player player, boolean isDeathInventory) {
+        PlayerData data = getPlayerData(player, isDeathInventory);
+        if (data == null || !data.applyEnderChest(player)) {
+            return false;
+        }
+
+        logger.info("Restored ender chest for " + player.getName());
+        return true;
+    }
+
+    /**
+     * Synchronously saves all inventory data to disk.
+     * Shutdown uses {@link ShutdownFlush} instead, which bounds how long saving may take.
      */
     public void save() {
         configLock.writeLock().lock();
         try {
-            yamlConfig.save(configFile);
+            writeFile();
             logger.info("Saved all inventory data!");
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Could not save inventories.yml!", e);
@@ -192,4 +1802,243 @@ public class PlayerDataStorage {
             configLock.writeLock().unlock();
         }
     }
+
+    /**
+     * Saves the YAML file through a temporary file that replaces it in one step, so a write that
+     * is cut off leaves the previous file intact. Writing the temporary file holds the lock, as the
+     * data is streamed from off-heap memory.
+     *
+     * @throws IOException if the file could not be written
+     */
+    void saveAtomically() throws IOException {
+        Path target = configFile.toPath();
+        Path temp = target.resolveSibling(configFile.getName() + ".tmp");
+        configLock.writeLock().lock();
+        try {
+            writeTo(temp);
+        } finally {
+            configLock.writeLock().unlock();
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Stores a snapshot's data off-heap and queues it for shared storage, if in use.
+     * Must be called with the write lock held.
+     *
+     * @param uuid the player's UUID as stored
+     * @param id the id of the snapshot
+     * @param data the serialized data
+     */
+    private void putData(String uuid, String id, String data) {
+        if (sharedStore != null) {
+            sharedStore.record(INVENTORY_PATH + uuid + "." + SNAPSHOTS_KEY + "." + id + ".data", data);
+        }
+        Long previous = blobHandles.put(uuid + "/" + id, blobs.put(data));
+        if (previous != null) blobs.free(previous);
+    }
+
+    /**
+     * Frees a snapshot's off-heap data, if it has any. Must be called with the write lock held.
+     *
+     * @param uuid the player's UUID as stored
+     * @param id the id of the snapshot
+     */
+    private void freeData(String uuid, String id) {
+        Long handle = blobHandles.remove(uuid + "/" + id);
+        if (handle != null) blobs.free(handle);
+    }
+
+    /**
+     * Checks whether a snapshot has data, without reading it. Must be called with a lock held.
+     *
+     * @param uuid the player's UUID as stored
+     * @param snapshot the snapshot's section
+     * @return {@code true} if the snapshot has data inline or off-heap
+     */
+    private boolean hasData(String uuid, ConfigurationSection snapshot) {
+        return blobHandles.containsKey(uuid + "/" + snapshot.getName()) || snapshot.isString("data");
+    }
+
+    /**
+     * Reads a snapshot's data as a string. Must be called with a lock held.
+     *
+     * @param uuid the player's UUID as stored
+     * @param snapshot the snapshot's section, may be {@code null}
+     * @return the serialized data, or {@code null} if the snapshot has none
+     */
+    private @Nullable String getData(String uuid, @Nullable ConfigurationSection snapshot) {
+        if (snapshot == null) return null;
+
+        String inline = snapshot.getString("data");
+        if (inline != null) return inline;
+        Long handle = blobHandles.get(uuid + "/" + snapshot.getName());
+        return handle == null ? null : blobs.getString(handle);
+    }
+
+    /**
+     * Reads a snapshot's data already Base64 decoded, straight from off-heap memory.
+     * Must be called with a lock held.
+     *
+     * @param uuid the player's UUID as stored
+     * @param id the id of the snapshot
+     * @return the decoded data, or {@code null} if it is not off-heap or not valid Base64
+     */
+    private @Nullable byte[] getDecodedData(String uuid, String id) {
+        Long handle = blobHandles.get(uuid + "/" + id);
+        return handle == null ? null : blobs.getDecoded(handle);
+    }
+
+    /**
+     * Moves the data of snapshots below a section of the YAML tree off-heap: either the whole
+     * "inventories" section, or one player in it. Must be called with the write lock held.
+     *
+     * @param section the section to move the data of, may be {@code null}
+     * @return the number of snapshots moved
+     */
+    private int moveDataOffHeap(@Nullable ConfigurationSection section) {
+        if (section == null) return 0;
+
+        int moved = 0;
+        for (String path : section.getKeys(true)) {
+            // Paths look like [<uuid>.]snapshots.<id>.data
+            String[] parts = path.split("\\.");
+            int length = parts.length;
+            if (length < 3 || !parts[length - 1].equals("data") || !parts[length - 3].equals(SNAPSHOTS_KEY)) continue;
+            String data = section.getString(path);
+            if (data == null) continue;
+
+            String uuid = length == 4 ? parts[0] : section.getName();
+            Long previous = blobHandles.put(uuid + "/" + parts[length - 2], blobs.put(data));
+            if (previous != null) blobs.free(previous);
+            section.set(path, null);
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Writes the YAML file with the off-heap data put back in place. The tree is serialized with a
+     * short placeholder for each Base64 blob, and the blobs are streamed from their slabs into the
+     * placeholders' spots, so the data never becomes a string on the heap. Handles of snapshots that
+     * no longer exist are freed on the way, and the off-heap data is compacted if it has become
+     * fragmented. Must be called with the write lock held.
+     *
+     * @param target the file to write
+     * @throws IOException if the file could not be written
+     */
+    private void writeTo(Path target) throws IOException {
+        blobHandles.entrySet().removeIf(entry -> {
+            if (yamlConfig.isConfigurationSection(snapshotPath(entry.getKey()))) return false;
+            blobs.free(entry.getValue());
+            return true;
+        });
+        compactBlobs();
+
+        List<Long> streamed = new ArrayList<>();
+        List<String> inlined = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : blobHandles.entrySet()) {
+            String path = snapshotPath(entry.getKey()) + ".data";
+            long handle = entry.getValue();
+            if (blobs.isBase64(handle)) {
+                yamlConfig.set(path, BLOB_MARKER + streamed.size() + "@");
+                streamed.add(handle);
+            } else {
+                // Data that is not Base64 only comes from very old files, it is rare enough to inline
+                yamlConfig.set(path, blobs.getString(handle));
+            }
+            inlined.add(path);
+        }
+
+        String skeleton;
+        try {
+            skeleton = yamlConfig.saveToString();
+        } finally {
+            inlined.forEach(path -> yamlConfig.set(path, null));
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            int from = 0;
+            int marker;
+            while ((marker = skeleton.indexOf(BLOB_MARKER, from)) >= 0) {
+                int start = marker + BLOB_MARKER.length();
+                int end = skeleton.indexOf('@', start);
+                int index = end < 0 ? -1 : parseIndex(skeleton.substring(start, end));
+                if (index < 0 || index >= streamed.size()) {
+                    // Not one of ours, keep it as it is
+                    out.write(skeleton.substring(from, start).getBytes(StandardCharsets.UTF_8));
+                    from = start;
+                    continue;
+                }
+
+                // The placeholder is quoted, the Base64 data goes between the same quotes
+                out.write(skeleton.substring(from, marker).getBytes(StandardCharsets.UTF_8));
+                blobs.writeBase64(streamed.get(index), out);
+                from = end + 1;
+            }
+            out.write(skeleton.substring(from).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Gets the path of the snapshot a key in {@link #blobHandles} belongs to.
+     *
+     * @param key the key, {@code uuid/id}
+     * @return the snapshot's path in the YAML tree
+     */
+    private static String snapshotPath(String key) {
+        int slash = key.indexOf('/');
+        return INVENTORY_PATH + key.substring(0, slash) + "." + SNAPSHOTS_KEY + "." + key.substring(slash + 1);
+    }
+
+    /**
+     * Parses the index in a data placeholder.
+     *
+     * @param digits the text between the placeholder's markers
+     * @return the index, or -1 if it is not one
+     */
+    private static int parseIndex(String digits) {
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Compacts the off-heap data once a large enough share of its memory is unused, and warns if
+     * it stays fragmented. Must be called with the write lock held.
+     */
+    private void compactBlobs() {
+        long reserved = blobs.getReservedBytes();
+        if (reserved < MIN_COMPACT_BYTES || blobs.getFragmentation() < MAX_FRAGMENTATION) {
+            fragmentationWarned = false;
+            return;
+        }
+
+        int released = blobs.compact(blobHandles);
+        if (released > 0) {
+            logger.info(String.format("Compacted off-heap snapshot data: %.1f MiB used in %.1f MiB of slabs, was %.1f MiB.",
+                    blobs.getUsedBytes() / 1_048_576.0, blobs.getReservedBytes() / 1_048_576.0, reserved / 1_048_576.0));
+        }
+        if (blobs.getFragmentation() >= MAX_FRAGMENTATION && !fragmentationWarned) {
+            fragmentationWarned = true;
+            logger.warning(String.format("Off-heap snapshot data is fragmented: %.1f MiB used in %.1f MiB of slabs.",
+                    blobs.getUsedBytes() / 1_048_576.0, blobs.getReservedBytes() / 1_048_576.0));
+        }
+    }
+
+    /**
+     * Writes the YAML file, including the off-heap data. Must be called with the write lock held.
+     *
+     * @throws IOException if the file could not be written
+     */
+    private void writeFile() throws IOException {
+        writeTo(configFile.toPath());
+    }
 }
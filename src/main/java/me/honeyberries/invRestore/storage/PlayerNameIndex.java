@@ -0,0 +1,201 @@
+package me.honeyberries.invRestore.storage;
+
+import me.honeyberries.invRestore.InvRestore;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Case-insensitive index of player names, used for tab completion and for finding offline players.
+ * <p>
+ * Names are kept lowercased in a sorted map, so completing a prefix is a range lookup costing the
+ * prefix plus the number of matches rather than a pass over every player. The index holds online
+ * players, maintained from join and quit events, and players with stored snapshots, loaded on startup
+ * and updated as snapshots are written or removed. Lookups never block; updates are rare and serialized.
+ */
+public class PlayerNameIndex implements Listener {
+
+    /** Singleton instance of the class. */
+    private static final PlayerNameIndex INSTANCE = new PlayerNameIndex();
+
+    /**
+     * A player in the index.
+     *
+     * @param name the player's name as last seen
+     * @param uuid the player's UUID
+     * @param online whether the player is online
+     * @param stored whether the player has data in storage
+     */
+    public record Entry(String name, UUID uuid, boolean online, boolean stored) {
+    }
+
+    /** Lowercased name to its player. */
+    private final ConcurrentSkipListMap<String, Entry> byName = new ConcurrentSkipListMap<>();
+    /** Player to the lowercased name they are indexed under, to follow name changes. */
+    private final Map<UUID, String> keys = new ConcurrentHashMap<>();
+
+    private PlayerNameIndex() {
+    }
+
+    /**
+     * Returns the singleton instance of this class.
+     *
+     * @return the singleton PlayerNameIndex instance
+     */
+    public static PlayerNameIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Completes a name prefix, case-insensitively, in alphabetical order.
+     * Offline players are only suggested once at least one character has been typed.
+     *
+     * @param prefix the typed prefix
+     * @param includeOffline {@code true} to include offline players with stored data
+     * @return the matching names, as the players last used them
+     */
+    public List<String> complete(String prefix, boolean includeOffline) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        boolean offline = includeOffline && !from.isEmpty();
+
+        List<String> names = new ArrayList<>();
+        for (Entry entry : byName.subMap(from, true, from + Character.MAX_VALUE, false).values()) {
+            if (entry.online() || offline) names.add(entry.name());
+        }
+        return names;
+    }
+
+    /**
+     * Finds a player by exact name, case-insensitively.
+     *
+     * @param name the player's name
+     * @return the player, or {@code null} if they are neither online nor stored
+     */
+    public @Nullable Entry lookup(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Resolves a name to a player without a blocking profile lookup: from the index first, then from
+     * the players the server has cached.
+     *
+     * @param name the player's name
+     * @return the player's UUID, or {@code null} if the server has never seen them
+     */
+    public @Nullable UUID resolve(String name) {
+        Entry entry = lookup(name);
+        if (entry != null) return entry.uuid();
+
+        OfflinePlayer cached = Bukkit.getOfflinePlayerIfCached(name);
+        return cached == null ? null : cached.getUniqueId();
+    }
+
+    /**
+     * Records that a player has data in storage.
+     *
+     * @param uuid the player's UUID
+     * @param name the player's name
+     */
+    public void markStored(UUID uuid, String name) {
+        update(uuid, name, null, true);
+    }
+
+    /**
+     * Records that a player no longer has data in storage. Online players stay in the index.
+     *
+     * @param uuid the player's UUID
+     */
+    public void unmarkStored(UUID uuid) {
+        update(uuid, null, null, false);
+    }
+
+    /**
+     * Loads the players with stored data, and the players already online, off the region threads.
+     * Players stored by older versions have no name in storage; theirs is looked up on the server.
+     *
+     * @param plugin the InvRestore plugin instance
+     */
+    public void rebuildAsync(InvRestore plugin) {
+        plugin.getServer().getOnlinePlayers().forEach(player -> update(player.getUniqueId(), player.getName(), true, null));
+
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            long start = System.nanoTime();
+            Map<UUID, String> stored = PlayerDataStorage.getInstance().getStoredPlayerNames();
+            stored.forEach((uuid, name) -> {
+                if (name == null) name = plugin.getServer().getOfflinePlayer(uuid).getName();
+                if (name != null) markStored(uuid, name);
+            });
+            plugin.getLogger().info("Indexed names of " + stored.size() + " stored player(s) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        });
+    }
+
+    /**
+     * Applies a change to a player's entry, moving it if their name changed.
+     *
+     * @param uuid the player's UUID
+     * @param name the player's current name, or {@code null} to keep the indexed one
+     * @param online the new online state, or {@code null} to keep it
+     * @param stored the new stored state, or {@code null} to keep it
+     */
+    private synchronized void update(UUID uuid, @Nullable String name, @Nullable Boolean online, @Nullable Boolean stored) {
+        String oldKey = keys.get(uuid);
+        Entry old = oldKey == null ? null : byName.get(oldKey);
+        if (name == null && old == null) return;
+
+        Entry entry = new Entry(name != null ? name : old.name(), uuid,
+                online != null ? online : old != null && old.online(),
+                stored != null ? stored : old != null && old.stored());
+        String key = entry.name().toLowerCase(Locale.ROOT);
+
+        if (oldKey != null && (!oldKey.equals(key) || (!entry.online() && !entry.stored()))) {
+            byName.remove(oldKey);
+            keys.remove(uuid);
+        }
+        if (!entry.online() && !entry.stored()) return;
+
+        // Names can change hands; an offline entry never displaces the online holder of a name
+        Entry holder = byName.get(key);
+        if (holder != null && !holder.uuid().equals(uuid)) {
+            if (holder.online() && !entry.online()) return;
+            keys.remove(holder.uuid());
+        }
+        byName.put(key, entry);
+        keys.put(uuid, key);
+    }
+
+    /**
+     * Adds joining players, under their current name.
+     *
+     * @param event The PlayerJoinEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        update(player.getUniqueId(), player.getName(), true, null);
+    }
+
+    /**
+     * Marks leaving players offline, dropping them unless they have stored data.
+     *
+     * @param event The PlayerQuitEvent.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        update(event.getPlayer().getUniqueId(), null, false, null);
+    }
+}
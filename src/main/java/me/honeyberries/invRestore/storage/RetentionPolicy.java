@@ -0,0 +1,92 @@
+package me.honeyberries.invRestore.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how long snapshots are kept before the background pruner removes them.
+ * A value of zero for any limit means that limit is disabled.
+ */
+public class RetentionPolicy {
+
+    /** Maximum age in milliseconds for each snapshot type. */
+    private final Map<SnapshotType, Long> maxAgeMillis = new EnumMap<>(SnapshotType.class);
+    /** Maximum number of snapshots of each type kept per player, newest first. */
+    private final int maxSnapshotsPerPlayer;
+    /** Players whose newest snapshot is older than this are removed entirely. */
+    private final long inactiveMillis;
+
+    private RetentionPolicy(int maxSnapshotsPerPlayer, long inactiveMillis) {
+        this.maxSnapshotsPerPlayer = maxSnapshotsPerPlayer;
+        this.inactiveMillis = inactiveMillis;
+    }
+
+    /**
+     * Reads a retention policy from the "retention" section of the plugin configuration.
+     *
+     * @param section the retention section, may be {@code null} to disable all limits
+     * @return the parsed policy
+     */
+    public static RetentionPolicy fromConfig(ConfigurationSection section) {
+        if (section == null) {
+            return new RetentionPolicy(0, 0);
+        }
+
+        RetentionPolicy policy = new RetentionPolicy(
+                Math.max(0, section.getInt("max-snapshots-per-player", 0)),
+                TimeUnit.DAYS.toMillis(Math.max(0, section.getLong("purge-inactive-days", 0))));
+
+        for (SnapshotType type : SnapshotType.values()) {
+            long days = section.getLong("max-age-days." + type.getKey(), 0);
+            policy.maxAgeMillis.put(type, TimeUnit.DAYS.toMillis(Math.max(0, days)));
+        }
+        return policy;
+    }
+
+    /**
+     * Checks whether a snapshot has outlived the maximum age for its type.
+     *
+     * @param type the snapshot type, or {@code null} if unknown
+     * @param timestamp when the snapshot was taken
+     * @param now the current time in milliseconds
+     * @return {@code true} if the snapshot should be removed
+     */
+    public boolean isExpired(SnapshotType type, long timestamp, long now) {
+        if (type == null) return false;
+        long maxAge = maxAgeMillis.getOrDefault(type, 0L);
+        return maxAge > 0 && now - timestamp > maxAge;
+    }
+
+    /**
+     * Checks whether a player counts as inactive based on their newest snapshot.
+     *
+     * @param newestTimestamp the time of the player's newest snapshot
+     * @param now the current time in milliseconds
+     * @return {@code true} if the player's data should be purged
+     */
+    public boolean isInactive(long newestTimestamp, long now) {
+        return inactiveMillis > 0 && now - newestTimestamp > inactiveMillis;
+    }
+
+    /**
+     * Gets the maximum number of snapshots of each type kept per player.
+     *
+     * @return the limit, or zero if unlimited
+     */
+    public int getMaxSnapshotsPerPlayer() {
+        return maxSnapshotsPerPlayer;
+    }
+
+    /**
+     * Checks whether any retention limit is enabled at all.
+     *
+     * @return {@code true} if pruning could remove anything
+     */
+    public boolean isEnabled() {
+        return maxSnapshotsPerPlayer > 0 || inactiveMillis > 0
+                || maxAgeMillis.values().stream().anyMatch(age -> age > 0);
+    }
+}
@@ -0,0 +1,456 @@
+package me.honeyberries.invRestore.storage;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.InvRestore;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares player data between servers through a common directory, for networks where several
+ * backend servers sit behind a proxy.
+ * <p>
+ * Each player is stored as one versioned document, {@code players/<uuid>.yml}, holding their
+ * snapshots, pending restore and quarantined snapshots. The local {@code inventories.yml} of every
+ * server acts as a read cache: reads never touch the shared directory. Local writes are applied to
+ * the cache right away and queued as path/value operations, which are replayed onto the shared
+ * document under a lock on {@code store.lock}, bumping its version. If the version found does not
+ * match the one this server last saw, another server changed the player in between and the cache is
+ * refreshed from the merged document.
+ * <p>
+ * Every write appends {@code <node> <uuid> <version>} to {@code changes.log}. Each server tails that
+ * log and reloads the players other servers changed. The log is truncated when it grows too large;
+ * its first line carries an epoch, and a server that sees a new epoch rescans every document.
+ */
+public class SharedStore {
+
+    /** Top-level sections of the local file that hold per-player data, keyed by UUID below them. */
+    static final List<String> ROOTS = List.of("inventories", "pending-restores", "quarantine");
+
+    /** The change log is truncated once it grows past this size. */
+    private static final long MAX_LOG_SIZE = 8L << 20;
+
+    /**
+     * A queued change to a player's document.
+     *
+     * @param path the path within the document
+     * @param value the new value, or {@code null} to remove the path
+     */
+    record Op(String path, Object value) {
+    }
+
+    private final InvRestore plugin;
+    private final Logger logger;
+    private final PlayerDataStorage database;
+
+    private final Path playersDir;
+    private final Path lockFile;
+    private final Path changesLog;
+    /** Identifies this server in the change log. */
+    private final String nodeId;
+    private final long pollMillis;
+
+    /** Operations not yet written to the shared directory, per player. */
+    private final Map<UUID, List<Op>> queued = new ConcurrentHashMap<>();
+    /** The document version this server last saw, per player. */
+    private final Map<UUID, Long> versions = new ConcurrentHashMap<>();
+    /** Whether a flush is already scheduled. */
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    /** Keeps flushes and polls of this server from overlapping, file locks are per process. */
+    private final ReentrantLock ioLock = new ReentrantLock();
+
+    /** The epoch of the change log when it was last read. */
+    private String logEpoch = "";
+    /** How far the change log has been read. */
+    private long logOffset = 0;
+    private ScheduledTask pollTask;
+
+    /**
+     * Creates a shared store from the "storage.shared" section of the plugin configuration.
+     *
+     * @param plugin the InvRestore plugin instance
+     * @param database the local storage used as read cache
+     * @param section the shared storage configuration section
+     */
+    SharedStore(InvRestore plugin, PlayerDataStorage database, ConfigurationSection section) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.database = database;
+
+        Path directory = Path.of(section.getString("directory", ""));
+        this.playersDir = directory.resolve("players");
+        this.lockFile = directory.resolve("store.lock");
+        this.changesLog = directory.resolve("changes.log");
+
+        String configuredNode = section.getString("node-id", "");
+        this.nodeId = configuredNode.isBlank() ? UUID.randomUUID().toString() : configuredNode.replace(' ', '_');
+        this.pollMillis = Math.max(100, section.getLong("poll-interval-millis", 1000));
+    }
+
+    /**
+     * Loads every shared document into the cache, publishes players only this server knows about,
+     * and starts following the change log. Runs synchronously, during plugin enable.
+     *
+     * @throws IOException if the shared directory cannot be used
+     */
+    void start() throws IOException {
+        Files.createDirectories(playersDir);
+
+        ioLock.lock();
+        try {
+            // Start following the log from its current end, the rescan below covers everything before it
+            logEpoch = readEpoch();
+            logOffset = Files.exists(changesLog) ? Files.size(changesLog) : 0;
+
+            // Players that were never shared yet are published from the local file
+            int published = 0;
+            for (UUID uuid : database.getLocalPlayerIds()) {
+                if (Files.exists(playerFile(uuid))) continue;
+                database.getPlayerValues(uuid).forEach((path, value) -> record(uuid, path, value));
+                published++;
+            }
+
+            int loaded = rescan();
+            logger.info("Using shared storage at " + playersDir.getParent() + " as node " + nodeId + ": loaded "
+                    + loaded + " player(s), publishing " + published + " local player(s).");
+        } finally {
+            ioLock.unlock();
+        }
+
+        pollTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, t -> poll(),
+                pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * Stops following the change log and writes any queued operations. Runs synchronously.
+     */
+    void stop() {
+        if (pollTask != null) {
+            pollTask.cancel();
+            pollTask = null;
+        }
+        flush();
+    }
+
+    /**
+     * Queues a change made to the local cache. The path is a full path of the local file,
+     * such as {@code inventories.<uuid>.snapshots.<id>.data}; paths outside a player are ignored.
+     *
+     * @param path the path that was set
+     * @param value the value it was set to, or {@code null} if it was removed
+     */
+    void record(String path, Object value) {
+        String[] parts = path.split("\\.", 3);
+        if (parts.length < 2 || !ROOTS.contains(parts[0])) return;
+
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(parts[1]);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        record(uuid, parts.length == 3 ? parts[0] + "." + parts[2] : parts[0], value);
+    }
+
+    /**
+     * Queues a change to a player's document and schedules a flush.
+     *
+     * @param uuid the player
+     * @param documentPath the path within the player's document
+     * @param value the new value, or {@code null} to remove the path
+     */
+    private void record(UUID uuid, String documentPath, Object value) {
+        queued.compute(uuid, (k, ops) -> {
+            if (ops == null) ops = new ArrayList<>();
+            ops.add(new Op(documentPath, value));
+            return ops;
+        });
+
+        if (flushQueued.compareAndSet(false, true)) {
+            plugin.getServer().getAsyncScheduler().runNow(plugin, t -> {
+                flushQueued.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Gets the operations still queued for a player, so a refreshed cache can re-apply them.
+     * The returned list is a copy.
+     *
+     * @param uuid the player
+     * @return the queued operations, oldest first
+     */
+    List<Op> getQueued(UUID uuid) {
+        List<Op> copy = new ArrayList<>();
+        queued.computeIfPresent(uuid, (k, ops) -> {
+            copy.addAll(ops);
+            return ops;
+        });
+        return copy;
+    }
+
+    /**
+     * Writes every queued operation to the shared directory, holding the store lock for the batch.
+     */
+    private void flush() {
+        ioLock.lock();
+        try {
+            if (queued.isEmpty()) return;
+
+            Map<UUID, List<Op>> batch = new LinkedHashMap<>();
+            for (UUID uuid : new ArrayList<>(queued.keySet())) {
+                List<Op> ops = queued.remove(uuid);
+                if (ops != null) batch.put(uuid, ops);
+            }
+
+            Map<UUID, YamlConfiguration> conflicts = new LinkedHashMap<>();
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                StringBuilder notices = new StringBuilder();
+                for (Map.Entry<UUID, List<Op>> entry : batch.entrySet()) {
+                    UUID uuid = entry.getKey();
+                    // An unreadable document fails the batch, its operations are queued again below
+                    YamlConfiguration document = load(playerFile(uuid));
+                    long version = document.getLong("version", 0);
+
+                    for (Op op : entry.getValue()) {
+                        document.set(op.path(), op.value());
+                    }
+                    document.set("version", version + 1);
+                    write(playerFile(uuid), document);
+
+                    // Someone else wrote since we last saw this player: the cache misses their changes
+                    Long known = versions.put(uuid, version + 1);
+                    if (known == null ? version != 0 : known != version) {
+                        conflicts.put(uuid, document);
+                    }
+                    notices.append(nodeId).append(' ').append(uuid).append(' ').append(version + 1).append('\n');
+                }
+                appendChanges(notices.toString());
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Could not write to shared storage, will retry", e);
+                batch.forEach((uuid, ops) -> queued.merge(uuid, ops, (newer, older) -> {
+                    older.addAll(newer);
+                    return older;
+                }));
+                scheduleRetry();
+                return;
+            }
+
+            conflicts.forEach((uuid, document) -> database.replacePlayer(uuid, document));
+            if (!conflicts.isEmpty()) {
+                logger.fine("Merged concurrent changes of " + conflicts.size() + " player(s) from shared storage.");
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Schedules another flush after a poll interval, unless one is already scheduled.
+     * Used when a flush failed, so the queued operations are written without waiting for a new change.
+     */
+    private void scheduleRetry() {
+        if (pollTask == null || !flushQueued.compareAndSet(false, true)) return;
+        plugin.getServer().getAsyncScheduler().runDelayed(plugin, t -> {
+            flushQueued.set(false);
+            flush();
+        }, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads new entries of the change log and reloads the players other servers changed.
+     */
+    private void poll() {
+        ioLock.lock();
+        try {
+            if (!Files.exists(changesLog)) return;
+
+            String epoch = readEpoch();
+            long size = Files.size(changesLog);
+            if (!epoch.equals(logEpoch) || size < logOffset) {
+                // The log was truncated, changes may have been missed
+                logEpoch = epoch;
+                logOffset = size;
+                rescan();
+                return;
+            }
+            if (size == logOffset) return;
+
+            byte[] bytes = new byte[(int) Math.min(size - logOffset, Integer.MAX_VALUE - 8)];
+            try (RandomAccessFile file = new RandomAccessFile(changesLog.toFile(), "r")) {
+                file.seek(logOffset);
+                file.readFully(bytes);
+            }
+
+            // Only consume complete lines, a writer may be halfway through one
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') end--;
+            logOffset += end;
+
+            Map<UUID, Long> changed = new HashMap<>();
+            for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+                String[] parts = line.split(" ");
+                if (parts.length != 3 || parts[0].equals(nodeId)) continue;
+                try {
+                    changed.merge(UUID.fromString(parts[1]), Long.parseLong(parts[2]), Math::max);
+                } catch (IllegalArgumentException e) {
+                    // Epoch line or garbage, nothing to reload
+                }
+            }
+
+            changed.forEach((uuid, version) -> {
+                if (versions.getOrDefault(uuid, -1L) < version) reload(uuid);
+            });
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read shared storage changes", e);
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Reloads every shared document newer than what this server has seen.
+     *
+     * @return the number of players reloaded
+     * @throws IOException if the players directory cannot be listed
+     */
+    private int rescan() throws IOException {
+        int reloaded = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(playersDir, "*.yml")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    if (reload(UUID.fromString(name.substring(0, name.length() - ".yml".length())))) reloaded++;
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Ignoring unexpected file in shared storage: " + name);
+                }
+            }
+        }
+        return reloaded;
+    }
+
+    /**
+     * Loads a player's document into the cache if it is newer than the version this server has seen.
+     *
+     * @param uuid the player
+     * @return {@code true} if the cache was refreshed
+     */
+    private boolean reload(UUID uuid) {
+        YamlConfiguration document;
+        try {
+            document = load(playerFile(uuid));
+        } catch (IOException e) {
+            // Keep the cache as it is, the next change notice or rescan retries
+            logger.log(Level.SEVERE, "Could not read shared player data of " + uuid, e);
+            return false;
+        }
+        long version = document.getLong("version", 0);
+        if (versions.getOrDefault(uuid, -1L) >= version) return false;
+
+        versions.put(uuid, version);
+        database.replacePlayer(uuid, document);
+        return true;
+    }
+
+    /**
+     * Reads the epoch on the first line of the change log.
+     *
+     * @return the epoch, or an empty string if there is no log yet
+     * @throws IOException if the log cannot be read
+     */
+    private String readEpoch() throws IOException {
+        if (!Files.exists(changesLog)) return "";
+        try (RandomAccessFile file = new RandomAccessFile(changesLog.toFile(), "r")) {
+            String line = file.readLine();
+            return line != null && line.startsWith("epoch ") ? line : "";
+        }
+    }
+
+    /**
+     * Appends change notices to the log, truncating it first if it has grown too large.
+     * Must be called with the store lock held.
+     *
+     * @param notices the lines to append
+     * @throws IOException if the log cannot be written
+     */
+    private void appendChanges(String notices) throws IOException {
+        try (FileChannel log = FileChannel.open(changesLog, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (log.size() == 0 || log.size() > MAX_LOG_SIZE) {
+                log.truncate(0);
+                log.write(ByteBuffer.wrap(("epoch " + UUID.randomUUID() + "\n").getBytes(StandardCharsets.UTF_8)), 0);
+            }
+            log.write(ByteBuffer.wrap(notices.getBytes(StandardCharsets.UTF_8)), log.size());
+            log.force(false);
+        }
+    }
+
+    /**
+     * Gets the document file of a player.
+     *
+     * @param uuid the player
+     * @return the document path
+     */
+    private Path playerFile(UUID uuid) {
+        return playersDir.resolve(uuid + ".yml");
+    }
+
+    /**
+     * Reads a player's document. Documents are replaced atomically, so no lock is needed.
+     * A document that exists but cannot be read is an error rather than an empty document, so a
+     * flush never replaces what other servers wrote with only its own changes.
+     *
+     * @param file the document path
+     * @return the document, empty if it does not exist yet
+     * @throws IOException if the document cannot be read or parsed
+     */
+    private YamlConfiguration load(Path file) throws IOException {
+        YamlConfiguration document = new YamlConfiguration();
+        if (!Files.exists(file)) return document;
+        try {
+            document.loadFromString(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Could not parse shared player data " + file.getFileName(), e);
+        }
+        return document;
+    }
+
+    /**
+     * Writes a player's document to a temporary file and moves it into place.
+     *
+     * @param file the document path
+     * @param document the document
+     * @throws IOException if writing fails
+     */
+    private void write(Path file, YamlConfiguration document) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + "." + nodeId + ".tmp");
+        Files.writeString(temp, document.saveToString(), StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
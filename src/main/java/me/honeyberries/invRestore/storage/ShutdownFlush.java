@@ -0,0 +1,172 @@
+package me.honeyberries.invRestore.storage;
+
+import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.util.InventorySerializer;
+import me.honeyberries.invRestore.util.PlayerData;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes everything still in memory when the plugin is disabled, within a fixed deadline.
+ * <p>
+ * Snapshots that were captured but not written yet are taken over from the schedulers, which stop
+ * running at shutdown, and from the {@link DeathDebouncer}, together with a {@link SnapshotType#LOGOUT} snapshot of every online player:
+ * quit events only fire once plugins are already disabled. Captures are encoded in parallel during
+ * the first half of the deadline, then written to the YAML file in one pass. The file is saved
+ * atomically while shared storage flushes its queue alongside. Anything that misses the deadline is
+ * abandoned and logged by name, and the previous file stays intact, so the watchdog never catches
+ * the server halfway through a write.
+ */
+public class ShutdownFlush {
+
+    private final InvRestore plugin;
+    private final Logger logger;
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** Whether online players get a snapshot at shutdown. */
+    private final boolean snapshotOnlinePlayers;
+    /** Longest time the whole flush may take. */
+    private final long deadlineMillis;
+
+    /**
+     * Creates a flush from the "shutdown" section of the plugin configuration.
+     *
+     * @param plugin the InvRestore plugin instance
+     * @param section the shutdown configuration section, may be {@code null}
+     */
+    public ShutdownFlush(InvRestore plugin, ConfigurationSection section) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.snapshotOnlinePlayers = section == null || section.getBoolean("snapshot-online-players", true);
+        this.deadlineMillis = Math.max(1000, section == null ? 10_000 : section.getLong("deadline-millis", 10_000));
+    }
+
+    /**
+     * Runs the flush, returning once everything is written or the deadline has passed.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        long encodeDeadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMillis / 2);
+
+        List<PlayerDataStorage.PendingWrite> writes = database.drainPendingWrites();
+        if (plugin.getDeathDebouncer() != null) {
+            // Deaths still held back are the latest ones and must not be lost
+            writes.addAll(plugin.getDeathDebouncer().drain());
+        }
+        int pending = writes.size();
+        if (snapshotOnlinePlayers) {
+            long now = System.currentTimeMillis();
+            for (Player player : plugin.getServer().getOnlinePlayers()) {
+                try {
+                    writes.add(new PlayerDataStorage.PendingWrite(player.getUniqueId(), player.getName(),
+                            SnapshotType.LOGOUT, null, now, PlayerData.Capture.of(player, null)));
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Could not capture " + player.getName() + " on shutdown", e);
+                }
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "InvRestore-Shutdown-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<String> unflushed = new ArrayList<>();
+        try {
+            Map<PlayerDataStorage.PendingWrite, Future<String>> encoding = new LinkedHashMap<>();
+            for (PlayerDataStorage.PendingWrite write : writes) {
+                encoding.put(write, pool.submit(() -> InventorySerializer.serialize(PlayerData.encode(write.capture()))));
+            }
+
+            Map<PlayerDataStorage.PendingWrite, String> encoded = new LinkedHashMap<>();
+            for (Map.Entry<PlayerDataStorage.PendingWrite, Future<String>> entry : encoding.entrySet()) {
+                PlayerDataStorage.PendingWrite write = entry.getKey();
+                String problem = null;
+                try {
+                    String data = entry.getValue().get(Math.max(0, encodeDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (data != null) {
+                        encoded.put(write, data);
+                    } else {
+                        problem = "not serializable";
+                    }
+                } catch (TimeoutException e) {
+                    entry.getValue().cancel(true);
+                    problem = "timed out";
+                } catch (ExecutionException e) {
+                    problem = String.valueOf(e.getCause());
+                }
+                if (problem != null) {
+                    unflushed.add(write.name() + " (" + write.type().getKey() + ", " + problem + ")");
+                }
+            }
+            database.writeEncoded(encoded);
+
+            // The local file and shared storage are independent, write both at once
+            Future<?> local = pool.submit(() -> {
+                database.saveAtomically();
+                return null;
+            });
+            Future<?> shared = pool.submit(database::stopSharedStore);
+
+            if (!await(local, deadline, "inventories.yml")) {
+                unflushed.add("inventories.yml (previous version kept, " + encoded.size() + " new snapshot(s) lost)");
+            }
+            if (!await(shared, deadline, "shared storage")) {
+                unflushed.add("shared storage (queued changes remain in the local inventories.yml)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unflushed.add("interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (unflushed.isEmpty()) {
+            logger.info("Saved all inventory data in " + millis + " ms (" + pending + " pending, "
+                    + (writes.size() - pending) + " online player snapshot(s)).");
+        } else {
+            logger.severe("Shutdown flush left " + unflushed.size() + " item(s) unwritten after " + millis + " ms: "
+                    + String.join(", ", unflushed));
+        }
+    }
+
+    /**
+     * Waits for a write until the deadline.
+     *
+     * @param future the write
+     * @param deadline the deadline, in {@link System#nanoTime()} terms
+     * @param what a name for the write, for log messages
+     * @return {@code true} if it completed successfully
+     * @throws InterruptedException if the shutdown thread was interrupted
+     */
+    private boolean await(Future<?> future, long deadline, String what) throws InterruptedException {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return false;
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Could not write " + what + " on shutdown", e.getCause());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package me.honeyberries.invRestore.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes backup archives of the snapshot store.
+ * <p>
+ * An archive is a header (magic {@code IRXA}, version, creation time and player count) followed by
+ * chunks of about {@link #CHUNK_SIZE} bytes of player entries. An entry holds a player's name, their
+ * snapshots, their named saves and their queued restore; a player whose history does not fit a chunk
+ * is split over several entries, the last of which carries the saves and the queued restore so they
+ * are read after the snapshots they point at. Each snapshot keeps the CRC32C stored with it, so an
+ * import can tell a snapshot that was already corrupt in the store. Each chunk carries its entry count,
+ * raw and stored length and a CRC32C of the stored bytes, and is deflated on its own, so chunks are
+ * compressed in parallel when writing and verified and decoded one at a time when reading. A chunk with
+ * an entry count of zero ends the archive.
+ * <p>
+ * Version 2 archives had no per-snapshot checksum, and version 1 archives held bare snapshot records,
+ * one per entry; both are still read, the latter as entries without a name, saves or queued restore.
+ */
+public final class SnapshotArchive {
+
+    /** Magic bytes at the start of every archive. */
+    private static final byte[] MAGIC = {'I', 'R', 'X', 'A'};
+    /** Current format version. */
+    private static final int VERSION = 3;
+    /** The version that held bare snapshot records. */
+    private static final int VERSION_RECORDS = 1;
+    /** The last version without a checksum per snapshot. */
+    private static final int VERSION_NO_CHECKSUMS = 2;
+    /** Target raw size of a chunk. */
+    private static final int CHUNK_SIZE = 1 << 20;
+    /** Largest chunk accepted when reading, to keep a corrupt length from exhausting memory. */
+    private static final int MAX_CHUNK_SIZE = 64 << 20;
+
+    /**
+     * The outcome of writing an archive.
+     *
+     * @param players the number of players written
+     * @param records the number of snapshots written
+     * @param chunks the number of chunks written
+     * @param bytes the size of the archive
+     */
+    public record ExportResult(int players, int records, int chunks, long bytes) {
+    }
+
+    /**
+     * A player's part of the store, or a piece of it.
+     *
+     * @param uuid the player's UUID
+     * @param name the player's last known name, or {@code null} if unknown
+     * @param snapshots the player's snapshots
+     * @param saves the snapshot id of each of the player's save names
+     * @param pending the player's queued restore, or {@code null} if none is queued
+     */
+    public record PlayerEntry(UUID uuid, @Nullable String name, List<SnapshotRecord> snapshots, Map<String, String> saves,
+                              @Nullable PendingRestore pending) {
+    }
+
+    /**
+     * A restore queued for the next time a player joins.
+     *
+     * @param snapshotId the id of the snapshot to restore
+     * @param requestedBy the name of whoever queued the restore
+     */
+    public record PendingRestore(String snapshotId, String requestedBy) {
+    }
+
+    /**
+     * Receives the player entries of each chunk while an archive is read.
+     */
+    @FunctionalInterface
+    public interface ChunkHandler {
+        /**
+         * Handles the entries of one chunk. The list is not kept after the call returns.
+         *
+         * @param entries the player entries in the chunk
+         */
+        void accept(List<PlayerEntry> entries);
+    }
+
+    private SnapshotArchive() {
+    }
+
+    /**
+     * Writes the store to an archive, reading one player at a time so only the chunks in flight are held
+     * in memory. Chunks are compressed on a dedicated thread pool and written in order, with at most two
+     * chunks per thread in flight. The archive is written to a temporary file and moved into place once
+     * complete, so a failed export never leaves a truncated archive behind.
+     *
+     * @param players the players to write
+     * @param reader reads a player's entry, typically {@link PlayerDataStorage#exportPlayer(UUID)}; a
+     *               {@code null} entry, for a player removed since the list was taken, is skipped
+     * @param target the archive file
+     * @return what was written
+     * @throws IOException if writing fails
+     */
+    public static ExportResult write(List<UUID> players, Function<UUID, PlayerEntry> reader, Path target) throws IOException {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "InvRestore-Archive-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        int written = 0;
+        int records = 0;
+        int chunks = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(players.size());
+
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            List<PlayerEntry> chunk = new ArrayList<>();
+            long size = 0;
+            for (UUID uuid : players) {
+                PlayerEntry entry = reader.apply(uuid);
+                if (entry == null) continue;
+                written++;
+                records += entry.snapshots().size();
+
+                // Group entries into chunks by their approximate encoded size, splitting large histories
+                List<SnapshotRecord> piece = new ArrayList<>();
+                for (SnapshotRecord record : entry.snapshots()) {
+                    piece.add(record);
+                    size += record.data().length() + 64L;
+                    if (size >= CHUNK_SIZE) {
+                        chunk.add(new PlayerEntry(uuid, entry.name(), piece, Map.of(), null));
+                        submit(executor, inFlight, chunk);
+                        chunk = new ArrayList<>();
+                        piece = new ArrayList<>();
+                        size = 0;
+                    }
+                }
+                chunk.add(new PlayerEntry(uuid, entry.name(), piece, entry.saves(), entry.pending()));
+                size += 64L + 64L * entry.saves().size();
+
+                if (size >= CHUNK_SIZE) {
+                    submit(executor, inFlight, chunk);
+                    chunk = new ArrayList<>();
+                    size = 0;
+                }
+                while (inFlight.size() >= threads * 2) {
+                    out.write(await(inFlight.poll()));
+                    chunks++;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(executor, inFlight, chunk);
+            }
+            while (!inFlight.isEmpty()) {
+                out.write(await(inFlight.poll()));
+                chunks++;
+            }
+
+            // End marker
+            out.writeInt(0);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new ExportResult(written, records, chunks, Files.size(target));
+    }
+
+    /**
+     * Hands a chunk to the executor to be encoded.
+     *
+     * @param executor the archive thread pool
+     * @param inFlight the chunks being encoded, in archive order
+     * @param chunk the entries of the chunk
+     */
+    private static void submit(ExecutorService executor, Deque<Future<byte[]>> inFlight, List<PlayerEntry> chunk) {
+        inFlight.add(executor.submit(() -> encodeChunk(chunk)));
+    }
+
+    /**
+     * Reads an archive chunk by chunk, verifying each chunk's checksum before decoding it.
+     * Only one chunk is held in memory at a time.
+     *
+     * @param source the archive file
+     * @param handler receives the player entries of each chunk, in order
+     * @return the number of snapshots read
+     * @throws IOException if the archive cannot be read, is not an archive or a chunk is corrupt
+     */
+    public static int read(Path source, ChunkHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) throw new IOException("Not an InvRestore archive");
+            }
+            int version = in.readUnsignedByte();
+            if (version > VERSION) {
+                throw new IOException("Unsupported archive version " + version);
+            }
+            in.readLong(); // creation time
+            in.readInt(); // player count, or record count in version 1
+
+            int total = 0;
+            for (int chunk = 0; ; chunk++) {
+                int count = in.readInt();
+                if (count == 0) return total;
+
+                int rawLength = in.readInt();
+                int storedLength = in.readInt();
+                int checksum = in.readInt();
+                if (count < 0 || rawLength < 0 || storedLength < 0 || rawLength > MAX_CHUNK_SIZE || storedLength > MAX_CHUNK_SIZE) {
+                    throw new IOException("Chunk " + chunk + " has an invalid header");
+                }
+
+                byte[] stored = new byte[storedLength];
+                in.readFully(stored);
+                CRC32C crc = new CRC32C();
+                crc.update(stored);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Chunk " + chunk + " failed its checksum");
+                }
+
+                byte[] raw = inflate(stored, rawLength);
+                boolean checksums = version > VERSION_NO_CHECKSUMS;
+                List<PlayerEntry> entries = version == VERSION_RECORDS ? decodeRecords(raw, count) : decodeChunk(raw, count, checksums);
+                handler.accept(entries);
+                total += entries.stream().mapToInt(entry -> entry.snapshots().size()).sum();
+            }
+        } catch (EOFException e) {
+            throw new IOException("Archive is truncated", e);
+        }
+    }
+
+    /**
+     * Encodes and compresses one chunk, including its header.
+     *
+     * @param entries the player entries in the chunk
+     * @return the chunk as written to the archive
+     * @throws IOException if encoding fails
+     */
+    private static byte[] encodeChunk(List<PlayerEntry> entries) throws IOException {
+        ByteArrayOutputStream rawBytes = new ByteArrayOutputStream(CHUNK_SIZE + CHUNK_SIZE / 4);
+        try (DataOutputStream raw = new DataOutputStream(rawBytes)) {
+            for (PlayerEntry entry : entries) {
+                raw.writeLong(entry.uuid().getMostSignificantBits());
+                raw.writeLong(entry.uuid().getLeastSignificantBits());
+                raw.writeUTF(entry.name() == null ? "" : entry.name());
+
+                raw.writeInt(entry.snapshots().size());
+                for (SnapshotRecord record : entry.snapshots()) {
+                    raw.writeUTF(record.id());
+                    raw.writeUTF(record.type() == null ? "" : record.type().getKey());
+                    raw.writeLong(record.time());
+                    raw.writeInt(record.itemCount());
+                    raw.writeLong(record.checksum());
+                    // Stored as-is, so even a record that no longer decodes is backed up byte for byte
+                    byte[] data = record.data().getBytes(StandardCharsets.ISO_8859_1);
+                    raw.writeInt(data.length);
+                    raw.write(data);
+                }
+
+                raw.writeInt(entry.saves().size());
+                for (Map.Entry<String, String> save : entry.saves().entrySet()) {
+                    raw.writeUTF(save.getKey());
+                    raw.writeUTF(save.getValue());
+                }
+
+                raw.writeBoolean(entry.pending() != null);
+                if (entry.pending() != null) {
+                    raw.writeUTF(entry.pending().snapshotId());
+                    raw.writeUTF(entry.pending().requestedBy());
+                }
+            }
+        }
+
+        byte[] stored = deflate(rawBytes.toByteArray());
+        CRC32C crc = new CRC32C();
+        crc.update(stored);
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(stored.length + 16);
+        try (DataOutputStream out = new DataOutputStream(chunk)) {
+            out.writeInt(entries.size());
+            out.writeInt(rawBytes.size());
+            out.writeInt(stored.length);
+            out.writeInt((int) crc.getValue());
+            out.write(stored);
+        }
+        return chunk.toByteArray();
+    }
+
+    /**
+     * Decodes the player entries of an inflated chunk.
+     *
+     * @param raw the inflated chunk body
+     * @param count the number of entries in the chunk
+     * @param checksums whether snapshots carry their stored checksum
+     * @return the entries
+     * @throws IOException if the chunk is malformed
+     */
+    private static List<PlayerEntry> decodeChunk(byte[] raw, int count, boolean checksums) throws IOException {
+        List<PlayerEntry> entries = new ArrayList<>(count);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            for (int i = 0; i < count; i++) {
+                UUID owner = new UUID(in.readLong(), in.readLong());
+                String name = in.readUTF();
+
+                int snapshotCount = in.readInt();
+                if (snapshotCount < 0) throw new IOException("Entry " + i + " has an invalid snapshot count");
+                List<SnapshotRecord> snapshots = new ArrayList<>(Math.min(snapshotCount, 1024));
+                for (int j = 0; j < snapshotCount; j++) {
+                    snapshots.add(readRecord(in, owner, in.readUTF(), checksums));
+                }
+
+                int saveCount = in.readInt();
+                Map<String, String> saves = new TreeMap<>();
+                for (int j = 0; j < saveCount; j++) {
+                    saves.put(in.readUTF(), in.readUTF());
+                }
+
+                PendingRestore pending = in.readBoolean() ? new PendingRestore(in.readUTF(), in.readUTF()) : null;
+                entries.add(new PlayerEntry(owner, name.isEmpty() ? null : name, snapshots, saves, pending));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Decodes the records of an inflated version 1 chunk, as one entry per owner.
+     *
+     * @param raw the inflated chunk body
+     * @param count the number of records in the chunk
+     * @return the entries
+     * @throws IOException if the chunk is malformed
+     */
+    private static List<PlayerEntry> decodeRecords(byte[] raw, int count) throws IOException {
+        Map<UUID, List<SnapshotRecord>> byOwner = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            for (int i = 0; i < count; i++) {
+                UUID owner = new UUID(in.readLong(), in.readLong());
+                byOwner.computeIfAbsent(owner, o -> new ArrayList<>()).add(readRecord(in, owner, in.readUTF(), false));
+            }
+        }
+
+        List<PlayerEntry> entries = new ArrayList<>(byOwner.size());
+        byOwner.forEach((owner, snapshots) -> entries.add(new PlayerEntry(owner, null, snapshots, Map.of(), null)));
+        return entries;
+    }
+
+    /**
+     * Reads the rest of a snapshot record, after its id.
+     *
+     * @param in the chunk body
+     * @param owner the UUID of the player
+     * @param id the id of the snapshot
+     * @param checksum whether the record carries its stored checksum; without one it is -1
+     * @return the record
+     * @throws IOException if the record is malformed
+     */
+    private static SnapshotRecord readRecord(DataInputStream in, UUID owner, String id, boolean checksum) throws IOException {
+        SnapshotType type = SnapshotType.fromKey(in.readUTF());
+        long time = in.readLong();
+        int itemCount = in.readInt();
+        long crc = checksum ? in.readLong() : -1;
+        int length = in.readInt();
+        if (length < 0 || length > MAX_CHUNK_SIZE) throw new IOException("Snapshot " + id + " has an invalid length");
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new SnapshotRecord(owner, id, type, time, itemCount, new String(data, StandardCharsets.ISO_8859_1), crc);
+    }
+
+    /**
+     * Deflates a chunk body. Snapshot data is already compressed apart from its Base64 encoding,
+     * so the fastest level is used.
+     *
+     * @param raw the body to compress
+     * @return the compressed body
+     */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[1 << 16];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Inflates a chunk body.
+     *
+     * @param stored the compressed body
+     * @param rawLength the expected size of the inflated body
+     * @return the inflated body
+     * @throws IOException if the body is corrupt
+     */
+    private static byte[] inflate(byte[] stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, read, rawLength - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                read += n;
+            }
+            if (read != rawLength) {
+                throw new IOException("Chunk is truncated");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Chunk is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Waits for a chunk to finish encoding.
+     *
+     * @param future the pending chunk
+     * @return the encoded chunk
+     * @throws IOException if encoding failed or the export was interrupted
+     */
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export was interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("Could not encode chunk", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package me.honeyberries.invRestore.storage;
+
+import java.util.UUID;
+
+/**
+ * A stored snapshot's metadata as read from the YAML file, without its data. Listing snapshots this
+ * way never touches their data, which is loaded by id only when it is needed.
+ *
+ * @param owner the UUID of the player the snapshot belongs to
+ * @param id the id of the snapshot in the player's history
+ * @param type the kind of snapshot, or {@code null} if the stored type is unknown
+ * @param time when the snapshot was taken, in milliseconds
+ * @param itemCount the number of non-empty slots, or -1 if unknown
+ * @param checksum the CRC32C of the data stored alongside it, or -1 if it was written without one
+ */
+public record SnapshotInfo(UUID owner, String id, SnapshotType type, long time, int itemCount, long checksum) {
+}
@@ -0,0 +1,93 @@
+package me.honeyberries.invRestore.storage;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.InvRestore;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Background job that enforces the configured {@link RetentionPolicy}.
+ * Each run only visits a bounded slice of players, walking through the whole store over several runs,
+ * so pruning a large store never holds the storage lock for long.
+ */
+public class SnapshotPruner {
+
+    private final InvRestore plugin;
+    private final Logger logger;
+    private final PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+    /** The retention limits being enforced. */
+    private final RetentionPolicy policy;
+    /** How many players are visited per run. */
+    private final int playersPerRun;
+    /** Seconds between runs. */
+    private final long intervalSeconds;
+
+    /** Players still to visit in the current pass over the store. */
+    private List<String> pass = List.of();
+    /** Index of the next player to visit in {@link #pass}. */
+    private int cursor = 0;
+    /** Snapshots removed so far in the current pass. */
+    private int removedThisPass = 0;
+
+    private ScheduledTask task;
+
+    /**
+     * Creates a pruner from the "retention" section of the plugin configuration.
+     *
+     * @param plugin the InvRestore plugin instance
+     * @param section the retention configuration section
+     */
+    public SnapshotPruner(InvRestore plugin, ConfigurationSection section) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.policy = RetentionPolicy.fromConfig(section);
+        this.playersPerRun = Math.max(1, section == null ? 200 : section.getInt("prune.players-per-run", 200));
+        this.intervalSeconds = Math.max(1, section == null ? 60 : section.getLong("prune.interval-seconds", 60));
+    }
+
+    /**
+     * Starts the pruning job on the async scheduler. Does nothing if no retention limit is enabled.
+     */
+    public void start() {
+        if (!policy.isEnabled()) {
+            logger.info("Snapshot retention is disabled, snapshots will be kept forever.");
+            return;
+        }
+
+        task = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, t -> runSlice(),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the pruning job if it is running.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Prunes the next slice of players, starting a new pass over the store once the previous one is done.
+     */
+    private void runSlice() {
+        if (cursor >= pass.size()) {
+            if (removedThisPass > 0) {
+                logger.info("Retention pass finished, removed " + removedThisPass + " snapshot(s).");
+            }
+            pass = database.getStoredPlayerIds();
+            cursor = 0;
+            removedThisPass = 0;
+            if (pass.isEmpty()) return;
+        }
+
+        int end = Math.min(cursor + playersPerRun, pass.size());
+        removedThisPass += database.pruneSnapshots(pass.subList(cursor, end), policy, System.currentTimeMillis());
+        cursor = end;
+    }
+}
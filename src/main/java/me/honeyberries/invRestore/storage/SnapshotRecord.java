@@ -0,0 +1,59 @@
+package me.honeyberries.invRestore.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * A stored snapshot as read from the YAML file, still in its serialized form.
+ *
+ * @param owner the UUID of the player the snapshot belongs to
+ * @param id the id of the snapshot in the player's history
+ * @param type the kind of snapshot, or {@code null} if the stored type is unknown
+ * @param time when the snapshot was taken, in milliseconds
+ * @param itemCount the number of non-empty slots, or -1 if unknown
+ * @param data the serialized player data
+ * @param checksum the CRC32C of the data stored alongside it, or -1 if it was written without one
+ */
+public record SnapshotRecord(UUID owner, String id, SnapshotType type, long time, int itemCount, String data, long checksum) {
+
+    /**
+     * Creates a record from a snapshot's metadata and its data.
+     *
+     * @param info the snapshot's metadata
+     * @param data the serialized player data
+     */
+    public SnapshotRecord(SnapshotInfo info, String data) {
+        this(info.owner(), info.id(), info.type(), info.time(), info.itemCount(), data, info.checksum());
+    }
+
+    /**
+     * Gets the snapshot's metadata.
+     *
+     * @return the metadata, without the data
+     */
+    public SnapshotInfo info() {
+        return new SnapshotInfo(owner, id, type, time, itemCount, checksum);
+    }
+
+    /**
+     * Computes the checksum stored with a snapshot's serialized data.
+     *
+     * @param data the serialized player data
+     * @return the CRC32C of the data
+     */
+    public static long checksumOf(String data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.getBytes(StandardCharsets.ISO_8859_1));
+        return crc.getValue();
+    }
+
+    /**
+     * Checks the data against the stored checksum.
+     *
+     * @return {@code false} if a checksum is stored and does not match, {@code true} otherwise
+     */
+    public boolean matchesChecksum() {
+        return checksum < 0 || checksumOf(data) == checksum;
+    }
+}
@@ -0,0 +1,58 @@
+package me.honeyberries.invRestore.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The kinds of snapshots that can be stored for a player.
+ * The key of each type is what gets written to the YAML file and used in configuration.
+ */
+public enum SnapshotType {
+
+    /** Captured automatically when the player dies. */
+    DEATH("death"),
+    /** Captured manually with /inventorysave. */
+    SAVE("save"),
+    /** Captured manually with /inventorysave &lt;name&gt;, kept under that name until replaced or deleted. */
+    NAMED_SAVE("named-save"),
+    /** Captured periodically by the auto-snapshot scheduler. */
+    AUTO("auto"),
+    /** Captured when the player leaves the server. */
+    LOGOUT("logout"),
+    /** Captured when the player changes worlds. */
+    WORLD_CHANGE("world-change"),
+    /** Captured before the player's game mode changes. */
+    GAMEMODE_CHANGE("gamemode-change"),
+    /** Captured before the player is teleported by a plugin or command. */
+    TELEPORT("teleport");
+
+    private final String key;
+
+    SnapshotType(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Gets the key used for this type in storage and configuration.
+     *
+     * @return the lowercase key of this type
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Looks up a snapshot type by its storage key.
+     *
+     * @param key the key to look up, case-insensitive
+     * @return the matching type, or {@code null} if none matches
+     */
+    public static @Nullable SnapshotType fromKey(@Nullable String key) {
+        if (key == null) return null;
+        for (SnapshotType type : values()) {
+            if (type.key.equalsIgnoreCase(key)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -12,6 +12,10 @@ import java.util.zip.GZIPOutputStream;
 /**
  * Utility class for serializing and deserializing player data.
  * Handles all compression and encoding/decoding operations.
+ * <p>
+ * New snapshots are written as Base64 encoded {@link SnapshotSections}, which compress each section on
+ * their own. Snapshots written by older versions, GZIP compressed Java serialized PlayerData objects,
+ * are detected by their missing section header and still read.
  */
 public class InventorySerializer {
 
@@ -29,6 +33,11 @@ public class InventorySerializer {
             return null;
         }
 
+        // Sectioned snapshots are already compressed per section
+        if (data.getSections() != null) {
+            return Base64.getEncoder().encodeToString(data.getSections().toByteArray());
+        }
+
         try {
             // Serialize the PlayerData object
             try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -62,7 +71,25 @@ public class InventorySerializer {
 
         try {
             // Decode the Base64 string to a byte array
-            byte[] compressedBytes = Base64.getDecoder().decode(data);
+            return deserialize(Base64.getDecoder().decode(data));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Invalid Base64 encoding", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deserializes the decoded bytes of a Base64 string to a PlayerData object.
+     *
+     * @param compressedBytes the decoded bytes
+     * @return The deserialized PlayerData object, or null if deserialization fails
+     */
+    public static PlayerData deserialize(byte[] compressedBytes) {
+        try {
+            // Only the offset table of sectioned snapshots is read here, sections are decoded on access
+            if (SnapshotSections.isSectioned(compressedBytes)) {
+                return PlayerData.fromSections(compressedBytes);
+            }
 
             // Decompress the byte array
             byte[] bytes = decompress(compressedBytes);
@@ -78,9 +105,6 @@ public class InventorySerializer {
         } catch (ClassNotFoundException e) {
             LOGGER.log(Level.SEVERE, "Class not found during deserialization", e);
             return null;
-        } catch (IllegalArgumentException e) {
-            LOGGER.log(Level.SEVERE, "Invalid Base64 encoding", e);
-            return null;
         }
     }
 
@@ -1,23 +1,47 @@
 package me.honeyberries.invRestore.util;
 
 import me.honeyberries.invRestore.InvRestore;
+import me.honeyberries.invRestore.util.SnapshotSections.Section;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
 import org.bukkit.util.io.BukkitObjectInputStream;
 import org.bukkit.util.io.BukkitObjectOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Represents a container for storing and restoring player inventory and experience data.
- * This class is designed to be serialized and deserialized for persistent storage.
+ * <p>
+ * Snapshots are stored as {@link SnapshotSections}: the inventory, ender chest, experience, vitals,
+ * potion effects, location and death cause are encoded independently, and each accessor only decodes
+ * the section it needs. Inventory sections are slot-indexed, so a subset of slots can be decoded
+ * without decoding the rest.
+ * <p>
+ * Data written by older versions was this class serialized with Java serialization, carrying only
+ * the inventory and experience. Those objects are still readable through the legacy fields.
  */
 public class PlayerData implements Serializable {
 
@@ -30,85 +54,359 @@ public class PlayerData implements Serializable {
     // Logger instance for error reporting
     private static final Logger logger = plugin.getLogger();
 
-    // Serialized inventory contents stored as a Base64 string
+    // Legacy serialized inventory contents stored as a Base64 string, only set on data from older versions
     private String serializedInventory;
 
     // Player's total experience points
-    private final int totalXp;
+    private int totalXp;
     // Player's experience level
-    private final int expLevel;
+    private int expLevel;
     // Player's progress towards the next level (0.0 to 1.0)
-    private final float expProgress;
+    private float expProgress;
+
+    // Sectioned encoding of this snapshot, null for data from older versions
+    private transient SnapshotSections sections;
+    // Whether the experience fields have been read from the sections yet
+    private transient boolean experienceLoaded;
+
+    /**
+     * Everything captured from a player for a snapshot, copied so it can be encoded off the region thread.
+     *
+     * @param inventory   Copy of the inventory contents
+     * @param enderChest  Copy of the ender chest contents
+     * @param totalXp     Total experience points
+     * @param expLevel    Experience level
+     * @param expProgress Progress towards the next level
+     * @param health      Health
+     * @param foodLevel   Food level
+     * @param saturation  Saturation
+     * @param effects     Active potion effects
+     * @param location    Location, may be {@code null}
+     * @param deathCause  Death message, or {@code null} if this is not a death snapshot
+     */
+    public record Capture(ItemStack[] inventory, ItemStack[] enderChest, int totalXp, int expLevel, float expProgress,
+                          double health, int foodLevel, float saturation, List<PotionEffect> effects,
+                          Location location, String deathCause) {
+
+        /**
+         * Copies everything needed for a snapshot from a player. Must be called on the player's region thread.
+         *
+         * @param player     The player to capture
+         * @param deathCause The death message, or {@code null} if this is not a death snapshot
+         * @return The captured state
+         */
+        public static Capture of(Player player, String deathCause) {
+            return new Capture(copyItems(player.getInventory().getContents()),
+                    copyItems(player.getEnderChest().getContents()),
+                    player.getTotalExperience(), player.getLevel(), player.getExp(),
+                    player.getHealth(), player.getFoodLevel(), player.getSaturation(),
+                    new ArrayList<>(player.getActivePotionEffects()),
+                    player.getLocation(), deathCause);
+        }
+
+        private static ItemStack[] copyItems(ItemStack[] items) {
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] != null) items[i] = items[i].clone();
+            }
+            return items;
+        }
+    }
+
+    /**
+     * Health, food level and saturation of a snapshot.
+     *
+     * @param health     Health
+     * @param foodLevel  Food level
+     * @param saturation Saturation
+     */
+    public record Vitals(double health, int foodLevel, float saturation) {
+    }
+
+    private PlayerData(SnapshotSections sections) {
+        this.sections = sections;
+    }
 
     /**
-     * Constructs a new PlayerData object with the specified inventory and experience data.
+     * Encodes a captured player state into a new snapshot. Does not touch the live player,
+     * so it can be called off the player's region thread.
      *
-     * @param inventory   The player's inventory
+     * @param capture The captured state
+     * @return The encoded snapshot
+     * @throws IOException If encoding fails
      */
-    public PlayerData(Inventory inventory, int totalXp, int expLevel, float expProgress) {
+    public static PlayerData encode(Capture capture) throws IOException {
+        Map<Section, byte[]> bodies = new EnumMap<>(Section.class);
+        bodies.put(Section.INVENTORY, SnapshotSections.encodeSlots(serializeSlots(capture.inventory())));
+        bodies.put(Section.ENDER_CHEST, SnapshotSections.encodeSlots(serializeSlots(capture.enderChest())));
+
+        bodies.put(Section.EXPERIENCE, write(out -> {
+            out.writeInt(capture.totalXp());
+            out.writeInt(capture.expLevel());
+            out.writeFloat(capture.expProgress());
+        }));
 
-        this.totalXp = totalXp;
-        this.expLevel = expLevel;
-        this.expProgress = expProgress;
+        bodies.put(Section.VITALS, write(out -> {
+            out.writeDouble(capture.health());
+            out.writeInt(capture.foodLevel());
+            out.writeFloat(capture.saturation());
+        }));
 
-        if (inventory != null) {
-            // Serialize the inventory contents to a Base64 string
-            this.serializedInventory = serializeInventoryContents(inventory.getContents());
+        bodies.put(Section.EFFECTS, write(out -> {
+            out.writeInt(capture.effects().size());
+            for (PotionEffect effect : capture.effects()) {
+                out.writeUTF(effect.getType().getKey().toString());
+                out.writeInt(effect.getDuration());
+                out.writeInt(effect.getAmplifier());
+                out.writeBoolean(effect.isAmbient());
+                out.writeBoolean(effect.hasParticles());
+                out.writeBoolean(effect.hasIcon());
+            }
+        }));
+
+        Location location = capture.location();
+        if (location != null && location.getWorld() != null) {
+            bodies.put(Section.LOCATION, write(out -> {
+                UUID worldId = location.getWorld().getUID();
+                out.writeLong(worldId.getMostSignificantBits());
+                out.writeLong(worldId.getLeastSignificantBits());
+                out.writeUTF(location.getWorld().getName());
+                out.writeDouble(location.getX());
+                out.writeDouble(location.getY());
+                out.writeDouble(location.getZ());
+                out.writeFloat(location.getYaw());
+                out.writeFloat(location.getPitch());
+            }));
+        }
+
+        if (capture.deathCause() != null) {
+            bodies.put(Section.DEATH, write(out -> out.writeUTF(capture.deathCause())));
         }
+
+        return new PlayerData(SnapshotSections.parse(SnapshotSections.encode(bodies)));
     }
 
     /**
-     * Creates a PlayerData object from a Player instance.
+     * Creates data in the format older versions wrote, so the codec regression corpus can keep
+     * checking that it stays readable. Serialized with {@link InventorySerializer#serialize(PlayerData)}
+     * it becomes a GZIP compressed Java serialized object like the ones those versions stored.
+     *
+     * @param inventory   The inventory contents
+     * @param totalXp     Total experience points
+     * @param expLevel    Experience level
+     * @param expProgress Progress towards the next level
+     * @return The data, without sections
+     * @throws IOException If the inventory cannot be serialized
+     */
+    public static PlayerData legacy(ItemStack[] inventory, int totalXp, int expLevel, float expProgress) throws IOException {
+        PlayerData data = new PlayerData(null);
+        data.totalXp = totalXp;
+        data.expLevel = expLevel;
+        data.expProgress = expProgress;
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream)) {
+            dataOutput.writeInt(inventory.length);
+            for (ItemStack item : inventory) {
+                dataOutput.writeObject(item);
+            }
+        }
+        data.serializedInventory = Base64.getEncoder().encodeToString(outputStream.toByteArray());
+        return data;
+    }
+
+    /**
+     * Wraps an encoded sectioned snapshot. Only the offset table is read.
+     *
+     * @param bytes The encoded snapshot
+     * @return The snapshot
+     * @throws IOException If the bytes are not a valid sectioned snapshot
+     */
+    public static PlayerData fromSections(byte[] bytes) throws IOException {
+        return new PlayerData(SnapshotSections.parse(bytes));
+    }
+
+    /**
+     * Creates a PlayerData object from a Player instance. Must be called on the player's region thread.
      *
      * @param player The player to extract data from
-     * @return A new PlayerData object containing the player's inventory and experience data
+     * @return A new PlayerData object containing the player's data, or {@code null} if encoding fails
      */
     public static PlayerData fromPlayer(Player player) {
         if (player == null) return null;
-        return new PlayerData(
-            player.getInventory(),
-            player.getTotalExperience(),
-            player.getLevel(),
-            player.getExp()
-        );
+        try {
+            return encode(Capture.of(player, null));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not encode player data", e);
+            return null;
+        }
     }
 
     /**
-     * Serializes an array of ItemStacks into a Base64 encoded string.
+     * Gets the sectioned encoding of this snapshot.
      *
-     * @param items The ItemStack array to serialize
-     * @return A Base64 encoded string representing the serialized items
+     * @return The encoded snapshot, or {@code null} for data from older versions
      */
-    private String serializeInventoryContents(ItemStack[] items) {
-        try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream);
-
-            // Write the array length
-            dataOutput.writeInt(items.length);
+    public SnapshotSections getSections() {
+        return sections;
+    }
 
-            // Serialize each item in the array
-            for (ItemStack item : items) {
-                dataOutput.writeObject(item);
+    /**
+     * Serializes each slot of an inventory on its own.
+     *
+     * @param items The ItemStack array to serialize
+     * @return The serialized item of each slot, with {@code null} for empty slots
+     */
+    private static byte[][] serializeSlots(ItemStack[] items) {
+        byte[][] slots = new byte[items.length][];
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            if (item != null && !item.getType().isAir()) {
+                slots[i] = item.serializeAsBytes();
             }
+        }
+        return slots;
+    }
 
-            // Cleanup
-            dataOutput.close();
+    /**
+     * Decodes a serialized item.
+     *
+     * @param bytes The serialized item, or {@code null} for an empty slot
+     * @return The item, or {@code null} if the slot is empty or cannot be decoded
+     */
+    private static ItemStack decodeItem(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
 
-            // Encode to Base64 and return
-            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+        try {
+            return ItemStack.deserializeBytes(bytes);
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Could not serialize item stacks", e);
+            logger.log(Level.SEVERE, "Could not deserialize item", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a section, logging and returning {@code null} if it is missing or corrupt.
+     *
+     * @param section The section to read
+     * @return The section body, or {@code null}
+     */
+    private byte[] readSection(Section section) {
+        if (sections == null) return null;
+        try {
+            return sections.get(section);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read snapshot section " + section, e);
             return null;
         }
     }
 
     /**
-     * Deserializes the Base64 encoded inventory string back into an ItemStack array.
+     * Reads a slot-indexed section and its slot table, logging and returning {@code null} if it is
+     * missing or corrupt.
+     *
+     * @param section The section to read
+     * @return The section's slots, or {@code null}
+     */
+    private SnapshotSections.Slots readSlots(Section section) {
+        byte[] body = readSection(section);
+        if (body == null) return null;
+        try {
+            return SnapshotSections.readSlots(body);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read snapshot section " + section, e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes every slot of a slot-indexed section.
+     *
+     * @param section The section to decode
+     * @return The decoded items, or {@code null} if the section is missing
+     */
+    private ItemStack[] decodeAllSlots(Section section) {
+        SnapshotSections.Slots slots = readSlots(section);
+        if (slots == null) return null;
+
+        ItemStack[] items = new ItemStack[slots.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = decodeItem(slots.get(i));
+        }
+        return items;
+    }
+
+    /**
+     * Gets the number of slots stored in this snapshot.
+     *
+     * @return The inventory size
+     */
+    public int getInventorySize() {
+        if (sections != null) {
+            SnapshotSections.Slots slots = readSlots(Section.INVENTORY);
+            return slots == null ? 0 : slots.size();
+        }
+        return getLegacyInventoryContents().length;
+    }
+
+    /**
+     * Decodes every slot of the stored inventory.
      *
      * @return The deserialized ItemStack array, or an empty array if deserialization fails
      */
     public ItemStack[] getInventoryContents() {
+        if (sections != null) {
+            ItemStack[] items = decodeAllSlots(Section.INVENTORY);
+            return items != null ? items : new ItemStack[0];
+        }
+        return getLegacyInventoryContents();
+    }
+
+    /**
+     * Decodes only the requested slots of the stored inventory. The inventory section is still read
+     * and inflated as a whole, but only the requested items are deserialized; data from the oldest
+     * versions has to be decoded in full.
+     *
+     * @param slots The slots to decode; slots outside the stored inventory are ignored
+     * @return The decoded item per requested slot, with {@code null} for empty slots
+     */
+    public Map<Integer, ItemStack> getInventoryContents(int[] slots) {
+        Map<Integer, ItemStack> items = new LinkedHashMap<>();
+
+        if (sections != null) {
+            SnapshotSections.Slots stored = readSlots(Section.INVENTORY);
+            if (stored == null) return items;
+            for (int slot : slots) {
+                if (slot < 0 || slot >= stored.size()) continue;
+                items.put(slot, decodeItem(stored.get(slot)));
+            }
+            return items;
+        }
+
+        ItemStack[] legacyContents = getLegacyInventoryContents();
+        for (int slot : slots) {
+            if (slot < 0 || slot >= legacyContents.length) continue;
+            items.put(slot, legacyContents[slot]);
+        }
+        return items;
+    }
+
+    /**
+     * Decodes the stored ender chest.
+     *
+     * @return The ender chest contents, or {@code null} if the snapshot has none
+     */
+    public ItemStack[] getEnderChestContents() {
+        return decodeAllSlots(Section.ENDER_CHEST);
+    }
+
+    /**
+     * Deserializes the legacy Base64 encoded inventory string back into an ItemStack array.
+     *
+     * @return The deserialized ItemStack array, or an empty array if deserialization fails
+     */
+    private ItemStack[] getLegacyInventoryContents() {
         if (serializedInventory == null) {
             return new ItemStack[0];
         }
@@ -134,24 +432,252 @@ public class PlayerData implements Serializable {
         }
     }
 
+    /**
+     * Reads the experience section into the experience fields, once.
+     */
+    private void loadExperience() {
+        if (sections == null || experienceLoaded) return;
+        experienceLoaded = true;
+
+        byte[] body = readSection(Section.EXPERIENCE);
+        if (body == null) return;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            totalXp = in.readInt();
+            expLevel = in.readInt();
+            expProgress = in.readFloat();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read snapshot experience", e);
+        }
+    }
+
+    /**
+     * Gets the stored total experience points.
+     *
+     * @return The total experience
+     */
+    public int getTotalXp() {
+        loadExperience();
+        return totalXp;
+    }
+
+    /**
+     * Gets the stored experience level.
+     *
+     * @return The level
+     */
+    public int getExpLevel() {
+        loadExperience();
+        return expLevel;
+    }
+
+    /**
+     * Gets the stored progress towards the next level.
+     *
+     * @return The progress, from 0.0 to 1.0
+     */
+    public float getExpProgress() {
+        loadExperience();
+        return expProgress;
+    }
+
+    /**
+     * Decodes the stored health, food level and saturation.
+     *
+     * @return The vitals, or {@code null} if the snapshot has none
+     */
+    public Vitals getVitals() {
+        byte[] body = readSection(Section.VITALS);
+        if (body == null) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            return new Vitals(in.readDouble(), in.readInt(), in.readFloat());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read snapshot vitals", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the stored potion effects. Effects whose type no longer exists are skipped.
+     *
+     * @return The potion effects, empty if the snapshot has none
+     */
+    public List<PotionEffect> getPotionEffects() {
+        List<PotionEffect> effects = new ArrayList<>();
+        byte[] body = readSection(Section.EFFECTS);
+        if (body == null) return effects;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                NamespacedKey key = NamespacedKey.fromString(in.readUTF());
+                int duration = in.readInt();
+                int amplifier = in.readInt();
+                boolean ambient = in.readBoolean();
+                boolean particles = in.readBoolean();
+                boolean icon = in.readBoolean();
+
+                PotionEffectType type = key == null ? null : Registry.EFFECT.get(key);
+                if (type != null) {
+                    effects.add(new PotionEffect(type, duration, amplifier, ambient, particles, icon));
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read snapshot potion effects", e);
+        }
+        return effects;
+    }
+
+    /**
+     * Decodes the stored location. The world is looked up by UUID, then by name.
+     *
+     * @return The location, or {@code null} if the snapshot has none or its world no longer exists
+     */
+    public Location getLocation() {
+        byte[] body = readSection(Section.LOCATION);
+        if (body == null) return null;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            UUID worldId = new UUID(in.readLong(), in.readLong());
+            String worldName = in.readUTF();
+            World world = Bukkit.getWorld(worldId);
+            if (world == null) world = Bukkit.getWorld(worldName);
+            if (world == null) return null;
+
+            return new Location(world, in.readDouble(), in.readDouble(), in.readDouble(), in.readFloat(), in.readFloat());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read snapshot location", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the stored death message.
+     *
+     * @return The death message, or {@code null} if this is not a death snapshot
+     */
+    public String getDeathCause() {
+        byte[] body = readSection(Section.DEATH);
+        if (body == null) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            return in.readUTF();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read snapshot death cause", e);
+            return null;
+        }
+    }
+
     /**
      * Applies the stored inventory and experience data to a Player instance.
      *
      * @param player The player to apply the data to
      */
     public void applyToPlayer(Player player) {
+        applyToPlayer(player, getInventoryContents());
+    }
+
+    /**
+     * Applies already decoded inventory contents and the stored experience data to a Player instance.
+     * Lets callers decode the contents off-thread and only do the cheap part on the player's region thread.
+     *
+     * @param player   The player to apply the data to
+     * @param contents The decoded inventory contents, as returned by {@link #getInventoryContents()}
+     */
+    public void applyToPlayer(Player player, ItemStack[] contents) {
         if (player == null) return;
 
         // Apply inventory
-        ItemStack[] contents = getInventoryContents();
         if (contents != null) {
             player.getInventory().clear();
             player.getInventory().setContents(contents);
         }
 
-        // Apply experience
-        player.setTotalExperience(totalXp);
-        player.setLevel(expLevel);
-        player.setExp(expProgress);
+        applyExperience(player);
+    }
+
+    /**
+     * Applies only the stored experience to a Player instance. Only the experience section is decoded.
+     *
+     * @param player The player to apply the experience to
+     */
+    public void applyExperience(Player player) {
+        if (player == null) return;
+
+        player.setTotalExperience(getTotalXp());
+        player.setLevel(getExpLevel());
+        player.setExp(getExpProgress());
+    }
+
+    /**
+     * Replaces a player's ender chest with the stored one. Only the ender chest section is decoded.
+     *
+     * @param player The player to apply the ender chest to
+     * @return {@code true} if the snapshot had an ender chest to apply
+     */
+    public boolean applyEnderChest(Player player) {
+        ItemStack[] enderChest = getEnderChestContents();
+        if (player == null || enderChest == null) return false;
+
+        player.getEnderChest().setContents(enderChest);
+        return true;
+    }
+
+    /**
+     * Merges decoded slots into a player's current inventory, leaving other slots and experience untouched.
+     * Items currently in a restored slot are moved elsewhere in the inventory, or dropped at the player's
+     * feet if there is no room, so nothing is lost.
+     *
+     * @param player The player to apply the slots to
+     * @param items  The decoded item per slot, as returned by {@link #getInventoryContents(int[])}
+     * @return The number of slots that were restored
+     */
+    public static int applySlotsToPlayer(Player player, Map<Integer, ItemStack> items) {
+        if (player == null) return 0;
+
+        PlayerInventory inventory = player.getInventory();
+        List<ItemStack> displaced = new ArrayList<>();
+        int restored = 0;
+
+        for (Map.Entry<Integer, ItemStack> entry : items.entrySet()) {
+            int slot = entry.getKey();
+            if (slot >= inventory.getSize()) continue;
+
+            ItemStack current = inventory.getItem(slot);
+            ItemStack restoredItem = entry.getValue();
+            if (current != null && !current.getType().isAir() && !current.equals(restoredItem)) {
+                displaced.add(current);
+            }
+            inventory.setItem(slot, restoredItem);
+            restored++;
+        }
+
+        // Give back whatever was displaced, dropping what does not fit
+        if (!displaced.isEmpty()) {
+            inventory.addItem(displaced.toArray(new ItemStack[0])).values()
+                    .forEach(leftover -> player.getWorld().dropItemNaturally(player.getLocation(), leftover));
+        }
+        return restored;
+    }
+
+    /**
+     * Writes a small section body with a DataOutputStream.
+     *
+     * @param writer Writes the section fields
+     * @return The section body
+     * @throws IOException If writing fails
+     */
+    private static byte[] write(SectionWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the fields of a section.
+     */
+    @FunctionalInterface
+    private interface SectionWriter {
+        void write(DataOutputStream out) throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,376 @@
+package me.honeyberries.invRestore.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary container splitting a snapshot into independently encoded sections.
+ * <p>
+ * Layout: the magic bytes {@code IRS}, a format version byte and a section count, followed by an
+ * offset table with one entry per section (id, flags, offset, stored length, raw length) and the
+ * section bodies. Sections larger than {@link #COMPRESSION_THRESHOLD} bytes are deflated on their own,
+ * so reading one section never decompresses or decodes the others.
+ */
+public final class SnapshotSections {
+
+    /** Magic bytes at the start of every sectioned snapshot. */
+    private static final byte[] MAGIC = {'I', 'R', 'S'};
+    /** Current format version. */
+    private static final byte VERSION = 2;
+    /** Size of the fixed header: magic, version and section count. */
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 2;
+    /** Size of one offset table entry: id, flags, offset, stored length and raw length. */
+    private static final int ENTRY_SIZE = 1 + 1 + 4 + 4 + 4;
+    /** Flag set on sections that are deflated. */
+    private static final int FLAG_DEFLATED = 1;
+    /** Sections smaller than this are stored as-is, compressing them is not worth it. */
+    private static final int COMPRESSION_THRESHOLD = 128;
+    /** Largest raw section size accepted when reading, far above any real inventory. */
+    private static final int MAX_SECTION_SIZE = 64 << 20;
+
+    /**
+     * The sections a snapshot can contain. The id is what gets written to the offset table.
+     */
+    public enum Section {
+        /** Player inventory, slot-indexed. */
+        INVENTORY(1),
+        /** Ender chest, slot-indexed. */
+        ENDER_CHEST(2),
+        /** Total experience, level and progress. */
+        EXPERIENCE(3),
+        /** Health, food level and saturation. */
+        VITALS(4),
+        /** Active potion effects. */
+        EFFECTS(5),
+        /** World and position. */
+        LOCATION(6),
+        /** Death message, only present on death snapshots. */
+        DEATH(7);
+
+        private final int id;
+
+        Section(int id) {
+            this.id = id;
+        }
+
+        private static Section byId(int id) {
+            for (Section section : values()) {
+                if (section.id == id) return section;
+            }
+            return null;
+        }
+    }
+
+    /** The whole encoded snapshot. */
+    private final byte[] bytes;
+    /** Index into the offset table of each section present. */
+    private final Map<Section, Integer> entries = new EnumMap<>(Section.class);
+
+    private SnapshotSections(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Checks whether a byte array starts with the sectioned snapshot magic.
+     *
+     * @param bytes the bytes to check
+     * @return {@code true} if the bytes are a sectioned snapshot
+     */
+    public static boolean isSectioned(byte[] bytes) {
+        return bytes.length >= HEADER_SIZE && bytes[0] == MAGIC[0] && bytes[1] == MAGIC[1] && bytes[2] == MAGIC[2];
+    }
+
+    /**
+     * Reads the header and offset table of a sectioned snapshot. Section bodies are not touched.
+     *
+     * @param bytes the encoded snapshot
+     * @return the parsed container
+     * @throws IOException if the bytes are not a valid sectioned snapshot
+     */
+    public static SnapshotSections parse(byte[] bytes) throws IOException {
+        if (!isSectioned(bytes)) {
+            throw new IOException("Not a sectioned snapshot");
+        }
+        if (bytes[MAGIC.length] > VERSION) {
+            throw new IOException("Unsupported snapshot format version " + bytes[MAGIC.length]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int count = buffer.getShort(MAGIC.length + 1) & 0xFFFF;
+        if (HEADER_SIZE + (long) count * ENTRY_SIZE > bytes.length) {
+            throw new IOException("Truncated snapshot offset table");
+        }
+
+        SnapshotSections sections = new SnapshotSections(bytes);
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            Section section = Section.byId(bytes[entry]);
+            int offset = buffer.getInt(entry + 2);
+            int length = buffer.getInt(entry + 6);
+            int rawLength = buffer.getInt(entry + 10);
+            // Compared by subtraction, offset + length can overflow
+            if (offset < 0 || length < 0 || length > bytes.length - offset) {
+                throw new IOException("Snapshot section out of bounds");
+            }
+            // The raw length sizes the buffer a section is inflated into, so it must not be trusted blindly
+            if (rawLength < 0 || rawLength > MAX_SECTION_SIZE) {
+                throw new IOException("Snapshot section has an invalid size " + rawLength);
+            }
+            // Unknown sections from newer versions are skipped
+            if (section != null) {
+                sections.entries.put(section, entry);
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Encodes sections into a single snapshot, deflating large sections on their own.
+     *
+     * @param sections the raw body of each section
+     * @return the encoded snapshot
+     * @throws IOException if encoding fails
+     */
+    public static byte[] encode(Map<Section, byte[]> sections) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + sections.size() * ENTRY_SIZE);
+        table.put(MAGIC).put(VERSION).putShort((short) sections.size());
+
+        for (Map.Entry<Section, byte[]> entry : sections.entrySet()) {
+            byte[] raw = entry.getValue();
+            byte[] stored = raw.length >= COMPRESSION_THRESHOLD ? deflate(raw) : raw;
+            boolean deflated = stored != raw;
+
+            table.put((byte) entry.getKey().id)
+                    .put((byte) (deflated ? FLAG_DEFLATED : 0))
+                    .putInt(table.capacity() + body.size())
+                    .putInt(stored.length)
+                    .putInt(raw.length);
+            body.write(stored);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(table.capacity() + body.size());
+        out.write(table.array());
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks whether a section is present.
+     *
+     * @param section the section to check
+     * @return {@code true} if the snapshot contains the section
+     */
+    public boolean has(Section section) {
+        return entries.containsKey(section);
+    }
+
+    /**
+     * Reads the raw body of one section, inflating it if needed. No other section is touched.
+     *
+     * @param section the section to read
+     * @return the section body, or {@code null} if the section is not present
+     * @throws IOException if the section is corrupt
+     */
+    public byte[] get(Section section) throws IOException {
+        Integer entry = entries.get(section);
+        if (entry == null) return null;
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        boolean deflated = (bytes[entry + 1] & FLAG_DEFLATED) != 0;
+        int offset = buffer.getInt(entry + 2);
+        int length = buffer.getInt(entry + 6);
+        int rawLength = buffer.getInt(entry + 10);
+
+        if (!deflated) {
+            byte[] body = new byte[length];
+            System.arraycopy(bytes, offset, body, 0, length);
+            return body;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, length);
+            byte[] body = new byte[rawLength];
+            int read = inflater.inflate(body);
+            if (read != rawLength) {
+                throw new IOException("Snapshot section " + section + " is truncated");
+            }
+            if (!inflater.finished()) {
+                throw new IOException("Snapshot section " + section + " is longer than its recorded size");
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IOException("Snapshot section " + section + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads every section and checks that slot-indexed sections are consistent, without decoding any item.
+     *
+     * @throws IOException if a section is corrupt
+     */
+    public void verify() throws IOException {
+        for (Section section : entries.keySet()) {
+            byte[] body = get(section);
+            if (section == Section.INVENTORY || section == Section.ENDER_CHEST) {
+                verifySlots(section, body);
+            }
+        }
+    }
+
+    /**
+     * Checks that the slot lengths of a slot-indexed section add up to its size.
+     *
+     * @param section the section, for the error message
+     * @param body the section body
+     * @throws IOException if the slot table does not match the body
+     */
+    private static void verifySlots(Section section, byte[] body) throws IOException {
+        try {
+            readSlots(body);
+        } catch (IOException e) {
+            throw new IOException("Snapshot section " + section + " " + e.getMessage(), e);
+        }
+    }
+    /**
+     * Gets the whole encoded snapshot.
+     *
+     * @return the encoded bytes
+     */
+    public byte[] toByteArray() {
+        return bytes;
+    }
+
+    /**
+     * Deflates a section body.
+     *
+     * @param raw the body to compress
+     * @return the compressed body
+     */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Encodes items as a slot-indexed section: the slot count, the length of each slot
+     * (zero for empty slots) and then the slot bodies, so single slots can be located without decoding others.
+     *
+     * @param slots the serialized item of each slot, {@code null} for empty slots
+     * @return the section body
+     * @throws IOException if encoding fails
+     */
+    public static byte[] encodeSlots(byte[][] slots) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(slots.length);
+        for (byte[] slot : slots) {
+            out.writeInt(slot == null ? 0 : slot.length);
+        }
+        for (byte[] slot : slots) {
+            if (slot != null) out.write(slot);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the slot table of a slot-indexed section, computing where every slot starts once, so each
+     * slot can then be extracted in constant time.
+     *
+     * @param body the section body
+     * @return the slot table
+     * @throws IOException if the slot table does not match the body
+     */
+    public static Slots readSlots(byte[] body) throws IOException {
+        if (body.length < 4) {
+            throw new IOException("has no slot table");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        int count = buffer.getInt(0);
+        if (count < 0 || 4L + count * 4L > body.length) {
+            throw new IOException("has an invalid slot count");
+        }
+
+        int[] offsets = new int[count + 1];
+        long offset = 4L + count * 4L;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt(4 + i * 4);
+            if (length < 0) {
+                throw new IOException("has an invalid slot length");
+            }
+            offsets[i] = (int) offset;
+            offset += length;
+            if (offset > body.length) {
+                throw new IOException("does not match its slot table");
+            }
+        }
+        if (offset != body.length) {
+            throw new IOException("does not match its slot table");
+        }
+        offsets[count] = (int) offset;
+        return new Slots(body, offsets);
+    }
+
+    /**
+     * The slots of a slot-indexed section, with the offset of every slot precomputed.
+     */
+    public static final class Slots {
+        private final byte[] body;
+        /** Where each slot starts, plus the end of the last slot. */
+        private final int[] offsets;
+
+        private Slots(byte[] body, int[] offsets) {
+            this.body = body;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Gets the number of slots.
+         *
+         * @return the slot count
+         */
+        public int size() {
+            return offsets.length - 1;
+        }
+
+        /**
+         * Extracts the serialized item of one slot.
+         *
+         * @param slot the slot to extract
+         * @return the serialized item, or {@code null} if the slot is empty or out of range
+         */
+        public byte[] get(int slot) {
+            if (slot < 0 || slot >= size()) return null;
+
+            int length = offsets[slot + 1] - offsets[slot];
+            if (length == 0) return null;
+
+            byte[] item = new byte[length];
+            System.arraycopy(body, offsets[slot], item, 0, length);
+            return item;
+        }
+    }
+}
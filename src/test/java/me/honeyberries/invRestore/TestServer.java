@@ -0,0 +1,847 @@
+package me.honeyberries.invRestore;
+
+import io.papermc.paper.threadedregions.scheduler.AsyncScheduler;
+import io.papermc.paper.threadedregions.scheduler.EntityScheduler;
+import io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.ComponentLike;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Registry;
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A small in-memory stand-in for a Paper server, enough to enable InvRestore in a test.
+ * <p>
+ * The global region scheduler and every entity scheduler share one region thread, ticking every 50 ms;
+ * the async scheduler is a thread pool. Players are proxies over an in-memory inventory, ender chest
+ * and experience, which they keep across sessions. Events are dispatched to the registered listeners
+ * by priority, and commands run their executor directly.
+ * <p>
+ * Items serialize to their material and amount only, tagged with {@link #DATA_VERSION}. Item meta
+ * and registry-backed types such as enchantments and potion effects are not available. Exceptions
+ * thrown by scheduled tasks and event handlers are collected in {@link #getErrors()}.
+ */
+public final class TestServer implements AutoCloseable {
+
+    /** The data version items are serialized with. */
+    public static final int DATA_VERSION = 3953;
+
+    /** Length of a tick. */
+    private static final long TICK_MILLIS = 50;
+    /** Longest time to wait for work handed to the region thread. */
+    private static final long REGION_TIMEOUT_SECONDS = 60;
+
+    private final Logger logger = Logger.getLogger("InvRestore");
+    private final ScheduledExecutorService region;
+    private final ScheduledExecutorService async;
+    private final AtomicReference<Thread> regionThread = new AtomicReference<>();
+
+    private final Server server;
+    private final ConsoleCommandSender console;
+    private final PluginManager pluginManager;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, PluginCommand> commands = new HashMap<>();
+    private final Map<CommandSender, List<String>> messages = new ConcurrentHashMap<>();
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    /** Every player that ever joined, by UUID. */
+    private final Map<UUID, PlayerState> players = new ConcurrentHashMap<>();
+
+    private InvRestore plugin;
+
+    /**
+     * The state of a player, kept while they are offline like the server's player data.
+     */
+    private final class PlayerState {
+        final UUID uuid;
+        final String name;
+        final ItemStack[] inventory = new ItemStack[41];
+        final ItemStack[] enderChest = new ItemStack[27];
+        volatile int totalXp;
+        volatile int level;
+        volatile float exp;
+        volatile boolean online;
+        final Player player;
+
+        PlayerState(UUID uuid, String name) {
+            this.uuid = uuid;
+            this.name = name;
+            this.player = createPlayer(this);
+        }
+    }
+
+    private TestServer() {
+        region = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Region");
+            thread.setDaemon(true);
+            regionThread.set(thread);
+            return thread;
+        });
+        async = Executors.newScheduledThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "Async");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        GlobalRegionScheduler globalScheduler = scheduler(GlobalRegionScheduler.class, region, null);
+        AsyncScheduler asyncScheduler = scheduler(AsyncScheduler.class, async, null);
+        UnsafeValues unsafe = proxy(UnsafeValues.class, (method, args) -> switch (method.getName()) {
+            case "getDataVersion" -> DATA_VERSION;
+            case "serializeItem" -> serializeItem((ItemStack) args[0]);
+            case "deserializeItem" -> deserializeItem((byte[]) args[0]);
+            case "getMaterial" -> Material.getMaterial((String) args[0]);
+            default -> null;
+        });
+        ItemFactory itemFactory = proxy(ItemFactory.class, (method, args) -> switch (method.getName()) {
+            case "equals" -> Objects.equals(args[0], args[1]);
+            case "isApplicable" -> true;
+            case "asMetaFor" -> args[0];
+            default -> null;
+        });
+        Registry<?> registry = proxy(Registry.class, (method, args) -> switch (method.getName()) {
+            case "iterator" -> Collections.emptyIterator();
+            case "stream" -> Stream.empty();
+            default -> null;
+        });
+
+        pluginManager = proxy(PluginManager.class, (method, args) -> switch (method.getName()) {
+            case "registerEvents" -> {
+                listeners.add((Listener) args[0]);
+                yield null;
+            }
+            case "callEvent" -> {
+                callEvent((Event) args[0]);
+                yield null;
+            }
+            case "getPlugin" -> plugin;
+            case "getPlugins" -> new Plugin[]{plugin};
+            case "isPluginEnabled" -> true;
+            default -> null;
+        });
+        console = proxy(ConsoleCommandSender.class, (method, args) -> switch (method.getName()) {
+            case "getName" -> "CONSOLE";
+            case "hasPermission", "isOp", "isPermissionSet" -> true;
+            case "sendMessage", "sendRichMessage", "sendPlainMessage" -> {
+                recordMessage(getConsole(), args);
+                yield null;
+            }
+            default -> null;
+        });
+
+        server = proxy(Server.class, (method, args) -> switch (method.getName()) {
+            case "getPluginManager" -> pluginManager;
+            case "getGlobalRegionScheduler" -> globalScheduler;
+            case "getAsyncScheduler" -> asyncScheduler;
+            case "getUnsafe" -> unsafe;
+            case "getItemFactory" -> itemFactory;
+            case "getRegistry" -> registry;
+            case "getLogger" -> logger;
+            case "getName" -> "TestServer";
+            case "getVersion", "getBukkitVersion", "getMinecraftVersion" -> "1.21";
+            case "getOnlinePlayers" -> getOnlinePlayers();
+            case "getPlayer", "getPlayerExact" -> args[0] instanceof UUID uuid ? online(players.get(uuid)) : online(byName((String) args[0]));
+            case "getOfflinePlayer" -> args[0] instanceof UUID uuid ? offlinePlayer(uuid, players.get(uuid))
+                    : offlinePlayer(offlineUuid((String) args[0]), byName((String) args[0]));
+            case "getOfflinePlayerIfCached" -> {
+                PlayerState state = byName((String) args[0]);
+                yield state == null ? null : offlinePlayer(state.uuid, state);
+            }
+            case "getOfflinePlayers" -> players.values().stream()
+                    .map(state -> offlinePlayer(state.uuid, state)).toArray(OfflinePlayer[]::new);
+            case "getPluginCommand" -> commands.get(((String) args[0]).toLowerCase().replaceFirst("^invrestore:", ""));
+            case "getConsoleSender" -> console;
+            case "isPrimaryThread", "isGlobalTickThread", "isOwnedByCurrentRegion" -> Thread.currentThread() == regionThread.get();
+            case "getWorlds" -> List.of();
+            default -> null;
+        });
+    }
+
+    /**
+     * Installs a fake server as the Bukkit server and enables InvRestore on it.
+     *
+     * @param dataFolder the plugin's data folder, normally a temporary directory
+     * @return the running server
+     * @throws Exception if the plugin could not be created or enabled
+     */
+    public static TestServer start(Path dataFolder) throws Exception {
+        TestServer testServer = new TestServer();
+        Field serverField = Bukkit.class.getDeclaredField("server");
+        serverField.setAccessible(true);
+        serverField.set(null, testServer.server);
+
+        testServer.plugin = testServer.createPlugin(dataFolder);
+        testServer.onRegionThread(() -> {
+            testServer.plugin.onEnable();
+            return null;
+        });
+        return testServer;
+    }
+
+    /**
+     * Creates the plugin the way the plugin loader would, without a plugin class loader.
+     */
+    private InvRestore createPlugin(Path dataFolder) throws Exception {
+        // JavaPlugin refuses to be constructed outside a plugin class loader, so skip its constructor
+        Field theUnsafe = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        Object unsafe = theUnsafe.get(null);
+        InvRestore created = (InvRestore) unsafe.getClass().getMethod("allocateInstance", Class.class)
+                .invoke(unsafe, InvRestore.class);
+
+        PluginDescriptionFile description;
+        try (InputStream in = Objects.requireNonNull(TestServer.class.getClassLoader().getResourceAsStream("plugin.yml"))) {
+            description = new PluginDescriptionFile(in);
+        }
+
+        for (Field field : JavaPlugin.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) continue;
+            Object value = switch (field.getName()) {
+                case "server" -> server;
+                case "description", "pluginMeta" -> description;
+                case "dataFolder" -> dataFolder.toFile();
+                case "file" -> dataFolder.resolve("InvRestore.jar").toFile();
+                case "configFile" -> dataFolder.resolve("config.yml").toFile();
+                case "classLoader" -> TestServer.class.getClassLoader();
+                case "logger" -> logger;
+                case "isEnabled", "naggable" -> Boolean.TRUE;
+                default -> null;
+            };
+            if (value == null) continue;
+            if (field.getType().isInstance(value) || (field.getType() == boolean.class && value instanceof Boolean)) {
+                field.setAccessible(true);
+                field.set(created, value);
+            }
+        }
+
+        Constructor<PluginCommand> commandConstructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
+        commandConstructor.setAccessible(true);
+        for (String name : description.getCommands().keySet()) {
+            commands.put(name.toLowerCase(), commandConstructor.newInstance(name, created));
+        }
+        return created;
+    }
+
+    /**
+     * Disables the plugin, which runs its shutdown flush, and stops the schedulers.
+     *
+     * @throws Exception if disabling failed
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            onRegionThread(() -> {
+                plugin.onDisable();
+                return null;
+            });
+        } finally {
+            region.shutdownNow();
+            async.shutdownNow();
+            Field serverField = Bukkit.class.getDeclaredField("server");
+            serverField.setAccessible(true);
+            serverField.set(null, null);
+        }
+    }
+
+    /**
+     * Gets the enabled plugin.
+     *
+     * @return the plugin
+     */
+    public InvRestore getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Gets the server, as the plugin sees it.
+     *
+     * @return the server
+     */
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * Gets the console, which has every permission.
+     *
+     * @return the console sender
+     */
+    public ConsoleCommandSender getConsole() {
+        return console;
+    }
+
+    /**
+     * Gets everything thrown by scheduled tasks and event handlers so far.
+     *
+     * @return the errors, in the order they were thrown
+     */
+    public List<Throwable> getErrors() {
+        return List.copyOf(errors);
+    }
+
+    /**
+     * Gets the plain text of every message sent to a player or the console.
+     *
+     * @param sender the player or the console
+     * @return the messages, oldest first
+     */
+    public List<String> getMessages(CommandSender sender) {
+        return List.copyOf(messages.getOrDefault(sender, List.of()));
+    }
+
+    /**
+     * Runs something on the region thread and waits for it.
+     *
+     * @param action what to run
+     * @param <T> the type of the result
+     * @return the result
+     * @throws Exception whatever the action threw, or if it did not finish in time
+     */
+    public <T> T onRegionThread(Callable<T> action) throws Exception {
+        if (Thread.currentThread() == regionThread.get()) return action.call();
+        try {
+            return region.submit(action).get(REGION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Joins a player, firing the join event on the region thread. A player who joined before keeps
+     * the inventory, ender chest and experience they left with.
+     *
+     * @param name the player's name
+     * @return the online player
+     * @throws Exception if the join did not complete
+     */
+    public Player join(String name) throws Exception {
+        UUID uuid = offlineUuid(name);
+        PlayerState state = players.computeIfAbsent(uuid, id -> new PlayerState(id, name));
+        return onRegionThread(() -> {
+            state.online = true;
+            callEvent(newEvent(PlayerJoinEvent.class, state.player, Component.text(name + " joined the game")));
+            return state.player;
+        });
+    }
+
+    /**
+     * Makes a player leave, firing the quit event on the region thread while they are still online.
+     *
+     * @param player the online player
+     * @throws Exception if the quit did not complete
+     */
+    public void quit(Player player) throws Exception {
+        PlayerState state = players.get(player.getUniqueId());
+        onRegionThread(() -> {
+            callEvent(newEvent(PlayerQuitEvent.class, player, Component.text(player.getName() + " left the game")));
+            state.online = false;
+            return null;
+        });
+    }
+
+    /**
+     * Kills a player: fires the death event, then clears their inventory and experience as the drops
+     * do. Must be called on the region thread.
+     *
+     * @param player the online player
+     * @param deathMessage the death message
+     */
+    public void kill(Player player, String deathMessage) {
+        PlayerDeathEvent event = newEvent(PlayerDeathEvent.class, player, Component.text(deathMessage));
+        event.deathMessage(Component.text(deathMessage));
+        callEvent(event);
+
+        PlayerState state = players.get(player.getUniqueId());
+        Arrays.fill(state.inventory, null);
+        state.totalXp = 0;
+        state.level = 0;
+        state.exp = 0;
+    }
+
+    /**
+     * Runs a command's executor on the region thread, as the server would after parsing the command line.
+     *
+     * @param sender who runs the command
+     * @param label the command name or alias
+     * @param args the arguments
+     * @return what the executor returned
+     * @throws Exception if the command threw or did not complete
+     */
+    public boolean dispatch(CommandSender sender, String label, String... args) throws Exception {
+        PluginCommand command = Objects.requireNonNull(plugin.getCommand(label), "Unknown command " + label);
+        return onRegionThread(() -> command.getExecutor().onCommand(sender, command, label, args));
+    }
+
+    /**
+     * Dispatches an event to the registered listeners, lowest priority first.
+     *
+     * @param event the event
+     */
+    public void callEvent(Event event) {
+        record Handler(Listener listener, Method method, EventHandler annotation) {
+        }
+
+        List<Handler> handlers = new ArrayList<>();
+        for (Listener listener : listeners) {
+            for (Class<?> type = listener.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+                for (Method method : type.getDeclaredMethods()) {
+                    EventHandler annotation = method.getAnnotation(EventHandler.class);
+                    if (annotation != null && method.getParameterCount() == 1
+                            && method.getParameterTypes()[0].isInstance(event)) {
+                        handlers.add(new Handler(listener, method, annotation));
+                    }
+                }
+            }
+        }
+        handlers.sort(Comparator.comparing(handler -> handler.annotation().priority()));
+
+        for (Handler handler : handlers) {
+            if (handler.annotation().ignoreCancelled() && event instanceof Cancellable cancellable && cancellable.isCancelled()) {
+                continue;
+            }
+            try {
+                handler.method().setAccessible(true);
+                handler.method().invoke(handler.listener(), event);
+            } catch (InvocationTargetException e) {
+                fail("Could not pass " + event.getEventName() + " to " + handler.listener().getClass().getSimpleName(), e.getCause());
+            } catch (IllegalAccessException e) {
+                fail("Could not call " + handler.method(), e);
+            }
+        }
+    }
+
+    /**
+     * Serializes an item the way this server does: data version, material and amount.
+     *
+     * @param item the item
+     * @return the serialized item
+     */
+    public static byte[] serializeItem(ItemStack item) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(DATA_VERSION);
+            out.writeUTF(item.getType().name());
+            out.writeByte(item.getAmount());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an item written by {@link #serializeItem}.
+     *
+     * @param bytes the serialized item
+     * @return the item
+     */
+    public static ItemStack deserializeItem(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int version = in.readInt();
+            if (version > DATA_VERSION) {
+                throw new IllegalArgumentException("Item is from a newer data version: " + version);
+            }
+            return new ItemStack(Material.valueOf(in.readUTF()), in.readByte());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the UUID the server gives a player in offline mode.
+     */
+    private static UUID offlineUuid(String name) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<Player> getOnlinePlayers() {
+        return players.values().stream().filter(state -> state.online).map(state -> state.player).toList();
+    }
+
+    private PlayerState byName(String name) {
+        return players.values().stream().filter(state -> state.name.equalsIgnoreCase(name)).findFirst().orElse(null);
+    }
+
+    private static Player online(PlayerState state) {
+        return state != null && state.online ? state.player : null;
+    }
+
+    private OfflinePlayer offlinePlayer(UUID uuid, PlayerState state) {
+        return proxy(OfflinePlayer.class, (method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> uuid;
+            case "getName" -> state == null ? null : state.name;
+            case "isOnline" -> state != null && state.online;
+            case "hasPlayedBefore" -> state != null;
+            case "getPlayer" -> online(state);
+            default -> null;
+        });
+    }
+
+    /**
+     * Creates the player proxy over a player's state.
+     */
+    private Player createPlayer(PlayerState state) {
+        AtomicReference<Player> self = new AtomicReference<>();
+        EntityScheduler entityScheduler = scheduler(EntityScheduler.class, region, state);
+        Player player = proxy(Player.class, (method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> state.uuid;
+            case "getName", "getDisplayName", "getPlayerListName" -> state.name;
+            case "getInventory" -> inventory(PlayerInventory.class, state.inventory, self.get());
+            case "getEnderChest" -> inventory(Inventory.class, state.enderChest, self.get());
+            case "getTotalExperience" -> state.totalXp;
+            case "setTotalExperience" -> {
+                state.totalXp = (int) args[0];
+                yield null;
+            }
+            case "getLevel" -> state.level;
+            case "setLevel" -> {
+                state.level = (int) args[0];
+                yield null;
+            }
+            case "getExp" -> state.exp;
+            case "setExp" -> {
+                state.exp = (float) args[0];
+                yield null;
+            }
+            case "getHealth" -> 20.0;
+            case "getFoodLevel" -> 20;
+            case "getSaturation" -> 5.0f;
+            case "getActivePotionEffects" -> List.of();
+            case "getLocation" -> new Location(null, 0, 64, 0);
+            case "getScheduler" -> entityScheduler;
+            case "isOnline", "isValid", "isConnected" -> state.online;
+            case "hasPermission", "isOp", "isPermissionSet" -> true;
+            case "sendMessage", "sendRichMessage", "sendPlainMessage" -> {
+                recordMessage(self.get(), args);
+                yield null;
+            }
+            default -> null;
+        });
+        self.set(player);
+        return player;
+    }
+
+    /**
+     * Creates an inventory proxy over an array of slots.
+     */
+    private static <T extends Inventory> T inventory(Class<T> type, ItemStack[] slots, Player holder) {
+        return proxy(type, (method, args) -> {
+            synchronized (slots) {
+                return switch (method.getName()) {
+                    case "getSize" -> slots.length;
+                    case "getContents" -> slots.clone();
+                    case "getStorageContents" -> Arrays.copyOf(slots, Math.min(36, slots.length));
+                    case "setContents" -> {
+                        ItemStack[] items = (ItemStack[]) args[0];
+                        if (items.length > slots.length) {
+                            throw new IllegalArgumentException("Invalid inventory size (" + items.length + "); expected " + slots.length + " or less");
+                        }
+                        Arrays.fill(slots, null);
+                        System.arraycopy(items, 0, slots, 0, items.length);
+                        yield null;
+                    }
+                    case "getItem" -> slots[(int) args[0]];
+                    case "setItem" -> {
+                        slots[(int) args[0]] = (ItemStack) args[1];
+                        yield null;
+                    }
+                    case "clear" -> {
+                        if (args.length == 0) {
+                            Arrays.fill(slots, null);
+                        } else {
+                            slots[(int) args[0]] = null;
+                        }
+                        yield null;
+                    }
+                    case "addItem" -> {
+                        HashMap<Integer, ItemStack> leftovers = new HashMap<>();
+                        ItemStack[] items = (ItemStack[]) args[0];
+                        for (int i = 0; i < items.length; i++) {
+                            int free = Arrays.asList(slots).subList(0, Math.min(36, slots.length)).indexOf(null);
+                            if (free < 0) {
+                                leftovers.put(i, items[i]);
+                            } else {
+                                slots[free] = items[i];
+                            }
+                        }
+                        yield leftovers;
+                    }
+                    case "isEmpty" -> Arrays.stream(slots).allMatch(Objects::isNull);
+                    case "getHolder" -> holder;
+                    default -> null;
+                };
+            }
+        });
+    }
+
+    /**
+     * Creates a scheduler proxy over an executor. With an owner it behaves as that player's entity
+     * scheduler: tasks of an offline player are not scheduled, or run their retired callback instead.
+     */
+    private <T> T scheduler(Class<T> type, ScheduledExecutorService executor, PlayerState owner) {
+        List<ScheduledTask> scheduled = new CopyOnWriteArrayList<>();
+        return proxy(type, (method, args) -> {
+            if (method.getName().equals("cancelTasks")) {
+                scheduled.forEach(ScheduledTask::cancel);
+                scheduled.clear();
+                return null;
+            }
+
+            Consumer<ScheduledTask> body = null;
+            Runnable retired = null;
+            List<Long> numbers = new ArrayList<>();
+            TimeUnit unit = null;
+            for (Object arg : args) {
+                if (arg instanceof Consumer<?> consumer && body == null) {
+                    @SuppressWarnings("unchecked")
+                    Consumer<ScheduledTask> task = (Consumer<ScheduledTask>) consumer;
+                    body = task;
+                } else if (arg instanceof Runnable runnable && body == null) {
+                    body = task -> runnable.run();
+                } else if (arg instanceof Runnable runnable) {
+                    retired = runnable;
+                } else if (arg instanceof Long number) {
+                    numbers.add(number);
+                } else if (arg instanceof TimeUnit timeUnit) {
+                    unit = timeUnit;
+                }
+            }
+            if (body == null) return null;
+
+            if (owner != null && !owner.online) {
+                return method.getName().equals("execute") ? Boolean.FALSE : null;
+            }
+
+            long delay = method.getName().startsWith("runDelayed") || method.getName().startsWith("runAtFixedRate")
+                    || method.getName().equals("execute") ? (numbers.isEmpty() ? 0 : numbers.get(0)) : 0;
+            long period = method.getName().startsWith("runAtFixedRate") && numbers.size() > 1 ? numbers.get(1) : 0;
+            long delayMillis = unit == null ? delay * TICK_MILLIS : unit.toMillis(delay);
+            long periodMillis = unit == null ? period * TICK_MILLIS : unit.toMillis(period);
+
+            Consumer<ScheduledTask> action = body;
+            Runnable onRetired = retired;
+            ScheduledTask task = schedule(executor, scheduledTask -> {
+                if (owner != null && !owner.online) {
+                    scheduledTask.cancel();
+                    if (onRetired != null) onRetired.run();
+                    return;
+                }
+                action.accept(scheduledTask);
+            }, delayMillis, periodMillis);
+            scheduled.add(task);
+            return method.getName().equals("execute") ? (owner != null ? Boolean.TRUE : null) : task;
+        });
+    }
+
+    /**
+     * Schedules a task on an executor, recording anything it throws.
+     */
+    private ScheduledTask schedule(ScheduledExecutorService executor, Consumer<ScheduledTask> body, long delayMillis, long periodMillis) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Future<?>> future = new AtomicReference<>();
+        ScheduledTask task = proxy(ScheduledTask.class, (method, args) -> switch (method.getName()) {
+            case "getOwningPlugin" -> plugin;
+            case "isRepeatingTask" -> periodMillis > 0;
+            case "cancel" -> {
+                boolean first = cancelled.compareAndSet(false, true);
+                Future<?> scheduled = future.get();
+                if (scheduled != null) scheduled.cancel(false);
+                yield first ? ScheduledTask.CancelledState.CANCELLED_BY_CALLER : ScheduledTask.CancelledState.CANCELLED_ALREADY;
+            }
+            case "getExecutionState" -> cancelled.get() ? ScheduledTask.ExecutionState.CANCELLED : ScheduledTask.ExecutionState.IDLE;
+            case "isCancelled" -> cancelled.get();
+            default -> null;
+        });
+
+        Runnable run = () -> {
+            if (cancelled.get()) return;
+            try {
+                body.accept(task);
+            } catch (Throwable t) {
+                fail("Task of " + plugin.getName() + " threw an exception", t);
+            }
+        };
+        try {
+            future.set(periodMillis > 0
+                    ? executor.scheduleAtFixedRate(run, delayMillis, periodMillis, TimeUnit.MILLISECONDS)
+                    : executor.schedule(run, delayMillis, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException e) {
+            // The server is stopping
+            cancelled.set(true);
+        }
+        return task;
+    }
+
+    private void fail(String message, Throwable error) {
+        errors.add(error);
+        logger.log(Level.SEVERE, message, error);
+    }
+
+    private void recordMessage(CommandSender sender, Object[] args) {
+        List<String> received = messages.computeIfAbsent(sender, s -> new CopyOnWriteArrayList<>());
+        for (Object arg : args) {
+            if (arg instanceof ComponentLike component) {
+                received.add(PlainTextComponentSerializer.plainText().serialize(component.asComponent()));
+            } else if (arg instanceof String text) {
+                received.add(text);
+            } else if (arg instanceof String[] texts) {
+                received.addAll(Arrays.asList(texts));
+            }
+        }
+    }
+
+    /**
+     * Creates an event through its most complete non-deprecated constructor, filling each parameter
+     * with the first given value of a matching type, or a neutral value.
+     *
+     * @param type the event class
+     * @param values the values to pass, such as the player and the message
+     * @param <E> the event type
+     * @return the event
+     */
+    public static <E extends Event> E newEvent(Class<E> type, Object... values) {
+        List<Constructor<?>> constructors = new ArrayList<>(Arrays.asList(type.getConstructors()));
+        constructors.sort(Comparator.comparing((Constructor<?> constructor) -> constructor.isAnnotationPresent(Deprecated.class))
+                .thenComparing(Constructor::getParameterCount, Comparator.reverseOrder()));
+
+        RuntimeException failure = new IllegalArgumentException("No usable constructor for " + type.getName());
+        for (Constructor<?> constructor : constructors) {
+            Class<?>[] parameters = constructor.getParameterTypes();
+            Object[] args = new Object[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                args[i] = argumentFor(parameters[i], values);
+            }
+            try {
+                return type.cast(constructor.newInstance(args));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        throw failure;
+    }
+
+    private static Object argumentFor(Class<?> parameter, Object[] values) {
+        for (Object value : values) {
+            if (parameter.isInstance(value)) return value;
+        }
+        if (parameter.isPrimitive()) return defaultValue(parameter);
+        if (parameter == List.class || parameter == Collection.class) return new ArrayList<>();
+        if (parameter == String.class) return "";
+        if (parameter.isEnum()) return parameter.getEnumConstants()[0];
+        if (parameter.isInterface()) return proxy(parameter, (method, args) -> null);
+        return null;
+    }
+
+    /**
+     * The part of a proxy that is specific to the proxied type.
+     */
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(Method method, Object[] args) throws Throwable;
+    }
+
+    /**
+     * Creates a proxy of an interface. Identity is by reference, and methods the handler returns
+     * {@code null} for return the neutral value of their return type.
+     */
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocationHandler = (self, method, args) -> {
+            Object[] arguments = args == null ? new Object[0] : args;
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> self == arguments[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    default -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+                };
+            }
+            Object result = handler.invoke(method, arguments);
+            return result != null ? result : defaultValue(method.getReturnType());
+        };
+        return type.cast(Proxy.newProxyInstance(TestServer.class.getClassLoader(), new Class<?>[]{type}, invocationHandler));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0.0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return '\0';
+        if (type == List.class || type == Collection.class) return List.of();
+        if (type == Set.class) return Set.of();
+        if (type == Map.class) return Map.of();
+        if (type == Optional.class) return Optional.empty();
+        if (type == Stream.class) return Stream.empty();
+        return null;
+    }
+}
@@ -0,0 +1,158 @@
+package me.honeyberries.invRestore.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Storing, reading, freeing, compacting and streaming blobs of the off-heap arena.
+ */
+class BlobArenaTest {
+
+    /** Size of a regular slab, mirrored from the arena. */
+    private static final int SLAB_SIZE = 4 << 20;
+
+    private final Random random = new Random(3);
+
+    @Test
+    void blobsRoundTrip() {
+        BlobArena arena = new BlobArena();
+        byte[] bytes = randomBytes(1000);
+        String base64 = Base64.getEncoder().encodeToString(bytes);
+        long encoded = arena.put(base64);
+        // Valid Base64 that does not encode back to itself, and data that is no Base64 at all, are kept as-is
+        long unpadded = arena.put("QQ");
+        long raw = arena.put("not Base64 at all, \u00e9");
+
+        assertEquals(base64, arena.getString(encoded));
+        assertArrayEquals(bytes, arena.getDecoded(encoded));
+        assertTrue(arena.isBase64(encoded));
+
+        assertEquals("QQ", arena.getString(unpadded));
+        assertFalse(arena.isBase64(unpadded));
+        assertEquals("not Base64 at all, \u00e9", arena.getString(raw));
+        assertNull(arena.getDecoded(raw));
+    }
+
+    @Test
+    void freedSlabsAreReusedAndReleased() {
+        BlobArena arena = new BlobArena();
+        List<Long> handles = new ArrayList<>();
+        // About two and a half regular slabs
+        for (int i = 0; i < 100; i++) {
+            handles.add(arena.put(randomBase64(100_000)));
+        }
+        long reserved = arena.getReservedBytes();
+        assertEquals(3L * SLAB_SIZE, reserved);
+
+        handles.forEach(arena::free);
+        assertEquals(0, arena.getUsedBytes());
+        // The slab being allocated from and one spare are kept, the rest is given back
+        assertTrue(arena.getReservedBytes() <= 2L * SLAB_SIZE, "Empty slabs were not released");
+
+        arena.put(randomBase64(100_000));
+        assertTrue(arena.getReservedBytes() <= 2L * SLAB_SIZE, "An empty slab was not reused");
+    }
+
+    @Test
+    void largeBlobsGetASlabOfTheirOwn() {
+        BlobArena arena = new BlobArena();
+        String large = randomBase64(SLAB_SIZE + 1000);
+        long handle = arena.put(large);
+
+        assertEquals(large, arena.getString(handle));
+        assertTrue(arena.getReservedBytes() > SLAB_SIZE);
+
+        arena.free(handle);
+        assertEquals(0, arena.getReservedBytes());
+    }
+
+    @Test
+    void compactionMovesBlobsOutOfSparseSlabs() {
+        BlobArena arena = new BlobArena();
+        Map<Integer, Long> handles = new LinkedHashMap<>();
+        Map<Integer, String> contents = new LinkedHashMap<>();
+        for (int i = 0; i < 160; i++) {
+            contents.put(i, randomBase64(100_000));
+            handles.put(i, arena.put(contents.get(i)));
+        }
+
+        // Leave one blob in five, spread over every slab
+        for (int i = 0; i < 160; i++) {
+            if (i % 5 != 0) {
+                arena.free(handles.remove(i));
+                contents.remove(i);
+            }
+        }
+        long reserved = arena.getReservedBytes();
+        double fragmentation = arena.getFragmentation();
+
+        int released = arena.compact(handles);
+        assertTrue(released > 0, "Nothing was released");
+        assertTrue(arena.getReservedBytes() < reserved);
+        assertTrue(arena.getFragmentation() < fragmentation);
+        contents.forEach((i, data) -> assertEquals(data, arena.getString(handles.get(i)), "blob " + i));
+
+        // A second compaction has nothing left to gain
+        assertEquals(0, arena.compact(handles));
+    }
+
+    @Test
+    void streamsBase64WithoutChangingIt() throws IOException {
+        BlobArena arena = new BlobArena();
+        // Sizes around the streaming chunk, which is a multiple of 3, and the three padding cases
+        for (int size : new int[]{0, 1, 2, 3, 12287, 12288, 12289, 100_000}) {
+            String data = Base64.getEncoder().encodeToString(randomBytes(size));
+            long handle = arena.put(data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write('>');
+            arena.writeBase64(handle, out);
+            out.write('<');
+            assertEquals(">" + data + "<", out.toString(StandardCharsets.US_ASCII), "size " + size);
+        }
+    }
+
+    @Test
+    void refusesToStreamRawBlobs() {
+        BlobArena arena = new BlobArena();
+        long handle = arena.put("not Base64");
+
+        assertThrows(IllegalArgumentException.class, () -> arena.writeBase64(handle, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void clearReleasesEverything() {
+        BlobArena arena = new BlobArena();
+        arena.put(randomBase64(1000));
+        arena.clear();
+
+        assertEquals(0, arena.getUsedBytes());
+        assertEquals(0, arena.getReservedBytes());
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private String randomBase64(int decodedSize) {
+        return Base64.getEncoder().encodeToString(randomBytes(decodedSize));
+    }
+}
@@ -0,0 +1,116 @@
+package me.honeyberries.invRestore.storage;
+
+import me.honeyberries.invRestore.TestServer;
+import me.honeyberries.invRestore.util.PlayerData;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Regenerates the sectioned entries of the corpus in {@code src/test/resources} on a {@link TestServer}.
+ * Not part of the build, as the name does not match a test class; run it with
+ * {@code mvn test -Dtest=CodecCorpusRecorder} after an intended change to the format, and check the
+ * result in with that change.
+ * <p>
+ * The test server has no item meta, enchantments, potion effects or item registry, so the snapshots hold
+ * plain stacks with the stack sizes spelled out. The legacy entries are kept as they are: they stand for
+ * data the original release wrote, which nothing writes any more.
+ */
+class CodecCorpusRecorder {
+
+    private static final Path CORPUS = Path.of("src", "test", "resources", CodecCorpus.FILE_NAME);
+
+    /** Number of snapshots, and the seed they are generated from. */
+    private static final int TEMPLATES = 8;
+    private static final long SEED = 1337;
+
+    private static final Material[] TOOLS = {Material.NETHERITE_SWORD, Material.DIAMOND_PICKAXE, Material.BOW,
+            Material.DIAMOND_AXE, Material.CROSSBOW, Material.TRIDENT, Material.SHIELD};
+    private static final Stack[] STACKS = {new Stack(Material.COBBLESTONE, 64), new Stack(Material.OAK_LOG, 64),
+            new Stack(Material.TORCH, 64), new Stack(Material.ARROW, 64), new Stack(Material.COOKED_BEEF, 64),
+            new Stack(Material.IRON_INGOT, 64), new Stack(Material.GOLDEN_APPLE, 64), new Stack(Material.ENDER_PEARL, 16),
+            new Stack(Material.REDSTONE, 64), new Stack(Material.OBSIDIAN, 64), new Stack(Material.DIRT, 64),
+            new Stack(Material.GLASS, 64), new Stack(Material.EXPERIENCE_BOTTLE, 64), new Stack(Material.BREAD, 64),
+            new Stack(Material.SNOWBALL, 16)};
+    private static final Material[] ARMOR = {Material.DIAMOND_BOOTS, Material.DIAMOND_LEGGINGS,
+            Material.NETHERITE_CHESTPLATE, Material.DIAMOND_HELMET};
+
+    /**
+     * A stackable material and how many fit in a slot.
+     */
+    private record Stack(Material material, int maxStackSize) {
+    }
+
+    @Test
+    void recordSectionedEntries(@TempDir Path dataFolder) throws Exception {
+        YamlConfiguration corpus = YamlConfiguration.loadConfiguration(CORPUS.toFile());
+        assertEquals(TestServer.DATA_VERSION, corpus.getInt("data-version"),
+                "The corpus must be recorded on the test server's data version");
+        ConfigurationSection entries = Objects.requireNonNull(corpus.getConfigurationSection("entries"));
+
+        try (TestServer server = TestServer.start(dataFolder)) {
+            Random random = new Random(SEED);
+            for (int i = 0; i < TEMPLATES; i++) {
+                ItemStack[] inventory = generateInventory(random);
+                ItemStack[] enderChest = generateEnderChest(random);
+                int level = random.nextInt(60);
+                float progress = random.nextInt(100) / 100f;
+                int totalXp = level * 17 + random.nextInt(17);
+                String deathCause = i % 2 == 0 ? null : "Player" + i + " was shot by Skeleton using [Bow of the Hundredth Arrow]";
+
+                CodecCorpus.putEntry(entries, CodecCorpus.Codec.SECTIONED.getKey() + "-" + i, CodecCorpus.Codec.SECTIONED,
+                        PlayerData.encode(new PlayerData.Capture(inventory, enderChest, totalXp, level, progress,
+                                6.5 + i, 20 - i, i / 2f, List.of(), null, deathCause)), false);
+            }
+            assertEquals(0, server.getErrors().size(), "Tasks or event handlers threw");
+        }
+
+        Files.writeString(CORPUS, corpus.saveToString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates a well-used player inventory: tools and blocks in most slots, full armor and an offhand item.
+     */
+    private static ItemStack[] generateInventory(Random random) {
+        ItemStack[] items = new ItemStack[41];
+        for (int slot = 0; slot < 36; slot++) {
+            if (random.nextInt(10) < 3) continue;
+            if (slot < 9 && random.nextBoolean()) {
+                items[slot] = new ItemStack(TOOLS[random.nextInt(TOOLS.length)]);
+            } else {
+                Stack stack = STACKS[random.nextInt(STACKS.length)];
+                items[slot] = new ItemStack(stack.material(), 1 + random.nextInt(stack.maxStackSize()));
+            }
+        }
+        for (int i = 0; i < ARMOR.length; i++) {
+            items[36 + i] = new ItemStack(ARMOR[i]);
+        }
+        items[40] = new ItemStack(Material.TOTEM_OF_UNDYING);
+        return items;
+    }
+
+    /**
+     * Generates a partly filled ender chest.
+     */
+    private static ItemStack[] generateEnderChest(Random random) {
+        ItemStack[] items = new ItemStack[27];
+        for (int slot = 0; slot < items.length; slot++) {
+            if (random.nextInt(10) < 7) continue;
+            Stack stack = STACKS[random.nextInt(STACKS.length)];
+            items[slot] = new ItemStack(stack.material(), stack.maxStackSize());
+        }
+        return items;
+    }
+}
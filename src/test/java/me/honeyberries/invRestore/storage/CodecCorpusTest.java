@@ -0,0 +1,52 @@
+package me.honeyberries.invRestore.storage;
+
+import me.honeyberries.invRestore.TestServer;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the snapshot codecs against the corpus in {@code src/test/resources}, on a {@link TestServer}.
+ * <p>
+ * Every entry must decode to its recorded contents and encode back to the same bytes, and each codec
+ * must stay within the size threshold of the corpus. Decode times are only reported, as they depend on
+ * the machine. Item bytes depend on the data version, so the corpus is pinned to the test server's.
+ * The JSON report is copied to {@code invrestore.benchmark.report-dir}.
+ */
+class CodecCorpusTest {
+
+    private static final Path REPORT_DIR = Path.of(System.getProperty("invrestore.benchmark.report-dir", "target/benchmarks"));
+
+    @Test
+    void corpusRoundTripsWithinSizeThreshold(@TempDir Path dataFolder) throws Exception {
+        Path corpusFile = dataFolder.resolve(CodecCorpus.FILE_NAME);
+        try (InputStream corpus = Objects.requireNonNull(getClass().getClassLoader().getResourceAsStream(CodecCorpus.FILE_NAME))) {
+            Files.copy(corpus, corpusFile);
+        }
+        assertEquals(TestServer.DATA_VERSION, YamlConfiguration.loadConfiguration(corpusFile.toFile()).getInt("data-version"),
+                "The corpus must be recorded on the test server's data version");
+
+        try (TestServer server = TestServer.start(dataFolder)) {
+            CodecCorpus.Result result = new CodecCorpus(server.getPlugin()).check();
+
+            assertNotNull(result, "The corpus has no entries");
+            assertEquals(16, result.entries());
+            if (result.report() != null) {
+                Files.createDirectories(REPORT_DIR);
+                Files.copy(result.report(), REPORT_DIR.resolve(result.report().getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+            assertTrue(result.passed(), () -> String.join("\n", result.failures()));
+            assertEquals(0, server.getErrors().size(), "Tasks or event handlers threw");
+        }
+    }
+}
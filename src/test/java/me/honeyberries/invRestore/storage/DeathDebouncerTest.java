@@ -0,0 +1,160 @@
+package me.honeyberries.invRestore.storage;
+
+import me.honeyberries.invRestore.TestServer;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Window behaviour of the death debouncer, on a {@link TestServer} with a 2 second minimum and
+ * 5 second maximum window. Storage is a singleton, so the scenarios share one server and each uses
+ * its own player.
+ */
+class DeathDebouncerTest {
+
+    private static final long MIN_WINDOW_MILLIS = 2_000;
+    private static final long MAX_WINDOW_MILLIS = 5_000;
+    /** Longest wait for a death to be written once it is due. */
+    private static final long SETTLE_MILLIS = 10_000;
+
+    @Test
+    void holdsCoalescesAndWritesDeaths(@TempDir Path dataFolder) throws Exception {
+        writeConfig(dataFolder);
+        try (TestServer server = TestServer.start(dataFolder)) {
+            PlayerDataStorage database = PlayerDataStorage.getInstance();
+
+            heldUntilTheWindowCloses(server, database);
+            deathsWithinTheWindowAreCoalesced(server, database);
+            noDeathIsHeldLongerThanTheMaximum(server, database);
+            quittingWritesTheHeldDeath(server, database);
+            listingAndRestoringSeeTheHeldDeath(server, database);
+
+            assertEquals(List.of(), server.getErrors(), "Tasks or event handlers threw");
+        }
+    }
+
+    private void heldUntilTheWindowCloses(TestServer server, PlayerDataStorage database) throws Exception {
+        Player player = server.join("Held");
+        long died = System.currentTimeMillis();
+        kill(server, player, "Held died");
+
+        assertEquals(0, storedDeaths(database, player.getUniqueId()).size(), "The death was written right away");
+        assertNotNull(database.getPlayerData(player.getUniqueId(), SnapshotType.DEATH), "The held death is not readable");
+
+        awaitTrue("the held death to be written", () -> storedDeaths(database, player.getUniqueId()).size() == 1);
+        assertTrue(System.currentTimeMillis() - died >= MIN_WINDOW_MILLIS - 100, "The death was written before its window closed");
+        assertEquals("Held died", deathCause(database, player.getUniqueId()));
+    }
+
+    private void deathsWithinTheWindowAreCoalesced(TestServer server, PlayerDataStorage database) throws Exception {
+        Player player = server.join("Coalesced");
+        kill(server, player, "Coalesced died first");
+        kill(server, player, "Coalesced died again");
+
+        awaitTrue("the coalesced death to be written", () -> !storedDeaths(database, player.getUniqueId()).isEmpty());
+        // Give a second write, which must not come, time to show up
+        Thread.sleep(MIN_WINDOW_MILLIS);
+        assertEquals(1, storedDeaths(database, player.getUniqueId()).size(), "Deaths in one window were not coalesced");
+        assertEquals("Coalesced died again", deathCause(database, player.getUniqueId()));
+    }
+
+    private void noDeathIsHeldLongerThanTheMaximum(TestServer server, PlayerDataStorage database) throws Exception {
+        Player player = server.join("Frequent");
+        long start = System.currentTimeMillis();
+        int deaths = 0;
+        // Dying every half second keeps pushing the window back, up to the maximum
+        while (System.currentTimeMillis() - start < MAX_WINDOW_MILLIS + 3_000) {
+            kill(server, player, "Frequent died " + deaths++);
+            Thread.sleep(500);
+        }
+
+        assertTrue(!storedDeaths(database, player.getUniqueId()).isEmpty(),
+                "A death was held longer than the maximum window");
+        int written = storedDeaths(database, player.getUniqueId()).size();
+        assertTrue(written < deaths, written + " of " + deaths + " deaths were written, none were coalesced");
+    }
+
+    private void quittingWritesTheHeldDeath(TestServer server, PlayerDataStorage database) throws Exception {
+        Player player = server.join("Quitter");
+        kill(server, player, "Quitter died");
+        long quit = System.currentTimeMillis();
+        server.quit(player);
+
+        awaitTrue("the death of a player who quit to be written", () -> storedDeaths(database, player.getUniqueId()).size() == 1);
+        assertTrue(System.currentTimeMillis() - quit < MIN_WINDOW_MILLIS, "Quitting did not write the held death");
+    }
+
+    private void listingAndRestoringSeeTheHeldDeath(TestServer server, PlayerDataStorage database) throws Exception {
+        Player listed = server.join("Listed");
+        kill(server, listed, "Listed died");
+        List<SnapshotInfo> snapshots = database.listSnapshots(listed.getUniqueId());
+        assertEquals(1, snapshots.size(), "The held death is missing from the list");
+        assertEquals(SnapshotType.DEATH, snapshots.get(0).type());
+        assertNull(server.getPlugin().getDeathDebouncer().getHeld(listed.getUniqueId()), "The listed death is still held");
+
+        Player restored = server.join("Restored");
+        kill(server, restored, "Restored died");
+        // The restore is pinned by id, so the held death is stored and picked right away
+        assertTrue(database.queueRestore(restored.getUniqueId(), SnapshotType.DEATH, "Console"),
+                "The held death could not be restored");
+        assertTrue(database.hasPendingRestore(restored.getUniqueId()));
+        assertEquals("Restored died", deathCause(database, restored.getUniqueId()));
+    }
+
+    private static void kill(TestServer server, Player player, String message) throws Exception {
+        server.onRegionThread(() -> {
+            server.kill(player, message);
+            return null;
+        });
+    }
+
+    private static List<SnapshotInfo> storedDeaths(PlayerDataStorage database, UUID uuid) {
+        return database.listStoredSnapshots(uuid).stream().filter(snapshot -> snapshot.type() == SnapshotType.DEATH).toList();
+    }
+
+    /**
+     * Gets the death message of a player's newest stored death.
+     */
+    private static String deathCause(PlayerDataStorage database, UUID uuid) {
+        SnapshotInfo latest = storedDeaths(database, uuid).get(0);
+        return Objects.requireNonNull(database.getSnapshot(uuid, latest.id())).getDeathCause();
+    }
+
+    /**
+     * Writes the default configuration with short debounce windows.
+     */
+    private static void writeConfig(Path dataFolder) throws Exception {
+        String config;
+        try (InputStream in = Objects.requireNonNull(DeathDebouncerTest.class.getClassLoader().getResourceAsStream("config.yml"))) {
+            config = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        config = config.replace("  min-seconds: 2\n", "  min-seconds: " + MIN_WINDOW_MILLIS / 1000 + "\n")
+                .replace("  max-seconds: 60\n", "  max-seconds: " + MAX_WINDOW_MILLIS / 1000 + "\n");
+        Files.writeString(dataFolder.resolve("config.yml"), config);
+    }
+
+    private static void awaitTrue(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SETTLE_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package me.honeyberries.invRestore.storage;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.honeyberries.invRestore.TestServer;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Load test of the death and restore paths, run on a {@link TestServer} with a temporary data folder.
+ * <p>
+ * Players join, then die every tick at a fixed rate on the region thread, through the real death
+ * listener and debouncer. Once the run ends they quit, which writes the deaths still held back, and
+ * every player's last death is restored through {@code /inventoryrestore death}: queued while they are
+ * offline and applied when they join, then again directly while they are online.
+ * <p>
+ * Throughput, save and restore latency, queue depth, heap use and tick timing are written as JSON to
+ * {@code invrestore.benchmark.report-dir}. The rate, duration and number of players are read from
+ * {@code invrestore.benchmark.deaths-per-minute}, {@code .seconds} and {@code .players}.
+ * <p>
+ * Besides restoring every death, the test fails if the region thread falls behind or saves stall:
+ * fewer than half the requested deaths fired, more than {@code invrestore.benchmark.max-overrun-percent}
+ * (default 10) of ticks overran, or a death took longer than the debounce window plus
+ * {@link #SAVE_SLACK_MILLIS} to be written. The bounds are loose on purpose, to catch stalls rather
+ * than small regressions; compare the reports for those.
+ */
+class LoadBenchmarkTest {
+
+    private static final int DEATHS_PER_MINUTE = Integer.getInteger("invrestore.benchmark.deaths-per-minute", 6000);
+    private static final int SECONDS = Integer.getInteger("invrestore.benchmark.seconds", 10);
+    private static final int PLAYERS = Integer.getInteger("invrestore.benchmark.players", 100);
+    private static final Path REPORT_DIR = Path.of(System.getProperty("invrestore.benchmark.report-dir", "target/benchmarks"));
+
+    /** Number of distinct inventories players die with. */
+    private static final int TEMPLATES = 32;
+    /** A tick that starts this long after the previous one is late. */
+    private static final long LATE_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(60);
+    /** A tick whose work takes longer than this overruns. */
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    /** Longest wait for the writes and restores to finish after the run. */
+    private static final long SETTLE_TIMEOUT_MILLIS = 60_000;
+    /** Number of players whose snapshots are watched to measure save latency. */
+    private static final int WATCHED_PLAYERS = 10;
+    /** Share of ticks that may overrun, in percent. */
+    private static final int MAX_OVERRUN_PERCENT = Integer.getInteger("invrestore.benchmark.max-overrun-percent", 10);
+    /** How much longer than the longest debounce window a death may take to be written. */
+    private static final long SAVE_SLACK_MILLIS = 5_000;
+
+    private static final Material[] TOOLS = {Material.NETHERITE_SWORD, Material.DIAMOND_PICKAXE, Material.BOW,
+            Material.DIAMOND_AXE, Material.CROSSBOW, Material.TRIDENT, Material.SHIELD};
+    /** Materials that stack to 64. */
+    private static final Material[] STACKS = {Material.COBBLESTONE, Material.OAK_LOG, Material.TORCH, Material.ARROW,
+            Material.COOKED_BEEF, Material.IRON_INGOT, Material.GOLDEN_APPLE, Material.REDSTONE,
+            Material.OBSIDIAN, Material.DIRT, Material.GLASS, Material.EXPERIENCE_BOTTLE, Material.BREAD};
+    private static final Material[] ARMOR = {Material.DIAMOND_BOOTS, Material.DIAMOND_LEGGINGS,
+            Material.NETHERITE_CHESTPLATE, Material.DIAMOND_HELMET};
+
+    @Test
+    void sustainsDeathsAndRestoresThem(@TempDir Path dataFolder) throws Exception {
+        try (TestServer server = TestServer.start(dataFolder)) {
+            PlayerDataStorage database = PlayerDataStorage.getInstance();
+            Random random = new Random(42);
+            List<ItemStack[]> inventories = new ArrayList<>();
+            List<ItemStack[]> enderChests = new ArrayList<>();
+            for (int i = 0; i < TEMPLATES; i++) {
+                inventories.add(generateInventory(random));
+                enderChests.add(generateEnderChest(random));
+            }
+
+            List<Player> players = new ArrayList<>();
+            for (int i = 0; i < PLAYERS; i++) {
+                players.add(server.join("Player" + i));
+            }
+
+            // Save latency: how long after a death its snapshot is written, debounce hold included
+            Map<UUID, Long> lastSeen = new HashMap<>();
+            ConcurrentLinkedQueue<Long> saveLatencies = new ConcurrentLinkedQueue<>();
+            List<Player> watched = List.copyOf(players.subList(0, Math.min(WATCHED_PLAYERS, players.size())));
+            ScheduledTask watcher = server.getServer().getAsyncScheduler().runAtFixedRate(server.getPlugin(), task -> {
+                for (Player player : watched) {
+                    long now = System.currentTimeMillis();
+                    long seen = lastSeen.getOrDefault(player.getUniqueId(), 0L);
+                    for (SnapshotInfo snapshot : database.listStoredSnapshots(player.getUniqueId())) {
+                        if (snapshot.type() == SnapshotType.DEATH && snapshot.time() > seen) {
+                            saveLatencies.add(now - snapshot.time());
+                        }
+                    }
+                    latestDeath(database, player.getUniqueId()).ifPresent(time -> lastSeen.put(player.getUniqueId(), time));
+                }
+            }, 10, 10, TimeUnit.MILLISECONDS);
+
+            long heapStart = usedHeap();
+            Load load = new Load(server, database, players, inventories, enderChests);
+            server.getServer().getGlobalRegionScheduler().runAtFixedRate(server.getPlugin(), load::tick, 1, 1);
+            load.done.get(SECONDS + SETTLE_TIMEOUT_MILLIS / 1000, TimeUnit.SECONDS);
+
+            // Quitting writes every death the debouncer still holds
+            long drainStart = System.nanoTime();
+            for (Player player : players) {
+                server.quit(player);
+            }
+            awaitTrue("every death to be written", () -> database.getPendingWriteCount() == 0
+                    && players.stream().allMatch(player -> latestDeath(database, player.getUniqueId()).orElse(0L)
+                    >= load.lastDeath.getOrDefault(player.getUniqueId(), 0L)));
+            long drainNanos = System.nanoTime() - drainStart;
+            watcher.cancel();
+
+            // Queued restores, applied when the players join again
+            players.removeIf(player -> !load.lastTemplate.containsKey(player.getUniqueId()));
+            for (Player player : players) {
+                server.dispatch(server.getConsole(), "inventoryrestore", "death", player.getName());
+                assertTrue(database.hasPendingRestore(player.getUniqueId()), "No restore queued for " + player.getName());
+            }
+            List<Long> queuedRestores = new ArrayList<>();
+            for (Player player : players) {
+                long start = System.nanoTime();
+                server.join(player.getName());
+                awaitTrue("the queued restore of " + player.getName(), () -> !database.hasPendingRestore(player.getUniqueId()));
+                queuedRestores.add(System.nanoTime() - start);
+                assertRestored(server, load, player);
+            }
+
+            // Restores of online players, which run on the region thread
+            List<Long> onlineRestores = new ArrayList<>();
+            for (Player player : players) {
+                server.onRegionThread(() -> {
+                    player.getInventory().clear();
+                    return null;
+                });
+                long start = System.nanoTime();
+                server.dispatch(server.getConsole(), "inventoryrestore", "death", player.getName());
+                onlineRestores.add(System.nanoTime() - start);
+                assertRestored(server, load, player);
+            }
+            long heapEnd = usedHeap();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+            report.put("deathsPerMinute", DEATHS_PER_MINUTE);
+            report.put("durationSeconds", SECONDS);
+            report.put("players", PLAYERS);
+            report.put("deaths", load.deaths);
+            report.put("throughput", Map.of(
+                    "deathsPerSecond", load.deaths / (load.elapsedNanos / 1e9),
+                    "deathsWrittenPerSecond", load.deaths / ((load.elapsedNanos + drainNanos) / 1e9)));
+            report.put("saveLatencyMs", percentiles(saveLatencies, 1));
+            report.put("drainMs", drainNanos / 1e6);
+            report.put("queueDepth", Map.of(
+                    "max", load.queueDepths.stream().mapToInt(Integer::intValue).max().orElse(0),
+                    "mean", load.queueDepths.stream().mapToInt(Integer::intValue).average().orElse(0)));
+            report.put("queuedRestoreMs", percentiles(queuedRestores, 1e6));
+            report.put("onlineRestoreMs", percentiles(onlineRestores, 1e6));
+            report.put("heapMb", Map.of(
+                    "start", heapStart / 1048576.0,
+                    "peak", load.peakHeap / 1048576.0,
+                    "end", heapEnd / 1048576.0,
+                    "growth", (heapEnd - heapStart) / 1048576.0));
+            report.put("ticks", Map.of(
+                    "count", load.tickWork.size(),
+                    "late", load.lateTicks,
+                    "overruns", load.overruns,
+                    "intervalMs", percentiles(load.tickIntervals, 1e6),
+                    "workMs", percentiles(load.tickWork, 1e6)));
+
+            Files.createDirectories(REPORT_DIR);
+            Path file = REPORT_DIR.resolve("load-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+            Files.writeString(file, CodecCorpus.toJson(report));
+
+            assertEquals(List.of(), server.getErrors(), "Tasks or event handlers threw");
+            long expectedDeaths = (long) DEATHS_PER_MINUTE * SECONDS / 60;
+            assertTrue(load.deaths >= expectedDeaths / 2, "Only " + load.deaths + " of " + expectedDeaths
+                    + " deaths were fired, the region thread fell behind; see " + file);
+            assertTrue(load.overruns * 100L <= (long) load.tickWork.size() * MAX_OVERRUN_PERCENT, load.overruns + " of "
+                    + load.tickWork.size() + " ticks overran " + TimeUnit.NANOSECONDS.toMillis(TICK_NANOS) + " ms; see " + file);
+            long maxSaveLatency = TimeUnit.SECONDS.toMillis(server.getPlugin().getConfig().getLong("death-debounce.max-seconds", 60))
+                    + SAVE_SLACK_MILLIS;
+            assertTrue(saveLatencies.stream().allMatch(latency -> latency <= maxSaveLatency),
+                    "A death took longer than " + maxSaveLatency + " ms to be written; see " + file);
+        }
+    }
+
+    /**
+     * Fires deaths on the region thread every tick and samples the queue, heap and tick timing.
+     * Only touched on the region thread until {@link #done} completes.
+     */
+    private static final class Load {
+        final TestServer server;
+        final PlayerDataStorage database;
+        final List<Player> players;
+        final List<ItemStack[]> inventories;
+        final List<ItemStack[]> enderChests;
+        final Random random = new Random(7);
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        /** Time of each player's last death. */
+        final Map<UUID, Long> lastDeath = new HashMap<>();
+        /** The template each player last died with. */
+        final Map<UUID, Integer> lastTemplate = new HashMap<>();
+        final List<Long> tickIntervals = new ArrayList<>();
+        final List<Long> tickWork = new ArrayList<>();
+        final List<Integer> queueDepths = new ArrayList<>();
+        int deaths;
+        int lateTicks;
+        int overruns;
+        long peakHeap;
+        long elapsedNanos;
+
+        private long startNanos;
+        private long lastTickNanos;
+        private double owed;
+
+        Load(TestServer server, PlayerDataStorage database, List<Player> players,
+             List<ItemStack[]> inventories, List<ItemStack[]> enderChests) {
+            this.server = server;
+            this.database = database;
+            this.players = players;
+            this.inventories = inventories;
+            this.enderChests = enderChests;
+        }
+
+        void tick(ScheduledTask task) {
+            long now = System.nanoTime();
+            if (startNanos == 0) {
+                startNanos = now;
+            } else {
+                long interval = now - lastTickNanos;
+                tickIntervals.add(interval);
+                if (interval > LATE_TICK_NANOS) lateTicks++;
+            }
+            lastTickNanos = now;
+
+            if (now - startNanos >= TimeUnit.SECONDS.toNanos(SECONDS)) {
+                elapsedNanos = now - startNanos;
+                task.cancel();
+                done.complete(null);
+                return;
+            }
+
+            owed += DEATHS_PER_MINUTE / 1200.0;
+            for (; owed >= 1; owed--) {
+                die(players.get(deaths % players.size()));
+            }
+
+            long work = System.nanoTime() - now;
+            tickWork.add(work);
+            if (work > TICK_NANOS) overruns++;
+            queueDepths.add(database.getPendingWriteCount());
+            peakHeap = Math.max(peakHeap, usedHeap());
+        }
+
+        private void die(Player player) {
+            int template = random.nextInt(inventories.size());
+            player.getInventory().setContents(copy(inventories.get(template)));
+            player.getEnderChest().setContents(copy(enderChests.get(template)));
+            player.setLevel(template);
+            lastTemplate.put(player.getUniqueId(), template);
+            lastDeath.put(player.getUniqueId(), System.currentTimeMillis());
+            server.kill(player, player.getName() + " was slain by Zombie");
+            deaths++;
+        }
+    }
+
+    /**
+     * Checks that a player has exactly the inventory and level of their last death.
+     */
+    private static void assertRestored(TestServer server, Load load, Player player) throws Exception {
+        int template = load.lastTemplate.get(player.getUniqueId());
+        boolean same = server.onRegionThread(() -> sameContents(load.inventories.get(template), player.getInventory().getContents())
+                && player.getLevel() == template);
+        assertTrue(same, player.getName() + " did not get back the inventory they died with");
+    }
+
+    private static boolean sameContents(ItemStack[] expected, ItemStack[] actual) {
+        for (int i = 0; i < Math.max(expected.length, actual.length); i++) {
+            ItemStack a = i < expected.length ? expected[i] : null;
+            ItemStack b = i < actual.length ? actual[i] : null;
+            boolean emptyA = a == null || a.getType().isAir();
+            boolean emptyB = b == null || b.getType().isAir();
+            if (emptyA != emptyB) return false;
+            if (!emptyA && (a.getType() != b.getType() || a.getAmount() != b.getAmount())) return false;
+        }
+        return true;
+    }
+
+    private static Optional<Long> latestDeath(PlayerDataStorage database, UUID uuid) {
+        return database.listStoredSnapshots(uuid).stream()
+                .filter(snapshot -> snapshot.type() == SnapshotType.DEATH)
+                .map(SnapshotInfo::time)
+                .max(Long::compare);
+    }
+
+    private static void awaitTrue(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Summarises samples as median, 95th, 99th percentile and maximum.
+     *
+     * @param samples the samples
+     * @param divisor what to divide each sample by, such as 1e6 for nanoseconds to milliseconds
+     */
+    private static Map<String, Object> percentiles(Collection<? extends Number> samples, double divisor) {
+        double[] sorted = samples.stream().mapToDouble(sample -> sample.doubleValue() / divisor).sorted().toArray();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", sorted.length);
+        for (int percentile : new int[]{50, 95, 99}) {
+            summary.put("p" + percentile, sorted.length == 0 ? 0.0
+                    : sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1)]);
+        }
+        summary.put("max", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1]);
+        return summary;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static ItemStack[] copy(ItemStack[] items) {
+        return Arrays.stream(items).map(item -> item == null ? null : item.clone()).toArray(ItemStack[]::new);
+    }
+
+    /**
+     * Generates a well-used player inventory: tools and blocks in most slots, full armor and an offhand item.
+     * Items carry no meta, which the test server cannot serialize.
+     */
+    private static ItemStack[] generateInventory(Random random) {
+        ItemStack[] items = new ItemStack[41];
+        for (int slot = 0; slot < 36; slot++) {
+            if (random.nextInt(10) < 3) continue;
+            if (slot < 9 && random.nextBoolean()) {
+                items[slot] = new ItemStack(TOOLS[random.nextInt(TOOLS.length)]);
+            } else {
+                Material material = STACKS[random.nextInt(STACKS.length)];
+                items[slot] = new ItemStack(material, 1 + random.nextInt(64));
+            }
+        }
+        for (int i = 0; i < ARMOR.length; i++) {
+            items[36 + i] = new ItemStack(ARMOR[i]);
+        }
+        items[40] = new ItemStack(Material.TOTEM_OF_UNDYING);
+        return items;
+    }
+
+    /**
+     * Generates a partly filled ender chest.
+     */
+    private static ItemStack[] generateEnderChest(Random random) {
+        ItemStack[] items = new ItemStack[27];
+        for (int slot = 0; slot < items.length; slot++) {
+            if (random.nextInt(10) < 7) continue;
+            Material material = STACKS[random.nextInt(STACKS.length)];
+            items[slot] = new ItemStack(material, 64);
+        }
+        return items;
+    }
+}
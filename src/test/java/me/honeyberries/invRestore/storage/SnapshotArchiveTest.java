@@ -0,0 +1,218 @@
+package me.honeyberries.invRestore.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of snapshot archives, including histories split over several chunks, and the
+ * handling of corrupt, truncated and older archives.
+ */
+class SnapshotArchiveTest {
+
+    private final Random random = new Random(5);
+
+    @Test
+    void playersRoundTrip(@TempDir Path folder) throws IOException {
+        Map<UUID, SnapshotArchive.PlayerEntry> players = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            UUID uuid = new UUID(0, i);
+            List<SnapshotRecord> snapshots = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                snapshots.add(record(uuid, String.valueOf(1000 + j), 2_000));
+            }
+            players.put(uuid, new SnapshotArchive.PlayerEntry(uuid, i % 2 == 0 ? "Player" + i : null, snapshots,
+                    Map.of("base", "1000"), i % 3 == 0 ? new SnapshotArchive.PendingRestore("1004", "Console") : null));
+        }
+        // Removed since the list was taken
+        UUID removed = new UUID(1, 0);
+        List<UUID> ids = new ArrayList<>(players.keySet());
+        ids.add(removed);
+
+        Path archive = folder.resolve("export.irx");
+        SnapshotArchive.ExportResult result = SnapshotArchive.write(ids, players::get, archive);
+        assertEquals(20, result.players());
+        assertEquals(100, result.records());
+        assertEquals(Files.size(archive), result.bytes());
+
+        Map<UUID, SnapshotArchive.PlayerEntry> read = readMerged(archive);
+        assertEquals(players, read);
+        assertFalse(read.containsKey(removed));
+    }
+
+    @Test
+    void largeHistoriesAreSplitOverChunks(@TempDir Path folder) throws IOException {
+        UUID uuid = new UUID(0, 1);
+        List<SnapshotRecord> snapshots = new ArrayList<>();
+        // About five chunks worth
+        for (int j = 0; j < 40; j++) {
+            snapshots.add(record(uuid, String.valueOf(1000 + j), 100_000));
+        }
+        SnapshotArchive.PlayerEntry player = new SnapshotArchive.PlayerEntry(uuid, "Player", snapshots,
+                Map.of("base", "1039"), new SnapshotArchive.PendingRestore("1039", "Console"));
+
+        Path archive = folder.resolve("export.irx");
+        SnapshotArchive.ExportResult result = SnapshotArchive.write(List.of(uuid), id -> player, archive);
+        assertTrue(result.chunks() > 1, "The history was not split");
+
+        List<SnapshotArchive.PlayerEntry> pieces = new ArrayList<>();
+        int total = SnapshotArchive.read(archive, pieces::addAll);
+        assertEquals(40, total);
+        assertTrue(pieces.size() > 1);
+
+        // Snapshots come in order, and only the last piece carries the saves and the queued restore
+        List<SnapshotRecord> readSnapshots = new ArrayList<>();
+        for (int i = 0; i < pieces.size(); i++) {
+            SnapshotArchive.PlayerEntry piece = pieces.get(i);
+            assertEquals(uuid, piece.uuid());
+            readSnapshots.addAll(piece.snapshots());
+            boolean last = i == pieces.size() - 1;
+            assertEquals(last ? player.saves() : Map.of(), piece.saves());
+            assertEquals(last ? player.pending() : null, piece.pending());
+        }
+        assertEquals(snapshots, readSnapshots);
+    }
+
+    @Test
+    void storedChecksumsAreKept(@TempDir Path folder) throws IOException {
+        UUID uuid = new UUID(0, 1);
+        SnapshotRecord unchecked = new SnapshotRecord(uuid, "1", SnapshotType.SAVE, 1, -1, "AAAA", -1);
+        // A snapshot that was already corrupt in the store is exported as it is, with its old checksum
+        SnapshotRecord corrupt = new SnapshotRecord(uuid, "2", SnapshotType.DEATH, 2, 3, "BBBB",
+                SnapshotRecord.checksumOf("AAAA"));
+        SnapshotArchive.PlayerEntry player = new SnapshotArchive.PlayerEntry(uuid, null, List.of(unchecked, corrupt), Map.of(), null);
+
+        Path archive = folder.resolve("export.irx");
+        SnapshotArchive.write(List.of(uuid), id -> player, archive);
+
+        List<SnapshotRecord> read = readMerged(archive).get(uuid).snapshots();
+        assertEquals(-1, read.get(0).checksum());
+        assertEquals(corrupt, read.get(1));
+        assertFalse(read.get(1).matchesChecksum());
+    }
+
+    @Test
+    void rejectsCorruptChunks(@TempDir Path folder) throws IOException {
+        UUID uuid = new UUID(0, 1);
+        SnapshotArchive.PlayerEntry player = new SnapshotArchive.PlayerEntry(uuid, "Player",
+                List.of(record(uuid, "1", 10_000)), Map.of(), null);
+        Path archive = folder.resolve("export.irx");
+        SnapshotArchive.write(List.of(uuid), id -> player, archive);
+        byte[] bytes = Files.readAllBytes(archive);
+
+        // A byte of the first chunk's body, after the 17 byte archive header and the 16 byte chunk header
+        byte[] flipped = bytes.clone();
+        flipped[17 + 16 + 10] ^= 0x55;
+        Files.write(archive, flipped);
+        IOException checksum = assertThrows(IOException.class, () -> SnapshotArchive.read(archive, entries -> { }));
+        assertTrue(checksum.getMessage().contains("checksum"), checksum.getMessage());
+
+        byte[] truncated = new byte[bytes.length - 20];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        Files.write(archive, truncated);
+        assertThrows(IOException.class, () -> SnapshotArchive.read(archive, entries -> { }));
+
+        Files.write(archive, "PK\u0003\u0004 not an archive".getBytes());
+        assertThrows(IOException.class, () -> SnapshotArchive.read(archive, entries -> { }));
+    }
+
+    @Test
+    void readsArchivesWithoutChecksums(@TempDir Path folder) throws IOException {
+        UUID uuid = new UUID(0, 1);
+        ByteArrayOutputStream rawBytes = new ByteArrayOutputStream();
+        try (DataOutputStream raw = new DataOutputStream(rawBytes)) {
+            raw.writeLong(uuid.getMostSignificantBits());
+            raw.writeLong(uuid.getLeastSignificantBits());
+            raw.writeUTF("Player");
+            raw.writeInt(1);
+            raw.writeUTF("1000");
+            raw.writeUTF("death");
+            raw.writeLong(1000);
+            raw.writeInt(2);
+            raw.writeInt(4);
+            raw.write("AAAA".getBytes());
+            raw.writeInt(0);
+            raw.writeBoolean(false);
+        }
+        Path archive = folder.resolve("version2.irx");
+        Files.write(archive, archive(2, rawBytes.toByteArray()));
+
+        SnapshotArchive.PlayerEntry entry = readMerged(archive).get(uuid);
+        assertEquals("Player", entry.name());
+        assertEquals(new SnapshotRecord(uuid, "1000", SnapshotType.DEATH, 1000, 2, "AAAA", -1), entry.snapshots().get(0));
+        assertNull(entry.pending());
+    }
+
+    /**
+     * Reads an archive, putting the pieces of split histories back together.
+     */
+    private static Map<UUID, SnapshotArchive.PlayerEntry> readMerged(Path archive) throws IOException {
+        Map<UUID, SnapshotArchive.PlayerEntry> players = new LinkedHashMap<>();
+        SnapshotArchive.read(archive, entries -> entries.forEach(entry -> players.merge(entry.uuid(), entry, (earlier, later) -> {
+            List<SnapshotRecord> snapshots = new ArrayList<>(earlier.snapshots());
+            snapshots.addAll(later.snapshots());
+            return new SnapshotArchive.PlayerEntry(later.uuid(), later.name(), snapshots, later.saves(), later.pending());
+        })));
+        return players;
+    }
+
+    /**
+     * Builds a one-chunk archive of the given version around a raw chunk body.
+     */
+    private static byte[] archive(int version, byte[] raw) throws IOException {
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buffer = new byte[raw.length + 64];
+        byte[] stored = Arrays.copyOf(buffer, deflater.deflate(buffer));
+        deflater.end();
+        CRC32C crc = new CRC32C();
+        crc.update(stored);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(new byte[]{'I', 'R', 'X', 'A'});
+            out.writeByte(version);
+            out.writeLong(0);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeInt(raw.length);
+            out.writeInt(stored.length);
+            out.writeInt((int) crc.getValue());
+            out.write(stored);
+            out.writeInt(0);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Creates a snapshot record with random data and its checksum.
+     */
+    private SnapshotRecord record(UUID owner, String id, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        String data = Base64.getEncoder().encodeToString(bytes);
+        return new SnapshotRecord(owner, id, SnapshotType.DEATH, Long.parseLong(id), 10, data, SnapshotRecord.checksumOf(data));
+    }
+}
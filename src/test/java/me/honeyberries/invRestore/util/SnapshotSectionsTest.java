@@ -0,0 +1,220 @@
+package me.honeyberries.invRestore.util;
+
+import me.honeyberries.invRestore.util.SnapshotSections.Section;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips and corruption handling of the sectioned snapshot container and its slot tables.
+ * Corrupt input must fail with an {@link IOException}, never a runtime exception or a huge allocation.
+ */
+class SnapshotSectionsTest {
+
+    /** Offset of the first offset table entry: magic, version and section count. */
+    private static final int FIRST_ENTRY = 6;
+    /** Offsets of the fields within an offset table entry. */
+    private static final int ID = 0;
+    private static final int OFFSET = 2;
+    private static final int LENGTH = 6;
+    private static final int RAW_LENGTH = 10;
+
+    @Test
+    void sectionsRoundTrip() throws IOException {
+        Map<Section, byte[]> sections = sampleSections();
+        SnapshotSections parsed = SnapshotSections.parse(SnapshotSections.encode(sections));
+
+        for (Section section : Section.values()) {
+            assertArrayEquals(sections.get(section), parsed.get(section), section.name());
+            assertTrue(parsed.has(section) == sections.containsKey(section), section.name());
+        }
+        parsed.verify();
+    }
+
+    @Test
+    void unknownSectionsAreSkipped() throws IOException {
+        byte[] bytes = SnapshotSections.encode(sampleSections());
+        // The first section is the inventory, give it an id no version has used
+        bytes[FIRST_ENTRY + ID] = 99;
+
+        SnapshotSections parsed = SnapshotSections.parse(bytes);
+        assertFalse(parsed.has(Section.INVENTORY));
+        assertTrue(parsed.has(Section.EXPERIENCE));
+    }
+
+    @Test
+    void rejectsWhatIsNotASectionedSnapshot() {
+        assertFalse(SnapshotSections.isSectioned(new byte[]{'I', 'R'}));
+        assertThrows(IOException.class, () -> SnapshotSections.parse("rO0ABXVyAA".getBytes()));
+    }
+
+    @Test
+    void rejectsATruncatedOffsetTable() throws IOException {
+        byte[] bytes = SnapshotSections.encode(sampleSections());
+        byte[] truncated = new byte[FIRST_ENTRY + 10];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertThrows(IOException.class, () -> SnapshotSections.parse(truncated));
+    }
+
+    @Test
+    void rejectsSectionsOutOfBounds() throws IOException {
+        byte[] bytes = SnapshotSections.encode(sampleSections());
+
+        // offset + length overflows to a negative int
+        assertThrows(IOException.class, () -> SnapshotSections.parse(withInt(bytes, OFFSET, Integer.MAX_VALUE - 2)));
+        assertThrows(IOException.class, () -> SnapshotSections.parse(withInt(bytes, OFFSET, -1)));
+        assertThrows(IOException.class, () -> SnapshotSections.parse(withInt(bytes, LENGTH, bytes.length)));
+        assertThrows(IOException.class, () -> SnapshotSections.parse(withInt(bytes, LENGTH, -1)));
+    }
+
+    @Test
+    void rejectsImplausibleRawLengths() throws IOException {
+        byte[] bytes = SnapshotSections.encode(sampleSections());
+
+        assertThrows(IOException.class, () -> SnapshotSections.parse(withInt(bytes, RAW_LENGTH, -1)));
+        assertThrows(IOException.class, () -> SnapshotSections.parse(withInt(bytes, RAW_LENGTH, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void rejectsDeflatedSectionsOfTheWrongSize() throws IOException {
+        byte[] bytes = SnapshotSections.encode(sampleSections());
+        int rawLength = ByteBuffer.wrap(bytes).getInt(FIRST_ENTRY + RAW_LENGTH);
+
+        SnapshotSections longer = SnapshotSections.parse(withInt(bytes, RAW_LENGTH, rawLength + 1));
+        assertThrows(IOException.class, () -> longer.get(Section.INVENTORY));
+        SnapshotSections shorter = SnapshotSections.parse(withInt(bytes, RAW_LENGTH, rawLength - 1));
+        assertThrows(IOException.class, () -> shorter.get(Section.INVENTORY));
+    }
+
+    @Test
+    void rejectsCorruptDeflatedBodies() throws IOException {
+        byte[] bytes = SnapshotSections.encode(sampleSections());
+        int offset = ByteBuffer.wrap(bytes).getInt(FIRST_ENTRY + OFFSET);
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) 0xFF;
+        }
+
+        SnapshotSections parsed = SnapshotSections.parse(bytes);
+        assertThrows(IOException.class, () -> parsed.get(Section.INVENTORY));
+        assertThrows(IOException.class, parsed::verify);
+    }
+
+    @Test
+    void survivesRandomCorruption() throws IOException {
+        byte[] bytes = SnapshotSections.encode(sampleSections());
+        Random random = new Random(1);
+        for (int run = 0; run < 2000; run++) {
+            byte[] corrupt = bytes.clone();
+            for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+                corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+            }
+            try {
+                SnapshotSections.parse(corrupt).verify();
+            } catch (IOException expected) {
+                // Reported as corrupt, which is all that is asked
+            }
+        }
+    }
+
+    @Test
+    void missingSectionsReadAsNull() throws IOException {
+        SnapshotSections parsed = SnapshotSections.parse(SnapshotSections.encode(Map.of()));
+        assertNull(parsed.get(Section.INVENTORY));
+        parsed.verify();
+    }
+
+    @Test
+    void slotsRoundTrip() throws IOException {
+        byte[][] slots = new byte[41][];
+        for (int slot = 0; slot < slots.length; slot += 2) {
+            slots[slot] = ("item " + slot).repeat(slot % 5 + 1).getBytes();
+        }
+
+        SnapshotSections.Slots read = SnapshotSections.readSlots(SnapshotSections.encodeSlots(slots));
+        assertEquals(slots.length, read.size());
+        for (int slot = 0; slot < slots.length; slot++) {
+            assertArrayEquals(slots[slot], read.get(slot), "slot " + slot);
+        }
+        assertNull(read.get(-1));
+        assertNull(read.get(slots.length));
+    }
+
+    @Test
+    void emptySlotTablesHaveNoSlots() throws IOException {
+        SnapshotSections.Slots read = SnapshotSections.readSlots(SnapshotSections.encodeSlots(new byte[0][]));
+        assertEquals(0, read.size());
+        assertNull(read.get(0));
+    }
+
+    @Test
+    void rejectsCorruptSlotTables() throws IOException {
+        byte[] body = SnapshotSections.encodeSlots(new byte[][]{"a".getBytes(), null, "bc".getBytes()});
+
+        assertThrows(IOException.class, () -> SnapshotSections.readSlots(new byte[3]));
+        // Slot count negative, or larger than the table the body has room for
+        assertThrows(IOException.class, () -> SnapshotSections.readSlots(slotTableWith(body, 0, -1)));
+        assertThrows(IOException.class, () -> SnapshotSections.readSlots(slotTableWith(body, 0, Integer.MAX_VALUE)));
+        // Slot lengths negative, overflowing, or not adding up to the body
+        assertThrows(IOException.class, () -> SnapshotSections.readSlots(slotTableWith(body, 4, -1)));
+        assertThrows(IOException.class, () -> SnapshotSections.readSlots(slotTableWith(body, 4, Integer.MAX_VALUE)));
+        assertThrows(IOException.class, () -> SnapshotSections.readSlots(slotTableWith(body, 8, 1)));
+        byte[] longer = new byte[body.length + 1];
+        System.arraycopy(body, 0, longer, 0, body.length);
+        assertThrows(IOException.class, () -> SnapshotSections.readSlots(longer));
+    }
+
+    @Test
+    void verifyChecksSlotTables() throws IOException {
+        byte[] body = SnapshotSections.encodeSlots(new byte[][]{"a".getBytes(), null, "bc".getBytes()});
+        Map<Section, byte[]> sections = new EnumMap<>(Section.class);
+        sections.put(Section.INVENTORY, slotTableWith(body, 8, 1));
+
+        assertThrows(IOException.class, SnapshotSections.parse(SnapshotSections.encode(sections))::verify);
+    }
+
+    /**
+     * Builds a small snapshot: a slot-indexed inventory large enough to be deflated, an ender chest
+     * and a short experience section, which is stored as-is.
+     */
+    private static Map<Section, byte[]> sampleSections() throws IOException {
+        byte[][] inventory = new byte[41][];
+        for (int slot = 0; slot < inventory.length; slot += 3) {
+            inventory[slot] = ("item in slot " + slot).getBytes();
+        }
+        Map<Section, byte[]> sections = new EnumMap<>(Section.class);
+        sections.put(Section.INVENTORY, SnapshotSections.encodeSlots(inventory));
+        sections.put(Section.ENDER_CHEST, SnapshotSections.encodeSlots(new byte[27][]));
+        sections.put(Section.EXPERIENCE, new byte[]{0, 0, 1, 0, 0, 0, 0, 7});
+        return sections;
+    }
+
+    /**
+     * Copies a slot-indexed section body with the int at a position replaced.
+     */
+    private static byte[] slotTableWith(byte[] body, int position, int value) {
+        byte[] copy = body.clone();
+        ByteBuffer.wrap(copy).putInt(position, value);
+        return copy;
+    }
+
+    /**
+     * Copies an encoded snapshot with one field of its first offset table entry replaced.
+     */
+    private static byte[] withInt(byte[] bytes, int field, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putInt(FIRST_ENTRY + field, value);
+        return copy;
+    }
+}